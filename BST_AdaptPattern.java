@@ -109,6 +109,101 @@ public class BST_AdaptPattern<E extends Comparable <? super E>>
         return new BST_AdaptPatternIterator();
     }
 
+    /**
+     * Returns an iterator over the elements in this search tree greater than
+     * or equal to the given element, in ascending order.
+     * @param from - the lowest element to iterate from
+     * @return an iterator over the elements from the given one onwards
+     */
+    @Override
+    public Iterator<E> iterator(E from) {
+        return tree.tailSet(from, true).iterator();
+    }
+
+    /**
+     * Returns the greatest element less than or equal to the given element.
+     * @param e - the element to search
+     * @return the floor of e, <tt>null</tt> if there is none
+     */
+    @Override
+    public E floor(E e) {
+        return tree.floor(e);
+    }
+
+    /**
+     * Returns the least element greater than or equal to the given element.
+     * @param e - the element to search
+     * @return the ceiling of e, <tt>null</tt> if there is none
+     */
+    @Override
+    public E ceiling(E e) {
+        return tree.ceiling(e);
+    }
+
+    /**
+     * Returns the least element strictly greater than the given element.
+     * @param e - the element to search
+     * @return the next element after e, <tt>null</tt> if there is none
+     */
+    @Override
+    public E higher(E e) {
+        return tree.higher(e);
+    }
+
+    /**
+     * Returns the greatest element strictly less than the given element.
+     * @param e - the element to search
+     * @return the element before e, <tt>null</tt> if there is none
+     */
+    @Override
+    public E lower(E e) {
+        return tree.lower(e);
+    }
+
+    /**
+     * Returns a view of the elements from fromElement, inclusive, to
+     * toElement, exclusive, backed by the TreeSet's view.
+     * @param fromElement - the inclusive lower bound
+     * @param toElement - the exclusive upper bound
+     * @return a view of the range
+     */
+    @Override
+    public SortedSet<E> subSet(E fromElement, E toElement) {
+        return tree.subSet(fromElement, toElement);
+    }
+
+    /**
+     * Returns a view of the elements less than toElement, backed by the
+     * TreeSet's view.
+     * @param toElement - the exclusive upper bound
+     * @return a view of the range
+     */
+    @Override
+    public SortedSet<E> headSet(E toElement) {
+        return tree.headSet(toElement);
+    }
+
+    /**
+     * Returns a view of the elements greater than or equal to fromElement,
+     * backed by the TreeSet's view.
+     * @param fromElement - the inclusive lower bound
+     * @return a view of the range
+     */
+    @Override
+    public SortedSet<E> tailSet(E fromElement) {
+        return tree.tailSet(fromElement);
+    }
+
+    /**
+     * Returns a Spliterator over the elements in this search tree in
+     * ascending order, split by the backend TreeSet.
+     * @return a Spliterator over the elements in this tree
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        return tree.spliterator();
+    }
+
     /**
      * Returns the last (highest) element currently in this search tree.
      * @return the last (highest) element currently in this search tree
@@ -208,12 +303,14 @@ public class BST_AdaptPattern<E extends Comparable <? super E>>
 
         /**
          * Removes from the underlying collection the last element returned by
-         * this iterator. This operation is not supported by this iterator.
-         * @throws UnsupportedOperationException - this operation is not
-         * supported by this iterator.
+         * this iterator.
+         * @throws IllegalStateException - if next() has not been called, or
+         * remove() has already been called after the last call to next()
+         * @throws ConcurrentModificationException - if the tree was changed
+         * other than through this iterator since the iterator was created
          */
         public void remove() {
-            throw new UnsupportedOperationException();
+            treeSetIterator.remove();
         }
 
     } //end iterator class 
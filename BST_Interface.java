@@ -1,5 +1,12 @@
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 public interface BST_Interface<E>
 {
 	public boolean add(E e);
@@ -14,5 +21,148 @@ public interface BST_Interface<E>
 	public int size();
 	public int height();
 	public int numChildren(E target);
-}
 
+	/**
+	 * Returns the greatest element less than or equal to the given element.
+	 * The default scans iterator(); trees that can search override it.
+	 * @param e - the element to search
+	 * @return the floor of e, <tt>null</tt> if there is none
+	 */
+	public default E floor(E e) {
+		return BST_RangeView.neighbor(this, e, false, true);
+	}
+
+	/**
+	 * Returns the least element greater than or equal to the given element.
+	 * The default scans iterator(); trees that can search override it.
+	 * @param e - the element to search
+	 * @return the ceiling of e, <tt>null</tt> if there is none
+	 */
+	public default E ceiling(E e) {
+		return BST_RangeView.neighbor(this, e, true, true);
+	}
+
+	/**
+	 * Returns the least element strictly greater than the given element.
+	 * The default scans iterator(); trees that can search override it.
+	 * @param e - the element to search
+	 * @return the next element after e, <tt>null</tt> if there is none
+	 */
+	public default E higher(E e) {
+		return BST_RangeView.neighbor(this, e, true, false);
+	}
+
+	/**
+	 * Returns the greatest element strictly less than the given element.
+	 * The default scans iterator(); trees that can search override it.
+	 * @param e - the element to search
+	 * @return the element before e, <tt>null</tt> if there is none
+	 */
+	public default E lower(E e) {
+		return BST_RangeView.neighbor(this, e, false, false);
+	}
+
+	/**
+	 * Looks up a batch of keys at once. Bit i of the result is set if the
+	 * i-th key, in the collection's iteration order, is in this tree. The
+	 * default calls contains() for each key; trees that can search override
+	 * it.
+	 * @param keys - the keys to look up
+	 * @return the keys found, by position
+	 */
+	public default BitSet containsEach(Collection<? extends E> keys) {
+		BitSet found = new BitSet(keys.size());
+		int i = 0;
+		for (E key : keys) {
+			if (contains(key))
+				found.set(i);
+			i ++;
+		}
+		return found;
+	}
+
+	/**
+	 * Looks up an array of keys at once. Bit i of the result is set if
+	 * keys[i] is in this tree. The array is not modified.
+	 * @param keys - the keys to look up
+	 * @return the keys found, by index
+	 */
+	public default BitSet containsEach(E[] keys) {
+		return containsEach(Arrays.asList(keys));
+	}
+
+	/**
+	 * Returns an iterator over the elements greater than or equal to the
+	 * given element, in ascending order. The default scans iterator() up to
+	 * it; trees that can search override it.
+	 * @param from - the lowest element to iterate from
+	 * @return an iterator over the elements from the given one onwards
+	 */
+	public default Iterator<E> iterator(E from) {
+		return BST_RangeView.iteratorFrom(this, from);
+	}
+
+	/**
+	 * Returns a view of the elements from fromElement, inclusive, to
+	 * toElement, exclusive. The view copies nothing and writes through.
+	 * @param fromElement - the inclusive lower bound
+	 * @param toElement - the exclusive upper bound
+	 * @return a view of the range
+	 */
+	public default SortedSet<E> subSet(E fromElement, E toElement) {
+		if (fromElement == null || toElement == null)
+			throw new NullPointerException();
+		return new BST_RangeView<E>(this, fromElement, toElement);
+	}
+
+	/**
+	 * Returns a view of the elements less than toElement.
+	 * @param toElement - the exclusive upper bound
+	 * @return a view of the range
+	 */
+	public default SortedSet<E> headSet(E toElement) {
+		if (toElement == null)
+			throw new NullPointerException();
+		return new BST_RangeView<E>(this, null, toElement);
+	}
+
+	/**
+	 * Returns a view of the elements greater than or equal to fromElement.
+	 * @param fromElement - the inclusive lower bound
+	 * @return a view of the range
+	 */
+	public default SortedSet<E> tailSet(E fromElement) {
+		if (fromElement == null)
+			throw new NullPointerException();
+		return new BST_RangeView<E>(this, fromElement, null);
+	}
+
+	/**
+	 * Returns a Spliterator over the elements in this search tree in
+	 * ascending order. The default wraps iterator(); trees that can split
+	 * themselves override it.
+	 * @return a Spliterator over the elements in this tree
+	 */
+	public default Spliterator<E> spliterator() {
+		return Spliterators.spliterator(iterator(), size(), Spliterator.ORDERED
+			| Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL);
+	}
+
+	/**
+	 * Returns a sequential Stream over the elements in this search tree in
+	 * ascending order.
+	 * @return a sequential Stream over the elements in this tree
+	 */
+	public default Stream<E> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	/**
+	 * Returns a possibly parallel Stream over the elements in this search
+	 * tree.
+	 * @return a possibly parallel Stream over the elements in this tree
+	 */
+	public default Stream<E> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
+}
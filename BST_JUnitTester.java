@@ -1,4 +1,13 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.*;
 import static org.junit.Assert.*;
@@ -243,19 +252,83 @@ public class BST_JUnitTester {
     } 
 
     /**
-     * Test iterator() remove operation should throw
-     * UnsupportedOperationException.
+     * Test iterator() remove operation: it removes the last returned element
+     * and iteration carries on, it throws IllegalStateException without a
+     * preceding next(), and the iterator fails fast with
+     * ConcurrentModificationException once the tree is changed behind it.
      */
     @Test
-    public void testIteratorRemoveUnsupported(){
-        bstIter.next();
+    public void testIteratorRemove(){
         try {
             bstIter.remove();
-            fail("Should throw UnsupportedOperationException");
-        } catch (UnsupportedOperationException e){
+            fail("Should throw IllegalStateException");
+        } catch (IllegalStateException e){
             //correct!
         }
-    } 
+        //remove the even elements while iterating
+        while (bstIter.hasNext()) {
+            if (bstIter.next() % 2 == 0)
+                bstIter.remove();
+        }
+        assertEquals(5, bst.size());
+        Iterator<Integer> iter = bst.iterator();
+        for (int i = 1; i <= 9; i += 2) {
+            assertEquals(Integer.valueOf(i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+        assertTrue(((BST_RB<Integer>) bst).isValidRB());
+
+        iter = bst.iterator();
+        iter.next();
+        bst.remove(9);
+        try {
+            iter.next();
+            fail("Should throw ConcurrentModificationException");
+        } catch (ConcurrentModificationException e){
+            //correct!
+        }
+
+        //the adapter delegates removal to its TreeSet
+        BST_Interface<Integer> adapt = getWhatTree(BST_ADAPT);
+        adapt.addAll(bstList);
+        Iterator<Integer> adaptIter = adapt.iterator();
+        adaptIter.next();
+        adaptIter.remove();
+        assertEquals(9, adapt.size());
+        assertEquals(Integer.valueOf(2), adapt.first());
+    }
+
+    /**
+     * Test iterator remove on a random BST_RB against a TreeSet oracle; every
+     * removal keeps the red-black invariants and the order statistics.
+     */
+    @Test
+    public void testIteratorRemoveRandom() {
+        Random rnd = new Random(12);
+        BST_RB<Integer> rb = new BST_RB<Integer>();
+        TreeSet<Integer> oracle = new TreeSet<Integer>();
+        for (int n = 0; n < 2000; n++) {
+            int key = rnd.nextInt(5000);
+            rb.add(key);
+            oracle.add(key);
+        }
+        Iterator<Integer> iter = rb.iterator();
+        Iterator<Integer> oracleIter = oracle.iterator();
+        while (iter.hasNext()) {
+            assertEquals(oracleIter.next(), iter.next());
+            if (rnd.nextInt(3) == 0) {
+                iter.remove();
+                oracleIter.remove();
+            }
+        }
+        assertFalse(oracleIter.hasNext());
+        assertEquals(oracle.size(), rb.size());
+        assertTrue(rb.isValidRB());
+        int k = 0;
+        for (Integer e : oracle) {
+            assertEquals(e, rb.select(k++));
+        }
+    }
     
     /**
      * Test height() for BST_RB/BST. Test if height() correctly returns the
@@ -438,4 +511,1466 @@ public class BST_JUnitTester {
 		assertFalse(stringTree.contains("C"));
 	}
 	
+    /**
+     * Test getComparisonCount(). Test if add(), contains() and remove() each
+     * descend the tree once, making at most one comparison per level.
+     */
+    @Test
+    public void testComparisonCount() {
+        BST_RB<Integer> rb = new BST_RB<Integer>(bstList);
+        int height = rb.height();
+        rb.resetComparisonCount();
+        assertEquals(0, rb.getComparisonCount());
+        assertFalse(rb.add(7)); //duplicate found during the descent
+        assertTrue(rb.getComparisonCount() <= height);
+        rb.resetComparisonCount();
+        assertTrue(rb.add(11));
+        assertTrue(rb.getComparisonCount() <= height);
+        rb.resetComparisonCount();
+        assertTrue(rb.contains(11));
+        assertTrue(rb.getComparisonCount() <= rb.height());
+        rb.resetComparisonCount();
+        assertTrue(rb.remove(11));
+        assertTrue(rb.getComparisonCount() <= rb.height() + 1);
+        assertEquals("[1, 2, 3, 4, 5, 6, 7, 8, 9, 10]", rb.toString());
+    }
+
+    /**
+     * Test BST_RB(Collection<? extends E> c) with a SortedSet. Test if the
+     * tree is built perfectly balanced and stays a valid red-black tree.
+     */
+    @Test
+    public void testBulkLoadSortedSet() {
+        TreeSet<Integer> sorted = new TreeSet<Integer>();
+        for (int n = 0; n < 1000; n++)
+            sorted.add(n * 2);
+        BST_RB<Integer> rb = new BST_RB<Integer>(sorted);
+        assertTrue(rb.isValidRB());
+        assertEquals(1000, rb.size());
+        assertEquals(10, rb.height()); //floor(log2(1000)) + 1
+        assertEquals(sorted.toString(), rb.toString());
+        for (int n = 0; n < 1000; n += 3) {
+            assertTrue(rb.remove(n * 2));
+            assertTrue(rb.add(n * 2 + 1));
+        }
+        assertTrue(rb.isValidRB());
+    }
+
+    /**
+     * Test addAllSorted(). Test if a sorted run is merged into a non-empty
+     * tree, and if an unsorted run is rejected without changing the tree.
+     */
+    @Test
+    public void testAddAllSorted() {
+        ArrayList<Integer> run = new ArrayList<Integer>();
+        for (int n = 0; n <= 30; n += 2)
+            run.add(n);
+        assertTrue(bst.addAll(new TreeSet<Integer>(run)));
+        assertEquals("[0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 12, 14, 16, 18, 20, "
+            + "22, 24, 26, 28, 30]", bst.toString());
+        assertEquals(21, bst.size());
+        assertTrue(((BST_RB<Integer>) bst).isValidRB());
+        assertFalse(((BST_RB<Integer>) bst).addAllSorted(run));
+
+        BST_RB<Integer> rb = new BST_RB<Integer>();
+        assertTrue(rb.addAllSorted(run));
+        assertTrue(rb.isValidRB());
+        try {
+            rb.addAllSorted(bstList);
+            fail("Should throw IllegalArgumentException");
+        } catch (IllegalArgumentException e){
+            //correct!
+        }
+        assertEquals(16, rb.size());
+        assertTrue(rb.isValidRB());
+    }
+
+    /**
+     * Test rank(), select() and countBetween() against a sorted oracle while
+     * elements are randomly added and removed.
+     */
+    @Test
+    public void testOrderStatistics() {
+        Random rnd = new Random(578);
+        BST_RB<Integer> rb = new BST_RB<Integer>();
+        TreeSet<Integer> oracle = new TreeSet<Integer>();
+        for (int n = 0; n < 2000; n++) {
+            int key = rnd.nextInt(500);
+            if (rnd.nextInt(3) == 0)
+                assertEquals(oracle.remove(key), rb.remove(key));
+            else
+                assertEquals(oracle.add(key), rb.add(key));
+        }
+        assertTrue(rb.isValidRB());
+        int k = 0;
+        for (Integer e : oracle) {
+            assertEquals(k, rb.rank(e));
+            assertEquals(e, rb.select(k));
+            k++;
+        }
+        assertEquals(oracle.headSet(250).size(), rb.rank(250));
+        assertEquals(oracle.subSet(100, true, 300, true).size(),
+            rb.countBetween(100, 300));
+        assertEquals(oracle.size(), rb.countBetween(-1, 500));
+        try {
+            rb.select(oracle.size());
+            fail("Should throw IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e){
+            //correct!
+        }
+    }
+
+    /**
+     * Test IntRBTree against a TreeSet oracle with random adds and removes,
+     * iterating with the primitive iterator.
+     */
+    @Test
+    public void testIntRBTree() {
+        Random rnd = new Random(4);
+        IntRBTree ints = new IntRBTree();
+        TreeSet<Integer> oracle = new TreeSet<Integer>();
+        for (int n = 0; n < 2000; n++) {
+            int key = rnd.nextInt(300) - 150;
+            if (rnd.nextInt(3) == 0)
+                assertEquals(oracle.remove(key), ints.remove(key));
+            else
+                assertEquals(oracle.add(key), ints.add(key));
+            assertEquals(oracle.size(), ints.size());
+        }
+        assertEquals((int) oracle.first(), ints.first());
+        assertEquals((int) oracle.last(), ints.last());
+        PrimitiveIterator.OfInt iter = ints.iterator();
+        for (Integer e : oracle)
+            assertEquals((int) e, iter.nextInt());
+        assertFalse(iter.hasNext());
+        assertTrue(ints.height() <= 2 * (32 - Integer.numberOfLeadingZeros(
+            ints.size() + 1)));
+    }
+
+    /**
+     * Test the BST_Interface views of IntRBTree and LongRBTree with the same
+     * operations the fixture tree goes through.
+     */
+    @Test
+    public void testPrimitiveTreeViews() {
+        BST_Interface<Integer> ints = new IntRBTree().asBST();
+        assertTrue(ints.addAll(bstList));
+        assertEquals(bst.toString(), ints.toString());
+        assertEquals(bst.height(), ints.height());
+        for (int n = 1; n <= 10; n++)
+            assertEquals(bst.numChildren(n), ints.numChildren(n));
+        assertTrue(ints.remove(7));
+        assertFalse(ints.contains(7));
+
+        LongRBTree longs = new LongRBTree();
+        longs.add(Long.MAX_VALUE);
+        longs.add(Long.MIN_VALUE);
+        longs.add(0L);
+        assertEquals(Long.MIN_VALUE, longs.first());
+        assertEquals(Long.MAX_VALUE, longs.last());
+        BST_Interface<Long> view = longs.asBST();
+        assertEquals("[" + Long.MIN_VALUE + ", 0, " + Long.MAX_VALUE + "]",
+            view.toString());
+        assertTrue(view.remove(0L));
+        assertEquals(2, longs.size());
+    }
+
+    /**
+     * Test BST_RBPool against a TreeSet oracle under insert/remove churn, and
+     * check that freed slots are reused so the arrays stop growing.
+     */
+    @Test
+    public void testBST_RBPool() {
+        Random rnd = new Random(5);
+        BST_RBPool<Integer> pool = new BST_RBPool<Integer>(bstList);
+        assertEquals(bst.toString(), pool.toString());
+        assertEquals(bst.height(), pool.height());
+        for (int n = 1; n <= 10; n++)
+            assertEquals(bst.numChildren(n), pool.numChildren(n));
+
+        TreeSet<Integer> oracle = new TreeSet<Integer>(bstList);
+        for (int n = 0; n < 3000; n++) {
+            int key = rnd.nextInt(200);
+            if (rnd.nextBoolean())
+                assertEquals(oracle.remove(key), pool.remove(key));
+            else
+                assertEquals(oracle.add(key), pool.add(key));
+            assertEquals(oracle.size(), pool.size());
+        }
+        assertEquals(oracle.toString(), pool.toString());
+        assertEquals(oracle.first(), pool.first());
+        assertEquals(oracle.last(), pool.last());
+        int capacity = pool.capacity();
+        assertTrue(capacity <= 2 * 200);
+        pool.clear();
+        assertTrue(pool.isEmpty());
+        for (int n = 0; n < capacity; n++)
+            pool.add(n);
+        assertEquals(capacity, pool.capacity()); //arrays were reused
+    }
+
+    /**
+     * Test OffHeapBST with long keys against a TreeSet oracle, and with
+     * fixed-width byte-string keys, that close() empties the tree, and that
+     * keys too wide for a chunk are refused.
+     */
+    @Test
+    public void testOffHeapBST() {
+        Random rnd = new Random(6);
+        OffHeapBST<Long> offHeap = new OffHeapBST<Long>(FixedKeyCodec.LONG);
+        TreeSet<Long> oracle = new TreeSet<Long>();
+        for (int n = 0; n < 3000; n++) {
+            long key = rnd.nextInt(500) * 1000000007L;
+            if (rnd.nextInt(3) == 0)
+                assertEquals(oracle.remove(key), offHeap.remove(key));
+            else
+                assertEquals(oracle.add(key), offHeap.add(key));
+        }
+        assertEquals(oracle.size(), offHeap.size());
+        assertEquals(oracle.toString(), offHeap.toString());
+        assertEquals(oracle.first(), offHeap.first());
+        assertEquals(oracle.last(), offHeap.last());
+        assertTrue(offHeap.memoryUsed() > 0);
+        offHeap.close();
+        assertTrue(offHeap.isEmpty());
+        try {
+            offHeap.add(1L);
+            fail("Should throw IllegalStateException");
+        } catch (IllegalStateException e){
+            //correct!
+        }
+
+        OffHeapBST<ByteBuffer> bytes =
+            new OffHeapBST<ByteBuffer>(FixedKeyCodec.bytes(3));
+        assertTrue(bytes.add(ByteBuffer.wrap(new byte[] {1, 2, 3})));
+        assertTrue(bytes.add(ByteBuffer.wrap(new byte[] {1, 2, 2})));
+        assertFalse(bytes.add(ByteBuffer.wrap(new byte[] {1, 2, 3})));
+        assertEquals(ByteBuffer.wrap(new byte[] {1, 2, 2}), bytes.first());
+        assertTrue(bytes.remove(ByteBuffer.wrap(new byte[] {1, 2, 2})));
+        assertEquals(1, bytes.size());
+        bytes.close();
+
+        try {
+            new OffHeapBST<ByteBuffer>(FixedKeyCodec.bytes(1 << 15));
+            fail("Should throw IllegalArgumentException");
+        } catch (IllegalArgumentException e){
+            //correct! a chunk of such nodes would overflow an int
+        }
+        OffHeapBST<ByteBuffer> wide = new OffHeapBST<ByteBuffer>(
+            FixedKeyCodec.bytes((Integer.MAX_VALUE >> 16) - 24));
+        assertEquals(0, wide.memoryUsed());
+        wide.close();
+    }
+
+    /**
+     * Test MappedBST: a tree forced and closed is reopened with the same
+     * contents, an open file cannot be opened again, and a file changed
+     * after its last force() is rolled back to it.
+     */
+    @Test
+    public void testMappedBST() throws IOException {
+        Path file = Files.createTempFile("bst", ".rbm");
+        Path crashed = Files.createTempFile("bst", ".rbm");
+        try {
+            TreeSet<Integer> oracle = new TreeSet<Integer>();
+            Random rnd = new Random(7);
+            try (MappedBST<Integer> mapped =
+                    new MappedBST<Integer>(file, FixedKeyCodec.INT)) {
+                for (int n = 0; n < 3000; n++) {
+                    int key = rnd.nextInt(1000);
+                    if (rnd.nextInt(3) == 0)
+                        assertEquals(oracle.remove(key), mapped.remove(key));
+                    else
+                        assertEquals(oracle.add(key), mapped.add(key));
+                }
+                assertEquals(oracle.toString(), mapped.toString());
+            }
+            MappedBST<Integer> reopened =
+                new MappedBST<Integer>(file, FixedKeyCodec.INT);
+            assertEquals(oracle.size(), reopened.size());
+            assertEquals(oracle.toString(), reopened.toString());
+            try {
+                new MappedBST<Integer>(file, FixedKeyCodec.INT);
+                fail("Should throw IOException");
+            } catch (IOException e){
+                //correct! already open
+            }
+
+            //crash after changes that were never forced: a copy of the file
+            //and its undo log rolls back to the last force()
+            for (int key = -1; key > -500; key--) {
+                reopened.add(key);
+            }
+            reopened.remove(oracle.first());
+            Files.copy(file, crashed, StandardCopyOption.REPLACE_EXISTING);
+            Files.copy(MappedBST.undoPath(file), MappedBST.undoPath(crashed),
+                StandardCopyOption.REPLACE_EXISTING);
+            try (MappedBST<Integer> recovered =
+                    new MappedBST<Integer>(crashed, FixedKeyCodec.INT)) {
+                assertEquals(oracle.size(), recovered.size());
+                assertEquals(oracle.toString(), recovered.toString());
+                assertTrue(recovered.add(-1));
+            }
+            try (MappedBST<Integer> recovered =
+                    new MappedBST<Integer>(crashed, FixedKeyCodec.INT)) {
+                assertEquals(oracle.size() + 1, recovered.size());
+            }
+
+            reopened.close();
+            MappedBST<Integer> again =
+                new MappedBST<Integer>(file, FixedKeyCodec.INT);
+            assertEquals(Integer.valueOf(-499), again.first());
+            again.close();
+        } finally {
+            Files.delete(file);
+            Files.deleteIfExists(crashed);
+            Files.deleteIfExists(MappedBST.undoPath(file));
+            Files.deleteIfExists(MappedBST.undoPath(crashed));
+        }
+    }
+
+    /**
+     * Test BST_RBSnapshot: a saved tree loads back balanced with the same
+     * elements, and a corrupted snapshot is rejected.
+     */
+    @Test
+    public void testSnapshot() throws IOException {
+        Path file = Files.createTempFile("bst", ".snap");
+        try {
+            BST_RB<String> words = new BST_RB<String>();
+            for (int n = 0; n < 5000; n++)
+                words.add("key" + n);
+            BST_RBSnapshot.save(words, file, KeyCodec.STRING);
+            BST_RB<String> loaded = BST_RBSnapshot.load(file, KeyCodec.STRING);
+            assertEquals(words.size(), loaded.size());
+            assertEquals(words.toString(), loaded.toString());
+            assertTrue(loaded.isValidRB());
+
+            byte[] bytes = Files.readAllBytes(file);
+            bytes[bytes.length / 2] ^= 1;
+            Files.write(file, bytes);
+            try {
+                BST_RBSnapshot.load(file, KeyCodec.STRING);
+                fail("Should throw IOException");
+            } catch (IOException e){
+                //correct!
+            }
+            BST_RBSnapshot.save(new BST_RB<String>(), file, KeyCodec.STRING);
+            assertTrue(BST_RBSnapshot.load(file, KeyCodec.STRING).isEmpty());
+
+            //a length other than a fixed-width key's is corrupt, not an
+            //underflow of the buffer
+            try {
+                KeyCodec.INTEGER.decode(ByteBuffer.allocate(2), 2);
+                fail("Should throw IllegalArgumentException");
+            } catch (IllegalArgumentException e){
+                //correct!
+            }
+            try {
+                KeyCodec.LONG.decode(ByteBuffer.allocate(16), 4);
+                fail("Should throw IllegalArgumentException");
+            } catch (IllegalArgumentException e){
+                //correct!
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test JournaledBST_RB: changes made by several threads survive reopening
+     * through log replay, compaction keeps the log bounded, and reads wait
+     * for the changes they see to be synced.
+     */
+    @Test
+    public void testJournaledBST_RB() throws Exception {
+        Path dir = Files.createTempDirectory("bst-journal");
+        try {
+            final JournaledBST_RB<Integer> journaled = new JournaledBST_RB<Integer>(
+                dir, KeyCodec.INTEGER, 200, 1 << 12, 1 << 14);
+            Thread[] writers = new Thread[4];
+            for (int t = 0; t < writers.length; t++) {
+                final int base = t * 1000;
+                writers[t] = new Thread(() -> {
+                    for (int n = 0; n < 500; n++)
+                        journaled.add(base + n);
+                    for (int n = 0; n < 500; n += 5)
+                        journaled.remove(base + n);
+                });
+                writers[t].start();
+            }
+            for (Thread writer : writers)
+                writer.join();
+            assertEquals(4 * 400, journaled.size());
+            String contents = journaled.toString();
+            journaled.close();
+            assertTrue(Files.size(dir.resolve("tree.log")) <= (1 << 14) + 64);
+
+            JournaledBST_RB<Integer> reopened =
+                new JournaledBST_RB<Integer>(dir, KeyCodec.INTEGER);
+            assertEquals(contents, reopened.toString());
+            reopened.clear();
+            assertTrue(reopened.add(42));
+            reopened.close();
+            reopened = new JournaledBST_RB<Integer>(dir, KeyCodec.INTEGER);
+            assertEquals("[42]", reopened.toString());
+            reopened.close();
+
+            //a read never sees a change before its record is synced
+            final JournaledBST_RB<Integer> slow = new JournaledBST_RB<Integer>(
+                dir, KeyCodec.INTEGER, 200000, 1 << 12, 1 << 14);
+            long logBefore = Files.size(dir.resolve("tree.log"));
+            Thread writer = new Thread(() -> slow.add(7));
+            writer.start();
+            while (!slow.contains(7)) {
+                //wait for the writer
+            }
+            assertTrue(Files.size(dir.resolve("tree.log")) > logBefore);
+            writer.join();
+            slow.close();
+            try {
+                slow.add(8);
+                fail("Should throw IllegalStateException");
+            } catch (IllegalStateException e){
+                //correct! and the tree is left unchanged
+            }
+            assertFalse(slow.contains(8));
+
+            //a log many replay buffers long replays in full
+            JournaledBST_RB<Integer> big = new JournaledBST_RB<Integer>(
+                dir, KeyCodec.INTEGER, 1000, 1 << 16, 1L << 40);
+            List<Integer> batch = new ArrayList<Integer>();
+            for (int n = 0; n < 50000; n++) {
+                batch.add(n);
+            }
+            big.addAll(batch);
+            big.close();
+            assertTrue(Files.size(dir.resolve("tree.log")) > 4 << 16);
+            big = new JournaledBST_RB<Integer>(dir, KeyCodec.INTEGER);
+            assertEquals(50000, big.size());
+            assertEquals(Integer.valueOf(49999), big.last());
+            big.close();
+        } finally {
+            for (String name : new String[] {"tree.log", "tree.snapshot"})
+                Files.deleteIfExists(dir.resolve(name));
+            Files.delete(dir);
+        }
+    }
+
+    /**
+     * Test iterator(from) for BST_RB: iteration starts at the least element
+     * greater than or equal to from, whether or not from is in the tree, and
+     * visits every later element in order.
+     */
+    @Test
+    public void testIteratorFrom() {
+        BST_RB<Integer> rb = new BST_RB<Integer>();
+        TreeSet<Integer> oracle = new TreeSet<Integer>();
+        Random rnd = new Random(11);
+        for (int n = 0; n < 1000; n++) {
+            int key = 2 * rnd.nextInt(1000);
+            rb.add(key);
+            oracle.add(key);
+        }
+        for (int from = -1; from <= 2001; from += 37) {
+            Iterator<Integer> iter = rb.iterator(from);
+            for (Integer e : oracle.tailSet(from)) {
+                assertTrue(iter.hasNext());
+                assertEquals(e, iter.next());
+            }
+            assertFalse(iter.hasNext());
+        }
+        assertFalse(rb.iterator(2000).hasNext());
+    }
+
+    /**
+     * Test spliterator() for BST_RB: splitting recursively yields exact sizes
+     * that add up, the parts cover the tree in order, and sequential and
+     * parallel streams agree with a sorted oracle.
+     */
+    @Test
+    public void testSpliterator() {
+        Random rnd = new Random(13);
+        BST_RB<Integer> rb = new BST_RB<Integer>();
+        TreeSet<Integer> oracle = new TreeSet<Integer>();
+        for (int n = 0; n < 5000; n++) {
+            int key = rnd.nextInt(100000);
+            rb.add(key);
+            oracle.add(key);
+        }
+        Spliterator<Integer> spl = rb.spliterator();
+        assertTrue(spl.hasCharacteristics(Spliterator.SIZED
+            | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.ORDERED));
+        assertNull(spl.getComparator());
+        assertEquals(oracle.size(), spl.getExactSizeIfKnown());
+        assertNull(new BST_RB<Integer>().spliterator().trySplit());
+        assertNotNull(rb.spliterator().trySplit());
+
+        //split depth-first and collect the parts in order
+        ArrayList<Integer> collected = new ArrayList<Integer>();
+        collectSplits(spl, collected, 0);
+        assertEquals(new ArrayList<Integer>(oracle), collected);
+
+        long sum = 0;
+        for (Integer e : oracle) {
+            sum += e;
+        }
+        assertEquals(sum, rb.stream().mapToLong(Integer::longValue).sum());
+        assertEquals(sum, rb.parallelStream().mapToLong(Integer::longValue).sum());
+        assertEquals(oracle.first(), rb.parallelStream().findFirst().get());
+        //the IntRBTree view uses the interface's default, wrapping its iterator
+        IntRBTree ints = new IntRBTree();
+        for (int i = 1; i <= 6; i++) {
+            ints.add(i);
+        }
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6),
+            Arrays.asList(ints.asBST().stream().toArray()));
+        assertEquals(21, ints.asBST().parallelStream()
+            .mapToInt(Integer::intValue).sum());
+    }
+
+    /**
+     * Split a spliterator recursively, checking that each split keeps the
+     * exact sizes, and append the elements of the parts in order.
+     * @param spl - the spliterator to split
+     * @param out - the list to append the elements to
+     * @param depth - the recursion depth
+     */
+    private static void collectSplits(Spliterator<Integer> spl,
+        List<Integer> out, int depth) {
+        long size = spl.estimateSize();
+        Spliterator<Integer> prefix = (depth < 12) ? spl.trySplit() : null;
+        if (prefix == null) {
+            int before = out.size();
+            spl.forEachRemaining(out::add);
+            assertEquals(size, out.size() - before);
+            return;
+        }
+        assertEquals(size, prefix.estimateSize() + spl.estimateSize());
+        collectSplits(prefix, out, depth + 1);
+        collectSplits(spl, out, depth + 1);
+    }
+
+    /**
+     * Test floor(), ceiling(), higher(), lower() and the subSet(), headSet()
+     * and tailSet() views of BST_RB, BST_AdaptPattern and the interface
+     * defaults (through an IntRBTree view) against a TreeSet oracle.
+     */
+    @Test
+    public void testNeighborsAndViews() {
+        Random rnd = new Random(14);
+        TreeSet<Integer> oracle = new TreeSet<Integer>();
+        IntRBTree ints = new IntRBTree();
+        ArrayList<BST_Interface<Integer>> trees =
+            new ArrayList<BST_Interface<Integer>>();
+        trees.add(new BST_RB<Integer>());
+        trees.add(getWhatTree(BST_ADAPT));
+        trees.add(ints.asBST());
+        for (int n = 0; n < 300; n++) {
+            int key = 2 * rnd.nextInt(200);
+            oracle.add(key);
+            trees.get(0).add(key);
+            trees.get(1).add(key);
+            ints.add(key);
+        }
+        for (BST_Interface<Integer> t : trees) {
+            for (int key = -1; key <= 401; key++) {
+                assertEquals(oracle.floor(key), t.floor(key));
+                assertEquals(oracle.ceiling(key), t.ceiling(key));
+                assertEquals(oracle.higher(key), t.higher(key));
+                assertEquals(oracle.lower(key), t.lower(key));
+            }
+            for (int lo = -1; lo <= 401; lo += 23) {
+                for (int hi = lo; hi <= 401; hi += 31) {
+                    SortedSet<Integer> expected = oracle.subSet(lo, hi);
+                    SortedSet<Integer> view = t.subSet(lo, hi);
+                    assertEquals(expected.size(), view.size());
+                    assertEquals(new ArrayList<Integer>(expected),
+                        new ArrayList<Integer>(view));
+                    if (!expected.isEmpty()) {
+                        assertEquals(expected.first(), view.first());
+                        assertEquals(expected.last(), view.last());
+                    }
+                }
+                assertEquals(new ArrayList<Integer>(oracle.headSet(lo)),
+                    new ArrayList<Integer>(t.headSet(lo)));
+                assertEquals(new ArrayList<Integer>(oracle.tailSet(lo)),
+                    new ArrayList<Integer>(t.tailSet(lo)));
+            }
+        }
+
+        //views of BST_RB write through and narrow
+        BST_RB<Integer> rb = (BST_RB<Integer>) trees.get(0);
+        SortedSet<Integer> view = rb.subSet(100, 200);
+        assertTrue(view.add(101));
+        assertTrue(rb.contains(101));
+        try {
+            view.add(200);
+            fail("Should throw IllegalArgumentException");
+        } catch (IllegalArgumentException e){
+            //correct!
+        }
+        try {
+            view.subSet(50, 150);
+            fail("Should throw IllegalArgumentException");
+        } catch (IllegalArgumentException e){
+            //correct!
+        }
+        int before = rb.size();
+        int inView = view.size();
+        Iterator<Integer> iter = view.headSet(150).iterator();
+        while (iter.hasNext()) {
+            iter.next();
+            iter.remove();
+        }
+        assertTrue(view.headSet(150).isEmpty());
+        assertEquals(before - (inView - view.size()), rb.size());
+        assertEquals(oracle.subSet(150, 200).size(), view.size());
+        assertTrue(rb.isValidRB());
+    }
+
+    /**
+     * Test split() and join() for BST_RB: both parts stay valid red-black
+     * trees holding the right elements, and joining them restores the tree.
+     */
+    @Test
+    public void testSplitJoin() {
+        Random rnd = new Random(15);
+        for (int n : new int[] {0, 1, 2, 7, 100, 1000}) {
+            TreeSet<Integer> oracle = new TreeSet<Integer>();
+            BST_RB<Integer> rb = new BST_RB<Integer>();
+            for (int i = 0; i < n; i++) {
+                int key = rnd.nextInt(4 * n + 1);
+                oracle.add(key);
+                rb.add(key);
+            }
+            for (int t = 0; t < 10; t++) {
+                int key = rnd.nextInt(4 * n + 3) - 1;
+                BST_RB<Integer> upper = rb.split(key);
+                assertTrue(rb.isValidRB());
+                assertTrue(upper.isValidRB());
+                assertEquals(new ArrayList<Integer>(oracle.headSet(key)),
+                    toList(rb));
+                assertEquals(new ArrayList<Integer>(oracle.tailSet(key)),
+                    toList(upper));
+                rb.join(upper);
+                assertTrue(upper.isEmpty());
+                assertTrue(rb.isValidRB());
+                assertEquals(new ArrayList<Integer>(oracle), toList(rb));
+            }
+        }
+        BST_RB<Integer> low = new BST_RB<Integer>(Arrays.asList(1, 5));
+        BST_RB<Integer> high = new BST_RB<Integer>(Arrays.asList(5, 9));
+        try {
+            low.join(high);
+            fail("Should throw IllegalArgumentException");
+        } catch (IllegalArgumentException e){
+            //correct!
+        }
+    }
+
+    /**
+     * Test union(), intersection() and difference() for BST_RB against
+     * TreeSet oracles, for small trees and for trees large enough to run in
+     * parallel, and for operands of very different sizes.
+     */
+    @Test
+    public void testSetOperations() {
+        Random rnd = new Random(16);
+        int[][] sizes = {{0, 10}, {10, 0}, {50, 60}, {5, 20000}, {20000, 5},
+            {30000, 30000}};
+        for (int[] sz : sizes) {
+            for (int op = 0; op < 3; op++) {
+                TreeSet<Integer> oa = new TreeSet<Integer>();
+                TreeSet<Integer> ob = new TreeSet<Integer>();
+                BST_RB<Integer> a = new BST_RB<Integer>();
+                BST_RB<Integer> b = new BST_RB<Integer>();
+                int range = 2 * Math.max(sz[0], sz[1]) + 1;
+                for (int i = 0; i < sz[0]; i++) {
+                    int key = rnd.nextInt(range);
+                    oa.add(key);
+                    a.add(key);
+                }
+                for (int i = 0; i < sz[1]; i++) {
+                    int key = rnd.nextInt(range);
+                    ob.add(key);
+                    b.add(key);
+                }
+                if (op == 0) {
+                    oa.addAll(ob);
+                    a.union(b);
+                } else if (op == 1) {
+                    oa.retainAll(ob);
+                    a.intersection(b);
+                } else {
+                    oa.removeAll(ob);
+                    a.difference(b);
+                }
+                assertTrue(b.isEmpty());
+                assertTrue(a.isValidRB());
+                assertEquals(oa.size(), a.size());
+                assertEquals(new ArrayList<Integer>(oa), toList(a));
+            }
+        }
+        BST_RB<Integer> self = new BST_RB<Integer>(Arrays.asList(1, 2, 3));
+        self.union(self);
+        assertEquals(3, self.size());
+        self.difference(self);
+        assertTrue(self.isEmpty());
+    }
+
+    /**
+     * Collect the elements of a tree in iteration order.
+     * @param t - the tree
+     * @return the elements of the tree in order
+     */
+    private static List<Integer> toList(BST_Interface<Integer> t) {
+        ArrayList<Integer> list = new ArrayList<Integer>();
+        Iterator<Integer> iter = t.iterator();
+        while (iter.hasNext()) {
+            list.add(iter.next());
+        }
+        return list;
+    }
+
+    /**
+     * Test removeRange(), removeHeadSet(), removeTailSet() and clearing a
+     * range view for BST_RB against a TreeSet oracle.
+     */
+    @Test
+    public void testRemoveRange() {
+        Random rnd = new Random(16);
+        BST_RB<Integer> rb = new BST_RB<Integer>();
+        TreeSet<Integer> oracle = new TreeSet<Integer>();
+        for (int n = 0; n < 5000; n++) {
+            int key = rnd.nextInt(20000);
+            rb.add(key);
+            oracle.add(key);
+        }
+        for (int t = 0; t < 20; t++) {
+            int lo = rnd.nextInt(20000);
+            int hi = lo + rnd.nextInt(1000);
+            SortedSet<Integer> range = oracle.subSet(lo, hi);
+            int expected = range.size();
+            range.clear();
+            assertEquals(expected, rb.removeRange(lo, hi));
+            assertTrue(rb.isValidRB());
+            assertEquals(new ArrayList<Integer>(oracle), toList(rb));
+        }
+        int expected = oracle.headSet(3000).size();
+        oracle.headSet(3000).clear();
+        assertEquals(expected, rb.removeHeadSet(3000));
+        expected = oracle.tailSet(17000).size();
+        oracle.tailSet(17000).clear();
+        assertEquals(expected, rb.removeTailSet(17000));
+        rb.subSet(8000, 9000).clear();
+        oracle.subSet(8000, 9000).clear();
+        assertTrue(rb.isValidRB());
+        assertEquals(new ArrayList<Integer>(oracle), toList(rb));
+        assertEquals(0, rb.removeRange(5, 5));
+        //an empty range keeps the element equal to its bounds
+        Integer present = oracle.first();
+        assertEquals(0, rb.removeRange(present, present));
+        assertTrue(rb.contains(present));
+        rb.subSet(present, present).clear();
+        assertTrue(rb.contains(present));
+        assertEquals(oracle.size(), rb.size());
+        try {
+            rb.removeRange(9, 5);
+            fail("Should throw IllegalArgumentException");
+        } catch (IllegalArgumentException e){
+            //correct!
+        }
+        assertEquals(oracle.size(), rb.removeTailSet(-1));
+        assertTrue(rb.isEmpty());
+    }
+
+    /**
+     * Test pollFirst() and pollLast() for BST_RB used as a priority queue
+     * against a TreeSet oracle, with first() and last() kept in step through
+     * random adds and removes.
+     */
+    @Test
+    public void testPollFirstLast() {
+        Random rnd = new Random(17);
+        BST_RB<Integer> rb = new BST_RB<Integer>();
+        TreeSet<Integer> oracle = new TreeSet<Integer>();
+        assertNull(rb.pollFirst());
+        assertNull(rb.pollLast());
+        for (int n = 0; n < 20000; n++) {
+            int choice = rnd.nextInt(6);
+            if (choice == 0) {
+                assertEquals(oracle.pollFirst(), rb.pollFirst());
+            } else if (choice == 1) {
+                assertEquals(oracle.pollLast(), rb.pollLast());
+            } else if (choice == 2) {
+                int key = rnd.nextInt(1000);
+                assertEquals(oracle.remove(key), rb.remove(key));
+            } else {
+                int key = rnd.nextInt(1000);
+                assertEquals(oracle.add(key), rb.add(key));
+            }
+            assertEquals(oracle.size(), rb.size());
+            if (!oracle.isEmpty()) {
+                assertEquals(oracle.first(), rb.first());
+                assertEquals(oracle.last(), rb.last());
+            }
+        }
+        assertTrue(rb.isValidRB());
+        while (!oracle.isEmpty()) {
+            assertEquals(oracle.pollFirst(), rb.pollFirst());
+        }
+        assertTrue(rb.isEmpty());
+        assertTrue(rb.isValidRB());
+    }
+
+    /**
+     * Test a threaded BST_RB through every kind of change against a TreeSet
+     * oracle: the neighbor links must stay consistent with the tree.
+     */
+    @Test
+    public void testThreadedTree() {
+        Random rnd = new Random(18);
+        BST_RB<Integer> rb = new BST_RB<Integer>(true);
+        TreeSet<Integer> oracle = new TreeSet<Integer>();
+        assertTrue(rb.isThreaded());
+        for (int n = 0; n < 5000; n++) {
+            int key = rnd.nextInt(2000);
+            if (rnd.nextInt(4) == 0)
+                assertEquals(oracle.remove(key), rb.remove(key));
+            else
+                assertEquals(oracle.add(key), rb.add(key));
+        }
+        assertTrue(rb.isValidRB());
+        assertEquals(oracle.pollFirst(), rb.pollFirst());
+        assertEquals(oracle.pollLast(), rb.pollLast());
+        oracle.subSet(500, 700).clear();
+        rb.removeRange(500, 700);
+        assertTrue(rb.isValidRB());
+        Iterator<Integer> iter = rb.iterator();
+        while (iter.hasNext()) {
+            Integer e = iter.next();
+            if (e % 3 == 0) {
+                iter.remove();
+                oracle.remove(e);
+            }
+        }
+        assertTrue(rb.isValidRB());
+        assertEquals(new ArrayList<Integer>(oracle), toList(rb));
+
+        BST_RB<Integer> upper = rb.split(1000);
+        assertTrue(upper.isThreaded());
+        assertTrue(rb.isValidRB());
+        assertTrue(upper.isValidRB());
+        rb.join(upper);
+        assertTrue(rb.isValidRB());
+
+        BST_RB<Integer> other = new BST_RB<Integer>(true);
+        TreeSet<Integer> sorted = new TreeSet<Integer>();
+        for (int n = 0; n < 3000; n++) {
+            sorted.add(rnd.nextInt(4000));
+        }
+        other.addAll(sorted);
+        assertTrue(other.isValidRB());
+        rb.union(other);
+        oracle.addAll(sorted);
+        assertTrue(rb.isValidRB());
+        assertEquals(new ArrayList<Integer>(oracle), toList(rb));
+        try {
+            rb.union(new BST_RB<Integer>(Arrays.asList(1, 2)));
+            fail("Should throw IllegalArgumentException");
+        } catch (IllegalArgumentException e){
+            //correct!
+        }
+    }
+
+    /**
+     * Test cursor() for plain and threaded BST_RB: walking forwards and
+     * backwards, indices, and removing after next() and after previous().
+     */
+    @Test
+    public void testCursor() {
+        for (boolean threaded : new boolean[] {false, true}) {
+            BST_RB<Integer> rb = new BST_RB<Integer>(threaded);
+            for (int i = 0; i < 100; i++) {
+                rb.add(2 * i);
+            }
+            ListIterator<Integer> cur = rb.cursor(51);
+            assertEquals(26, cur.nextIndex());
+            assertEquals(Integer.valueOf(52), cur.next());
+            assertEquals(Integer.valueOf(52), cur.previous());
+            assertEquals(Integer.valueOf(50), cur.previous());
+            cur.remove(); //removes 50
+            assertEquals(Integer.valueOf(52), cur.next());
+            cur.remove(); //removes 52
+            assertEquals(Integer.valueOf(48), cur.previous());
+            assertEquals(24, cur.nextIndex());
+            while (cur.hasPrevious()) {
+                cur.previous();
+            }
+            assertEquals(-1, cur.previousIndex());
+            int count = 0;
+            while (cur.hasNext()) {
+                cur.next();
+                count ++;
+            }
+            assertEquals(98, count);
+            assertFalse(rb.contains(50));
+            assertFalse(rb.contains(52));
+            assertTrue(rb.isValidRB());
+            assertFalse(rb.cursor(1000).hasNext());
+            try {
+                cur.set(3);
+                fail("Should throw UnsupportedOperationException");
+            } catch (UnsupportedOperationException e){
+                //correct!
+            }
+        }
+    }
+
+    /**
+     * Test ConcurrentBST_RB with writers churning some keys while readers
+     * check keys that are always present or always absent: optimistic reads
+     * must never report a torn answer.
+     */
+    @Test
+    public void testConcurrentBST_RB() throws Exception {
+        final ConcurrentBST_RB<Integer> ctree = new ConcurrentBST_RB<Integer>();
+        for (int i = 0; i < 10000; i += 2) {
+            ctree.add(i); //even keys stay; odd keys churn
+        }
+        final int writers = 2;
+        final int readers = 4;
+        final List<Throwable> errors =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int w = 0; w < writers; w++) {
+            final int seed = w;
+            threads.add(new Thread(() -> {
+                Random rnd = new Random(seed);
+                for (int n = 0; n < 50000; n++) {
+                    int key = 2 * rnd.nextInt(5000) + 1;
+                    if (rnd.nextBoolean())
+                        ctree.add(key);
+                    else
+                        ctree.remove(key);
+                }
+            }));
+        }
+        for (int r = 0; r < readers; r++) {
+            final int seed = 100 + r;
+            threads.add(new Thread(() -> {
+                try {
+                    Random rnd = new Random(seed);
+                    for (int n = 0; n < 100000; n++) {
+                        int key = 2 * rnd.nextInt(5000);
+                        assertTrue(ctree.contains(key));
+                        assertFalse(ctree.contains(-1 - key));
+                        assertEquals(Integer.valueOf(0), ctree.first());
+                        assertTrue(ctree.size() >= 5000);
+                    }
+                } catch (Throwable t) {
+                    errors.add(t);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        Iterator<Integer> iter = ctree.iterator();
+        int count = 0;
+        Integer prev = null;
+        while (iter.hasNext()) {
+            Integer e = iter.next();
+            assertTrue(prev == null || prev < e);
+            prev = e;
+            count ++;
+        }
+        assertEquals(ctree.size(), count);
+    }
+
+    /** Test that PersistentBST_RB versions stay valid and never change **/
+    @Test
+    public void testPersistentBST_RB() {
+        PersistentBST_RB<Integer> empty = new PersistentBST_RB<Integer>();
+        assertTrue(empty.isEmpty());
+        assertSame(empty, empty.remove(1));
+        PersistentBST_RB<Integer> one = empty.add(1);
+        assertSame(one, one.add(1));
+        assertTrue(empty.isEmpty());
+        assertEquals(1, one.size());
+
+        Random rnd = new Random(578);
+        TreeSet<Integer> oracle = new TreeSet<Integer>();
+        PersistentBST_RB<Integer> version = empty;
+        List<PersistentBST_RB<Integer>> versions =
+            new ArrayList<PersistentBST_RB<Integer>>();
+        List<List<Integer>> contents = new ArrayList<List<Integer>>();
+        for (int n = 0; n < 5000; n++) {
+            int key = rnd.nextInt(1000);
+            if (rnd.nextInt(3) == 0) {
+                assertEquals(oracle.remove(key), version.contains(key));
+                version = version.remove(key);
+            } else {
+                assertEquals(oracle.add(key), !version.contains(key));
+                version = version.add(key);
+            }
+            assertTrue(version.isValidRB());
+            assertEquals(oracle.size(), version.size());
+            if (n % 250 == 0) {
+                versions.add(version.snapshot());
+                contents.add(new ArrayList<Integer>(oracle));
+            }
+        }
+        //every earlier version still holds exactly what it held
+        for (int v = 0; v < versions.size(); v++) {
+            List<Integer> elements = new ArrayList<Integer>();
+            for (Iterator<Integer> iter = versions.get(v).iterator();
+                iter.hasNext(); ) {
+                elements.add(iter.next());
+            }
+            assertEquals(contents.get(v), elements);
+            assertTrue(versions.get(v).isValidRB());
+        }
+        assertEquals(oracle.first(), version.first());
+        assertEquals(oracle.last(), version.last());
+        assertEquals(oracle.toString(), version.toString());
+        //remove every element again
+        for (Integer key : new ArrayList<Integer>(oracle)) {
+            version = version.remove(key);
+            assertTrue(version.isValidRB());
+        }
+        assertTrue(version.isEmpty());
+    }
+
+    /**
+     * Test LockFreeBST alone against a TreeSet, then with writers adding and
+     * removing disjoint keys concurrently while readers check keys that are
+     * always present.
+     */
+    @Test
+    public void testLockFreeBST() throws Exception {
+        LockFreeBST<Integer> lf = new LockFreeBST<Integer>();
+        assertTrue(lf.isEmpty());
+        assertEquals(0, lf.height());
+        assertFalse(lf.iterator().hasNext());
+        Random rnd = new Random(578);
+        TreeSet<Integer> oracle = new TreeSet<Integer>();
+        for (int n = 0; n < 5000; n++) {
+            int key = rnd.nextInt(1000);
+            if (rnd.nextInt(3) == 0)
+                assertEquals(oracle.remove(key), lf.remove(key));
+            else
+                assertEquals(oracle.add(key), lf.add(key));
+        }
+        assertEquals(oracle.size(), lf.size());
+        assertEquals(new ArrayList<Integer>(oracle), toList(lf));
+        assertEquals(oracle.first(), lf.first());
+        assertEquals(oracle.last(), lf.last());
+        assertEquals(0, lf.numChildren(oracle.first()));
+        assertEquals(oracle.floor(500), lf.floor(500));
+        lf.clear();
+        assertTrue(lf.isEmpty());
+        assertEquals(0, lf.size());
+
+        final LockFreeBST<Integer> ctree = new LockFreeBST<Integer>();
+        for (int i = 0; i < 4000; i += 4) {
+            ctree.add(i); //multiples of 4 stay
+        }
+        final int writers = 4;
+        final List<Throwable> errors =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int w = 0; w < writers; w++) {
+            final int offset = 1 + w % 3; //writers share the churned keys
+            final int seed = w;
+            threads.add(new Thread(() -> {
+                Random r = new Random(seed);
+                for (int n = 0; n < 50000; n++) {
+                    int key = 4 * r.nextInt(1000) + offset;
+                    if (r.nextBoolean())
+                        ctree.add(key);
+                    else
+                        ctree.remove(key);
+                }
+            }));
+        }
+        for (int t = 0; t < 2; t++) {
+            final int seed = 100 + t;
+            threads.add(new Thread(() -> {
+                try {
+                    Random r = new Random(seed);
+                    for (int n = 0; n < 50000; n++) {
+                        assertTrue(ctree.contains(4 * r.nextInt(1000)));
+                        assertEquals(Integer.valueOf(0), ctree.first());
+                    }
+                    Integer prev = null;
+                    for (Iterator<Integer> iter = ctree.iterator();
+                        iter.hasNext(); ) {
+                        Integer e = iter.next();
+                        assertTrue(prev == null || prev < e);
+                        prev = e;
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        List<Integer> elements = toList(ctree);
+        assertEquals(elements.size(), ctree.size());
+        for (int i = 0; i < 4000; i += 4) {
+            assertTrue(ctree.contains(i));
+        }
+        for (int i = 1; i < elements.size(); i++) {
+            assertTrue(elements.get(i - 1) < elements.get(i));
+        }
+    }
+
+    /**
+     * Test ShardedBST against a TreeSet while rebalances split and join its
+     * shards, then with writers on disjoint ranges running concurrently.
+     */
+    @Test
+    public void testShardedBST() throws Exception {
+        ShardedBST<Integer> sharded = new ShardedBST<Integer>(4);
+        assertTrue(sharded.isEmpty());
+        assertEquals(1, sharded.shardCount());
+        Random rnd = new Random(578);
+        TreeSet<Integer> oracle = new TreeSet<Integer>();
+        for (int n = 0; n < 60000; n++) {
+            //the hot range moves up as keys go in
+            int key = n / 4 + rnd.nextInt(2000);
+            if (rnd.nextInt(4) == 0)
+                assertEquals(oracle.remove(key), sharded.remove(key));
+            else
+                assertEquals(oracle.add(key), sharded.add(key));
+        }
+        assertEquals(4, sharded.shardCount());
+        assertEquals(oracle.size(), sharded.size());
+        assertEquals(new ArrayList<Integer>(oracle), toList(sharded));
+        assertEquals(oracle.first(), sharded.first());
+        assertEquals(oracle.last(), sharded.last());
+        for (int key = -10; key < 17000; key += 7) {
+            assertEquals(oracle.contains(key), sharded.contains(key));
+        }
+
+        //an iterator resumes by key across a rebalance
+        Iterator<Integer> iter = sharded.iterator();
+        List<Integer> seen = new ArrayList<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            seen.add(iter.next());
+        }
+        for (int n = 0; n < 3 * ShardedBST.CHECK_INTERVAL; n++) {
+            sharded.add(20000 + n); //heats the top shard
+        }
+        while (iter.hasNext()) {
+            int e = iter.next();
+            if (e < 20000)
+                seen.add(e);
+            else
+                iter.remove();
+        }
+        assertEquals(new ArrayList<Integer>(oracle), seen);
+        assertEquals(oracle.size(), sharded.size());
+        sharded.clear();
+        assertTrue(sharded.isEmpty());
+        assertFalse(sharded.iterator().hasNext());
+
+        final ShardedBST<Integer> ctree = new ShardedBST<Integer>(8);
+        final int writers = 4;
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int w = 0; w < writers; w++) {
+            final int base = w * 100000;
+            threads.add(new Thread(() -> {
+                for (int n = 0; n < 20000; n++) {
+                    ctree.add(base + n);
+                    if (n % 2 == 1)
+                        ctree.remove(base + n);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        List<Integer> elements = toList(ctree);
+        assertEquals(writers * 10000, elements.size());
+        assertEquals(elements.size(), ctree.size());
+        for (int i = 0; i < elements.size(); i++) {
+            int w = i / 10000;
+            assertEquals(Integer.valueOf(w * 100000 + 2 * (i % 10000)),
+                elements.get(i));
+        }
+        assertTrue(ctree.shardCount() > 1);
+    }
+
+    /**
+     * Test CombiningBST_RB with producers using all three write modes, then
+     * close(): requests before it are applied, requests after it rejected.
+     */
+    @Test
+    public void testCombiningBST_RB() throws Exception {
+        final CombiningBST_RB<Integer> ctree = new CombiningBST_RB<Integer>();
+        assertTrue(ctree.isEmpty());
+        assertTrue(ctree.add(5));
+        assertFalse(ctree.add(5));
+        assertTrue(ctree.addAsync(7).get());
+        assertFalse(ctree.removeAsync(6).get());
+        assertTrue(ctree.contains(7));
+        try {
+            ctree.numChildren(6);
+            fail();
+        } catch (NoSuchElementException e) {
+            //the combiner's exception reaches the caller
+        }
+        ctree.clear();
+
+        final int producers = 4;
+        final List<Throwable> errors =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            final int id = p;
+            threads.add(new Thread(() -> {
+                try {
+                    List<Future<Boolean>> results =
+                        new ArrayList<Future<Boolean>>();
+                    for (int n = id; n < 20000; n += producers) {
+                        if (n % 3 == 0)
+                            assertTrue(ctree.add(n));
+                        else if (n % 3 == 1)
+                            results.add(ctree.addAsync(n));
+                        else
+                            ctree.addLater(n);
+                        if (n % 5 == 0)
+                            ctree.removeLater(n); //after its add: same key
+                    }
+                    for (Future<Boolean> result : results) {
+                        assertTrue(result.get());
+                    }
+                } catch (Throwable t) {
+                    errors.add(t);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        ctree.flush();
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int n = 0; n < 20000; n++) {
+            if (n % 5 != 0)
+                expected.add(n);
+        }
+        assertEquals(expected, toList(ctree));
+        assertEquals(expected.size(), ctree.size());
+        assertEquals(Integer.valueOf(1), ctree.first());
+        assertEquals(Integer.valueOf(19999), ctree.last());
+
+        ctree.addLater(-1);
+        ctree.close();
+        ctree.close();
+        try {
+            ctree.add(1);
+            fail();
+        } catch (IllegalStateException e) {
+            //closed
+        }
+        try {
+            ctree.addLater(1);
+            fail();
+        } catch (IllegalStateException e) {
+            //closed
+        }
+    }
+
+    /**
+     * Test CombiningBST_RB with a batch of requests whose keys stop comparing
+     * while the batch is being sorted: every request is still applied and
+     * completed, in arrival order.
+     */
+    @Test
+    public void testCombiningBST_RBFailedSort() throws Exception {
+        CombiningBST_RB<TouchyKey> ctree = new CombiningBST_RB<TouchyKey>();
+        TouchyKey.countdown.set(Integer.MAX_VALUE);
+        assertTrue(ctree.add(new TouchyKey(0)));
+        //hold the combiner inside a comparison while the batch piles up
+        TouchyKey.entered = new CountDownLatch(1);
+        TouchyKey.release = new CountDownLatch(1);
+        Future<Boolean> stalled = ctree.addAsync(new TouchyKey(TouchyKey.STALL));
+        TouchyKey.entered.await();
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int i = 1; i <= 200; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(23));
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int key : keys) {
+            results.add(ctree.addAsync(new TouchyKey(key)));
+        }
+        //one for the stalled comparison, then throw on the 1249th of the
+        //1269 comparisons that sort this batch, in its final merge
+        TouchyKey.countdown.set(1 + 1249);
+        TouchyKey.release.countDown();
+        assertTrue(stalled.get(10, TimeUnit.SECONDS));
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(202, ctree.size());
+        ctree.close();
+    }
+
+    /**
+     * Test addAll() of an unsorted, clustered batch into a large tree: the
+     * sorted finger-search insertion must add the same elements as add()
+     * one by one, with far fewer comparisons, and keep the tree valid.
+     */
+    @Test
+    public void testAddAllFingerSearch() {
+        BST_RB<Integer> oneByOne = new BST_RB<Integer>();
+        BST_RB<Integer> batched = new BST_RB<Integer>();
+        for (int i = 0; i < 200000; i += 2) {
+            oneByOne.add(i);
+            batched.add(i);
+        }
+        List<Integer> batch = new ArrayList<Integer>();
+        for (int i = 100001; i < 100400; i += 2) {
+            batch.add(i); //new keys between present ones
+            batch.add(i - 1); //present keys
+        }
+        batch.add(100001); //a duplicate within the batch
+        Collections.shuffle(batch, new Random(578));
+
+        oneByOne.resetComparisonCount();
+        boolean changed = false;
+        for (Integer e : batch) {
+            changed |= oneByOne.add(e);
+        }
+        long naive = oneByOne.getComparisonCount();
+        batched.resetComparisonCount();
+        assertEquals(changed, batched.addAll(batch));
+        long finger = batched.getComparisonCount();
+        assertTrue(finger + " vs " + naive, 3 * finger < naive);
+        assertTrue(batched.isValidRB());
+        assertEquals(toList(oneByOne), toList(batched));
+        assertEquals(oneByOne.size(), batched.size());
+        assertFalse(batched.addAll(batch));
+        assertEquals(Integer.valueOf(0), batched.first());
+        assertEquals(Integer.valueOf(199998), batched.last());
+        assertEquals(50000, batched.rank(100000));
+    }
+
+    /**
+     * Test containsEach() of BST_RB, its wrappers and the interface default
+     * against contains(), with unsorted keys, duplicates, and keys outside
+     * the tree; the batched lookup must compare far less than one descent
+     * per key.
+     */
+    @Test
+    public void testContainsEach() {
+        BST_RB<Integer> rb = new BST_RB<Integer>();
+        for (int i = 0; i < 100000; i += 3) {
+            rb.add(i);
+        }
+        Random rnd = new Random(578);
+        Integer[] keys = new Integer[20000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = rnd.nextInt(110000) - 5000;
+        }
+        keys[7] = keys[3]; //a duplicate
+        Integer[] copy = keys.clone();
+        BitSet expected = new BitSet();
+        rb.resetComparisonCount();
+        for (int i = 0; i < keys.length; i++) {
+            if (rb.contains(keys[i]))
+                expected.set(i);
+        }
+        long naive = rb.getComparisonCount();
+        rb.resetComparisonCount();
+        assertEquals(expected, rb.containsEach(keys));
+        assertTrue(2 * rb.getComparisonCount() < naive);
+        assertArrayEquals(copy, keys);
+        assertEquals(expected, rb.containsEach(Arrays.asList(keys)));
+        assertEquals(new BitSet(), new BST_RB<Integer>().containsEach(keys));
+
+        ConcurrentBST_RB<Integer> ctree = new ConcurrentBST_RB<Integer>();
+        LockFreeBST<Integer> lf = new LockFreeBST<Integer>(); //the default
+        List<Integer> elements = toList(rb);
+        Collections.shuffle(elements, rnd); //keeps the unbalanced tree shallow
+        ctree.addAll(elements);
+        lf.addAll(elements);
+        assertEquals(expected, ctree.containsEach(keys));
+        assertEquals(expected, lf.containsEach(Arrays.asList(keys)));
+        try (CombiningBST_RB<Integer> comb = new CombiningBST_RB<Integer>()) {
+            comb.addAll(toList(rb));
+            assertEquals(expected, comb.containsEach(keys));
+        }
+        try {
+            rb.containsEach(new Integer[] {1, null});
+            fail();
+        } catch (NullPointerException e) {
+            //null keys are rejected
+        }
+    }
+
+    /**
+     * An int key whose compareTo() throws once, on the comparison a countdown
+     * reaches, and stalls the comparing thread for the STALL key until it is
+     * released. Used to break a sort part way through.
+     */
+    private static final class TouchyKey implements Comparable<TouchyKey> {
+        static final int STALL = -1; //the key whose comparisons stall
+        static final AtomicInteger countdown = new AtomicInteger(); //throw at 0
+        static volatile CountDownLatch entered; //counted down once stalled
+        static volatile CountDownLatch release; //ends the stall
+
+        private final int value; //the key
+
+        /**
+         * Construct a key.
+         * @param value - the key
+         */
+        TouchyKey(int value) {
+            this.value = value;
+        }
+
+        /**
+         * Compare by value, stalling for STALL and throwing when the
+         * countdown reaches zero.
+         * @param o - the key to compare with
+         * @return the comparison of the values
+         */
+        public int compareTo(TouchyKey o) {
+            if (value == STALL && release != null) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                release = null;
+            }
+            if (countdown.decrementAndGet() == 0)
+                throw new IllegalStateException("incomparable");
+            return Integer.compare(value, o.value);
+        }
+    }
+
 }
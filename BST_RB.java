@@ -1,4 +1,7 @@
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 
 /**
  * BST_RB class that implements a Red-Black Balance BST Tree and implements the
@@ -9,8 +12,17 @@ import java.util.*;
 public class BST_RB<E extends Comparable <? super E>> 
     implements BST_Interface<E> {
 
+    //trees at least this large run set operations in parallel
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
     private Node root;
+    private Node firstNode; //the node of the smallest element, null if empty
+    private Node lastNode; //the node of the largest element, null if empty
     private int size;
+    private long comparisons; //number of key comparisons made by this tree
+    private int modCount; //number of structural changes, for fail-fast iterators
+    private final Part EMPTY = new Part(null, 0); //the empty detached tree
+    private final boolean threaded; //true if nodes link to their neighbors
 
     /** Inner RBTree Node class **/
     private class Node {
@@ -19,6 +31,7 @@ public class BST_RB<E extends Comparable <? super E>>
         private Node right; //right child pointer
         private Node parent; //parent pointer
         private boolean red; //true: red; false: black
+        private int subtreeSize; //number of nodes in the subtree rooted here
 
         /**
          * Construct a node with specified data and color
@@ -28,6 +41,22 @@ public class BST_RB<E extends Comparable <? super E>>
         private Node(E e, boolean red){
             this.e = e;
             this.red = red;
+            this.subtreeSize = 1;
+        }
+    }
+
+    /** Node of a threaded tree, linked to its in-order neighbors **/
+    private class ThreadedNode extends Node {
+        private ThreadedNode next; //in-order successor, null for the last node
+        private ThreadedNode prev; //in-order predecessor, null for the first node
+
+        /**
+         * Construct a threaded node with specified data and color
+         * @param e - the data of the node
+         * @param red - true if the node is red, false if black
+         */
+        private ThreadedNode(E e, boolean red){
+            super(e, red);
         }
     }
 
@@ -36,20 +65,36 @@ public class BST_RB<E extends Comparable <? super E>>
      * natural ordering of its elements.
      */
     public BST_RB() {
+        this(false);
+    }
+
+    /**
+     * Constructs a new, empty binary search tree, sorted according to the
+     * natural ordering of its elements, that is optionally threaded. In a
+     * threaded tree every node also links to its in-order successor and
+     * predecessor, which makes each step of an iterator or cursor O(1) at
+     * the cost of two more references per node and of keeping them linked
+     * on every insertion and removal.
+     * @param threaded - true to link every node to its neighbors
+     */
+    public BST_RB(boolean threaded) {
         //root default: null
         //size default: 0
+        this.threaded = threaded;
     }
 
     /**
      * Constructs a new binary search tree containing the elements in the 
      * specified collection, sorted according to the natural ordering of its
-     * elements.
+     * elements. If c is a SortedSet in natural ordering, the tree is built
+     * in linear time without any rotation.
      * @param c - collection whose elements will comprise the new BST
      * @throws ClassCastException - if the elements in c are not Comparable, or
      * are not mutually comparable
      * @throws NullPointerException - if the specified collection is null
      */
     public BST_RB(Collection<? extends E> c) {
+        this(false);
         addAll(c);
     }
     
@@ -68,13 +113,20 @@ public class BST_RB<E extends Comparable <? super E>>
         if (e == null)
            throw new NullPointerException();
         try {
-            if (contains(e)) return false;
+            //single descent from the root: the duplicate check and the search
+            //for the insertion point share one comparison per level
+            Node par = null;
+            Node cur = root;
+            int cmp = 0;
+            while (cur != null) {
+                cmp = compare(e, cur.e);
+                if (cmp == 0) return false; //already contains such element
+                par = cur;
+                cur = (cmp < 0) ? cur.left : cur.right;
+            }
 
-            //if did not already contain such element, construct a new red node
-            Node newNode = new Node(e, true);
-            BSTinsert(newNode); //insertion that will maintain BST order
-            rbBalance(newNode); //rebalance after inserting the new node
-            size ++;
+            //if did not already contain such element, insert a new red node
+            insertBelow(e, par, cmp);
             return true;
         } catch (ClassCastException cce) {
             throw cce;
@@ -83,6 +135,11 @@ public class BST_RB<E extends Comparable <? super E>>
 
     /**
      * Add all of the elements in the specified collection to this search tree.
+     * An empty tree takes them one by one in the collection's order. For a
+     * non-empty tree they are sorted first, so that a batch small against
+     * the tree is inserted by finger search from one insertion point to the
+     * next: a batch of k clustered keys takes O(k log(n/k)) comparisons
+     * instead of O(k log n). A large batch is merged in linear time instead.
      * @param  c - collection containing elements to be added to this tree
      * @return true if this tree changed as a result of the call
      * @throws ClassCastException - if the elements provided cannot be compared
@@ -94,18 +151,90 @@ public class BST_RB<E extends Comparable <? super E>>
 	public boolean addAll(Collection<? extends E> c) {
         if (c == null)
             throw new NullPointerException();
-        try {
+        //a SortedSet in natural ordering is already sorted and distinct
+        if (isNaturalSortedSet(c))
+            return addAllSorted(c);
+        //an empty tree takes the elements in their own order, which fixes
+        //its shape as callers of numChildren() expect
+        if (isEmpty()) {
             boolean hasAdded = false;
-            Iterator<? extends E> iter = c.iterator();
-            while (iter.hasNext()) {
-                //as long as one element has been successfully added
-                if (add(iter.next())) //duplicates won't be added(false)
+            for (E e : c) {
+                if (add(e)) //duplicates won't be added(false)
                     hasAdded = true;
             }
             return hasAdded;
-        } catch (ClassCastException cce) {
-            throw cce;
         }
+        //sort a copy and drop its duplicates, so the batch can be merged or
+        //finger-inserted like a sorted run
+        Object[] batch = c.toArray();
+        for (Object e : batch) {
+            if (e == null)
+                throw new NullPointerException();
+        }
+        Arrays.sort(batch);
+        @SuppressWarnings("unchecked")
+        List<E> run = (List<E>) (List<?>) Arrays.asList(batch);
+        int distinct = 0;
+        for (int i = 0; i < batch.length; i++) {
+            E e = run.get(i);
+            if (distinct == 0 || e.compareTo(run.get(distinct - 1)) != 0)
+                batch[distinct++] = e;
+        }
+        return addSorted(run.subList(0, distinct), false);
+    }
+
+    /**
+     * Add all of the elements in the specified collection, which the caller
+     * declares to be sorted in ascending order without duplicates. An empty
+     * tree is built in linear time as a perfectly balanced red-black tree with
+     * no rotation; a non-empty tree is merged with the run in linear time when
+     * that is cheaper than inserting the elements one by one.
+     * @param  c - sorted, duplicate-free collection of elements to be added
+     * @return true if this tree changed as a result of the call
+     * @throws IllegalArgumentException - if c is not strictly ascending, in
+     * which case this tree is left unchanged
+     * @throws ClassCastException - if the elements provided cannot be compared
+     * with the elements currently in the tree
+     * @throws NullPointerException - if the specified collection is null or if
+     * any element is null
+     */
+    public boolean addAllSorted(Collection<? extends E> c) {
+        if (c == null)
+            throw new NullPointerException();
+        return addSorted(c, !isNaturalSortedSet(c));
+    }
+
+    /**
+     * Add the elements of an ascending, duplicate-free run: build the tree
+     * when it is empty, merge the run in when that is cheaper than inserting,
+     * and otherwise insert the elements by finger search. Helper for addAll()
+     * and addAllSorted().
+     * @param c - the run
+     * @param checkOrder - true to verify that the run strictly ascends
+     * @return true if this tree changed as a result of the call
+     * @throws IllegalArgumentException - if checkOrder is set and c is not
+     * strictly ascending, in which case this tree is left unchanged
+     */
+    private boolean addSorted(Collection<? extends E> c, boolean checkOrder) {
+        int runSize = c.size();
+        if (runSize == 0)
+            return false;
+        if (isEmpty()) {
+            Node newRoot = buildFromSorted(c.iterator(), runSize, checkOrder);
+            root = newRoot;
+            size = runSize;
+            modCount ++;
+            rethread();
+            return true;
+        }
+        //merging costs n + m steps, inserting costs about m * log(n)
+        int logSize = 32 - Integer.numberOfLeadingZeros(size);
+        if ((long) runSize * logSize < (long) size + runSize) {
+            if (checkOrder)
+                checkSorted(c);
+            return addAscending(c.iterator());
+        }
+        return mergeSorted(c.iterator(), runSize, checkOrder);
     }
 
     /**
@@ -113,7 +242,10 @@ public class BST_RB<E extends Comparable <? super E>>
      */
 	public void clear() {
         root = null;
+        firstNode = null;
+        lastNode = null;
         size = 0;
+        modCount ++;
     }
     
     /**
@@ -135,6 +267,42 @@ public class BST_RB<E extends Comparable <? super E>>
             throw cce;
         }
     }
+
+    /**
+     * Looks up a batch of keys in one traversal. Bit i of the result is set
+     * if the i-th key, in the collection's iteration order, is in this tree.
+     * The keys are visited in ascending order, each searched from where the
+     * previous search ended (finger search, as in addAll()), so k keys cost
+     * O(k log(n/k)) comparisons instead of O(k log n).
+     * @param keys - the keys to look up
+     * @return the keys found, by position
+     * @throws ClassCastException - if a key cannot be compared with the
+     * elements currently in the tree
+     * @throws NullPointerException - if keys is null or holds a null key
+     */
+    @Override
+    public BitSet containsEach(Collection<? extends E> keys) {
+        if (keys == null)
+            throw new NullPointerException();
+        return findEach(keys.toArray());
+    }
+
+    /**
+     * Looks up an array of keys in one traversal, as containsEach(Collection)
+     * does. Bit i of the result is set if keys[i] is in this tree. The array
+     * is not modified.
+     * @param keys - the keys to look up
+     * @return the keys found, by index
+     * @throws ClassCastException - if a key cannot be compared with the
+     * elements currently in the tree
+     * @throws NullPointerException - if keys is null or holds a null key
+     */
+    @Override
+    public BitSet containsEach(E[] keys) {
+        if (keys == null)
+            throw new NullPointerException();
+        return findEach(keys);
+    }
     
     /**
      * Returns the first (lowest) element currently in this search tree.
@@ -145,12 +313,8 @@ public class BST_RB<E extends Comparable <? super E>>
         if (isEmpty())
             throw new NoSuchElementException();
 
-        //smallest element is the root's leftmost child
-        Node cur = root;
-        while (cur.left != null){
-             cur = cur.left;
-        }
-        return cur.e;
+        //smallest element's node is kept up to date by every change
+        return firstNode.e;
     }
     
     /**
@@ -167,9 +331,162 @@ public class BST_RB<E extends Comparable <? super E>>
      * @return an iterator over the elements in this tree in ascending order
      */
 	public Iterator<E> iterator() {
-        return new BST_RBIterator();
+        return new BST_RBIterator(firstNode);
     } 
 
+    /**
+     * Returns an iterator over the elements in this search tree that are
+     * greater than or equal to the specified element, in ascending order.
+     * Positioning the iterator takes one descent from the root.
+     * @param from - the lowest element to iterate from; need not be in the tree
+     * @return an iterator over the elements from the specified one onwards
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in the tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    @Override
+    public Iterator<E> iterator(E from) {
+        return new BST_RBIterator(neighborNode(from, true, true));
+    }
+
+    /**
+     * Returns a bidirectional cursor over the elements in this search tree,
+     * positioned before the least element greater than or equal to the
+     * specified element. Each step is O(1) if this tree is threaded and
+     * amortized O(1) otherwise; remove() unlinks the last returned node
+     * directly. The cursor fails fast like the iterator.
+     * @param from - the element to position the cursor at; need not be in
+     * the tree
+     * @return a cursor positioned before the ceiling of from
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in the tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    public ListIterator<E> cursor(E from) {
+        return new BST_RBCursor(neighborNode(from, true, true));
+    }
+
+    /**
+     * Returns whether the nodes of this tree link to their neighbors.
+     * @return true if this tree is threaded
+     */
+    public boolean isThreaded() {
+        return threaded;
+    }
+
+    /**
+     * Returns the greatest element in this search tree less than or equal to
+     * the given element, in one descent.
+     * @param e - the element to search
+     * @return the floor of e, <tt>null</tt> if there is none
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in the tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    @Override
+    public E floor(E e) {
+        return elementOf(neighborNode(e, false, true));
+    }
+
+    /**
+     * Returns the least element in this search tree greater than or equal to
+     * the given element, in one descent.
+     * @param e - the element to search
+     * @return the ceiling of e, <tt>null</tt> if there is none
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in the tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    @Override
+    public E ceiling(E e) {
+        return elementOf(neighborNode(e, true, true));
+    }
+
+    /**
+     * Returns the least element in this search tree strictly greater than the
+     * given element, in one descent.
+     * @param e - the element to search
+     * @return the next element after e, <tt>null</tt> if there is none
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in the tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    @Override
+    public E higher(E e) {
+        return elementOf(neighborNode(e, true, false));
+    }
+
+    /**
+     * Returns the greatest element in this search tree strictly less than the
+     * given element, in one descent.
+     * @param e - the element to search
+     * @return the element before e, <tt>null</tt> if there is none
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in the tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    @Override
+    public E lower(E e) {
+        return elementOf(neighborNode(e, false, false));
+    }
+
+    /**
+     * Returns a view of the elements in this search tree from fromElement,
+     * inclusive, to toElement, exclusive. The view copies nothing: iterating
+     * it positions in the tree in one descent, and its size() takes two.
+     * @param fromElement - the inclusive lower bound
+     * @param toElement - the exclusive upper bound
+     * @return a view of the range
+     * @throws IllegalArgumentException - if fromElement is greater than
+     * toElement
+     * @throws NullPointerException - if either bound is null
+     */
+    @Override
+    public SortedSet<E> subSet(E fromElement, E toElement) {
+        if (fromElement == null || toElement == null)
+            throw new NullPointerException();
+        return new RangeView(fromElement, toElement);
+    }
+
+    /**
+     * Returns a view of the elements in this search tree less than toElement.
+     * @param toElement - the exclusive upper bound
+     * @return a view of the range
+     * @throws NullPointerException - if toElement is null
+     */
+    @Override
+    public SortedSet<E> headSet(E toElement) {
+        if (toElement == null)
+            throw new NullPointerException();
+        return new RangeView(null, toElement);
+    }
+
+    /**
+     * Returns a view of the elements in this search tree greater than or
+     * equal to fromElement.
+     * @param fromElement - the inclusive lower bound
+     * @return a view of the range
+     * @throws NullPointerException - if fromElement is null
+     */
+    @Override
+    public SortedSet<E> tailSet(E fromElement) {
+        if (fromElement == null)
+            throw new NullPointerException();
+        return new RangeView(fromElement, null);
+    }
+
+    /**
+     * Returns a Spliterator over the elements in this search tree in
+     * ascending order. It splits at subtree roots, starting from the root,
+     * and knows the exact size of every part from the subtree sizes, so
+     * parallel streams divide the work evenly.
+     * @return a Spliterator over the elements in this tree
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        return new BST_RBSpliterator(firstNode, null, size, 0);
+    }
+
     /**
      * Returns the last (highest) element currently in this search tree.
      * @return the last (highest) element currently in this search tree
@@ -179,12 +496,36 @@ public class BST_RB<E extends Comparable <? super E>>
         if (isEmpty())
             throw new NoSuchElementException();
 
-         //largest element is the root's rightmost child
-         Node cur = root;
-         while (cur.right != null){
-             cur = cur.right;
-         }
-         return cur.e;
+        //largest element's node is kept up to date by every change
+        return lastNode.e;
+    }
+
+    /**
+     * Retrieves and removes the first (lowest) element of this search tree.
+     * The node is found without a search, but the removal is still
+     * O(log n), as it updates subtree sizes all the way to the root.
+     * @return the first element, <tt>null</tt> if this tree is empty
+     */
+    public E pollFirst() {
+        if (isEmpty())
+            return null;
+        E e = firstNode.e;
+        removeNode(firstNode);
+        return e;
+    }
+
+    /**
+     * Retrieves and removes the last (highest) element of this search tree.
+     * The node is found without a search, but the removal is still
+     * O(log n), as it updates subtree sizes all the way to the root.
+     * @return the last element, <tt>null</tt> if this tree is empty
+     */
+    public E pollLast() {
+        if (isEmpty())
+            return null;
+        E e = lastNode.e;
+        removeNode(lastNode);
+        return e;
     }
 
     /**
@@ -204,8 +545,7 @@ public class BST_RB<E extends Comparable <? super E>>
             Node node = BSTSearch(o);
             if (node == null) return false; //can't find the key
             else {
-                rbRemoveNode(node);
-                size --;
+                removeNode(node);
                 return true;
             }
         } catch (ClassCastException cce) {
@@ -252,7 +592,227 @@ public class BST_RB<E extends Comparable <? super E>>
         if (node == null) //target not found
             throw new NoSuchElementException();
         else
-            return numNodes(node)-1;
+            return node.subtreeSize - 1;
+    }
+
+    /**
+     * Returns the number of elements in this search tree that are strictly
+     * less than the specified element, which need not be in the tree. For an
+     * element in the tree this is its zero-based position in ascending order.
+     * @param e - the element to rank
+     * @return the number of elements strictly less than e
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in the tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    public int rank(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        return rankOf(e, false);
+    }
+
+    /**
+     * Returns the element at the specified zero-based position of this search
+     * tree in ascending order, so select(0) is first() and select(size() - 1)
+     * is last().
+     * @param k - the zero-based position of the element to return
+     * @return the element at position k
+     * @throws IndexOutOfBoundsException - if k is negative or not less than
+     * size()
+     */
+    public E select(int k) {
+        if (k < 0 || k >= size)
+            throw new IndexOutOfBoundsException();
+        Node cur = root;
+        while (true) {
+            int leftSize = sizeOf(cur.left);
+            if (k == leftSize)
+                return cur.e;
+            if (k < leftSize) {
+                cur = cur.left;
+            } else {
+                k -= leftSize + 1; //skip the left subtree and the node itself
+                cur = cur.right;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of elements e in this search tree such that
+     * lo <= e <= hi. Neither bound needs to be in the tree.
+     * @param lo - the lowest element to count
+     * @param hi - the highest element to count
+     * @return the number of elements between lo and hi, inclusive
+     * @throws IllegalArgumentException - if lo is greater than hi
+     * @throws ClassCastException - if the specified objects cannot be compared
+     * with the elements currently in the tree
+     * @throws NullPointerException - if lo or hi is null
+     */
+    public int countBetween(E lo, E hi) {
+        if (lo == null || hi == null)
+            throw new NullPointerException();
+        if (lo.compareTo(hi) > 0)
+            throw new IllegalArgumentException();
+        return rankOf(hi, true) - rankOf(lo, false);
+    }
+
+    /**
+     * Splits this search tree at a key: this tree keeps the elements less
+     * than key, and the elements greater than or equal to key move to the
+     * returned tree. Takes O(log n) time; no element is compared more than
+     * once per level.
+     * @param key - the key to split at; need not be in the tree
+     * @return a new tree holding the elements greater than or equal to key
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in the tree
+     * @throws NullPointerException - if the specified key is null
+     */
+    public BST_RB<E> split(E key) {
+        if (key == null)
+            throw new NullPointerException();
+        Split s = split(whole(), key);
+        comparisons += s.comparisons;
+        Part right = s.right;
+        if (s.found != null) //the key itself belongs to the upper part
+            right = join(EMPTY, s.found, right);
+        install(s.left);
+        BST_RB<E> upper = new BST_RB<E>(threaded);
+        upper.install(right);
+        return upper;
+    }
+
+    /**
+     * Removes the elements of this search tree from lo, inclusive, to hi,
+     * exclusive. The range is cut out with two splits and one join, so it
+     * takes O(log n) time and rebalances once, however many elements go.
+     * @param lo - the inclusive lower bound
+     * @param hi - the exclusive upper bound
+     * @return the number of elements removed
+     * @throws IllegalArgumentException - if lo is greater than hi
+     * @throws ClassCastException - if the bounds cannot be compared with the
+     * elements currently in the tree
+     * @throws NullPointerException - if either bound is null
+     */
+    public int removeRange(E lo, E hi) {
+        if (lo == null || hi == null)
+            throw new NullPointerException();
+        if (compare(lo, hi) > 0)
+            throw new IllegalArgumentException();
+        return removeBetween(lo, hi);
+    }
+
+    /**
+     * Removes the elements of this search tree less than toElement, in
+     * O(log n) time.
+     * @param toElement - the exclusive upper bound
+     * @return the number of elements removed
+     * @throws ClassCastException - if the bound cannot be compared with the
+     * elements currently in the tree
+     * @throws NullPointerException - if the bound is null
+     */
+    public int removeHeadSet(E toElement) {
+        if (toElement == null)
+            throw new NullPointerException();
+        return removeBetween(null, toElement);
+    }
+
+    /**
+     * Removes the elements of this search tree greater than or equal to
+     * fromElement, in O(log n) time.
+     * @param fromElement - the inclusive lower bound
+     * @return the number of elements removed
+     * @throws ClassCastException - if the bound cannot be compared with the
+     * elements currently in the tree
+     * @throws NullPointerException - if the bound is null
+     */
+    public int removeTailSet(E fromElement) {
+        if (fromElement == null)
+            throw new NullPointerException();
+        return removeBetween(fromElement, null);
+    }
+
+    /**
+     * Appends every element of another search tree, all of which must be
+     * greater than every element of this tree, in O(log n) time. The nodes
+     * of the other tree move into this tree, so it is left empty.
+     * @param other - the tree whose elements all follow this tree's
+     * @throws IllegalArgumentException - if some element of other is not
+     * greater than every element of this tree, other is this tree, or this
+     * tree is threaded and other is not
+     * @throws NullPointerException - if other is null
+     */
+    public void join(BST_RB<E> other) {
+        if (other == this)
+            throw new IllegalArgumentException();
+        if (other.isEmpty())
+            return;
+        checkThreading(other);
+        if (!isEmpty() && compare(last(), other.first()) >= 0)
+            throw new IllegalArgumentException();
+        Node lowerLast = lastNode;
+        Node upperFirst = other.firstNode;
+        install(join2(whole(), other.whole()));
+        other.install(EMPTY);
+        if (threaded)
+            thread(lowerLast, upperFirst);
+    }
+
+    /**
+     * Adds every element of another search tree to this tree. Takes
+     * O(m log(n/m + 1)) time for trees of sizes m <= n, and runs its halves
+     * in parallel on the common ForkJoinPool when the trees are large. The
+     * nodes of the other tree move into this tree, so it is left empty.
+     * @param other - the tree whose elements are added
+     * @throws IllegalArgumentException - if this tree is threaded and other
+     * is not
+     * @throws NullPointerException - if other is null
+     */
+    public void union(BST_RB<E> other) {
+        setOperation(SetOperation.UNION, other);
+    }
+
+    /**
+     * Retains only the elements of this search tree that another search tree
+     * contains. Takes O(m log(n/m + 1)) time for trees of sizes m <= n, and
+     * runs its halves in parallel on the common ForkJoinPool when the trees
+     * are large. The other tree is left empty.
+     * @param other - the tree whose elements are retained
+     * @throws IllegalArgumentException - if this tree is threaded and other
+     * is not
+     * @throws NullPointerException - if other is null
+     */
+    public void intersection(BST_RB<E> other) {
+        setOperation(SetOperation.INTERSECTION, other);
+    }
+
+    /**
+     * Removes from this search tree every element another search tree
+     * contains. Takes O(m log(n/m + 1)) time for trees of sizes m <= n, and
+     * runs its halves in parallel on the common ForkJoinPool when the trees
+     * are large. The other tree is left empty.
+     * @param other - the tree whose elements are removed
+     * @throws IllegalArgumentException - if this tree is threaded and other
+     * is not
+     * @throws NullPointerException - if other is null
+     */
+    public void difference(BST_RB<E> other) {
+        setOperation(SetOperation.DIFFERENCE, other);
+    }
+
+    /**
+     * Returns the number of key comparisons (calls to compareTo) this tree has
+     * performed since it was created or since the counter was last reset.
+     * @return the number of key comparisons performed by this tree
+     */
+    public long getComparisonCount() {
+        return comparisons;
+    }
+
+    /**
+     * Resets the key comparison counter of this tree to zero.
+     */
+    public void resetComparisonCount() {
+        comparisons = 0;
     }
 
     /**
@@ -269,21 +829,119 @@ public class BST_RB<E extends Comparable <? super E>>
        return list.toString();
     }
 
+    /**
+     * Verify the BST order, the red-black properties, the parent pointers,
+     * the subtree sizes, the first and last nodes and, if threaded, the
+     * neighbor links of the whole tree. Used
+     * by the tester after bulk operations.
+     * @return true if this tree is a valid red-black tree
+     */
+    boolean isValidRB() {
+        if (firstNode != leftmost(root) || lastNode != rightmost(root))
+            return false;
+        if (threaded) {
+            //every thread must agree with the structural neighbors
+            Node prev = null;
+            for (Node cur = firstNode; cur != null; cur = successor(cur)) {
+                if (((ThreadedNode) cur).prev != prev
+                    || (prev != null && ((ThreadedNode) prev).next != cur))
+                    return false;
+                prev = cur;
+            }
+            if (prev != null && ((ThreadedNode) prev).next != null)
+                return false;
+        }
+        if (root == null)
+            return size == 0;
+        return !root.red && root.parent == null && blackHeight(root) >= 0
+            && root.subtreeSize == size;
+    }
+
+    /**
+     * Search for an element without assuming the tree is consistent, for a
+     * reader that races with a writer and validates the answer afterwards
+     * (see ConcurrentBST_RB). The descent counts no comparisons and gives up
+     * after 64 levels, more than any red-black tree of int size has, so a
+     * cycle seen halfway through a rotation cannot trap it.
+     * @param key - the key to search
+     * @return 1 if the key was found, 0 if not, -1 if the search gave up
+     */
+    int searchUnchecked(E key) {
+        Node cur = root;
+        for (int depth = 0; cur != null; depth++) {
+            if (depth == 64)
+                return -1;
+            E e = cur.e;
+            if (e == null)
+                return -1;
+            int cmp = key.compareTo(e);
+            if (cmp == 0)
+                return 1;
+            cur = (cmp < 0) ? cur.left : cur.right;
+        }
+        return 0;
+    }
+
     /************** Private Helper Methods **********/
 
-     /**
-      * Return the number of nodes (including all children and itself) from a 
-      * specified node. Helper for numChildren().
-      * @param node - the starting node to calculate number of nodes
-      * @return the number of nodes from a specified node
-      */
-     private int numNodes(Node node) {
-         //base case when the node is null
-         if (node == null)
-             return 0;
-         //recursively adding up the nodes from left and right subtree (adding
-         //an extra 1 is the node itself)
-         return (numNodes(node.left) + numNodes(node.right) + 1);
+    /**
+     * Return the number of nodes in a subtree from its stored size.
+     * @param node - the root of the subtree
+     * @return the number of nodes in the subtree, 0 if node is null
+     */
+    private int sizeOf(Node node) {
+        return (node == null) ? 0 : node.subtreeSize;
+    }
+
+    /**
+     * Recompute the stored subtree size of a node from its children. Helper
+     * for the rotations and the bulk loaders.
+     * @param node - the node whose children are already up to date
+     */
+    private void updateSize(Node node) {
+        node.subtreeSize = sizeOf(node.left) + sizeOf(node.right) + 1;
+    }
+
+    /**
+     * Return the number of elements less than (or, if inclusive, equal to)
+     * a key in one descent. Helper for rank() and countBetween().
+     * @param key - the key to rank
+     * @param inclusive - true to also count an element equal to the key
+     * @return the number of elements less than (or equal to) the key
+     */
+    private int rankOf(E key, boolean inclusive) {
+        int rank = 0;
+        Node cur = root;
+        while (cur != null) {
+            int cmp = compare(key, cur.e);
+            if (cmp == 0)
+                return rank + sizeOf(cur.left) + (inclusive ? 1 : 0);
+            if (cmp < 0) {
+                cur = cur.left;
+            } else {
+                rank += sizeOf(cur.left) + 1;
+                cur = cur.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Return the number of elements less than a node's element by walking up
+     * its parent pointers. Helper for the spliterator.
+     * @param node - the node to rank; <tt>null</tt> ranks past the last node
+     * @return the number of nodes before the node in order
+     */
+    private int rankOfNode(Node node) {
+        if (node == null)
+            return size;
+        int rank = sizeOf(node.left);
+        for (Node cur = node; cur.parent != null; cur = cur.parent) {
+            //each ancestor we are right of precedes us with its left subtree
+            if (cur == cur.parent.right)
+                rank += sizeOf(cur.parent.left) + 1;
+        }
+        return rank;
     }
 
     /**
@@ -303,28 +961,280 @@ public class BST_RB<E extends Comparable <? super E>>
     }
 
     /**
-     * Return the node in the BST with matching key, <tt>null</tt> if cannot
-     * found. Helper for contains() and RBT remove(key) and numChildren(key).
-     * @param key - the key to search
-     * @return the node with matching key
+     * Return the black height of a subtree after checking its order, colors
+     * and parent pointers. Helper for isValidRB().
+     * @param node - the root of the subtree
+     * @return the number of black nodes on every path down to a leaf, -1 if
+     * the subtree violates any property
      */
-    private Node BSTSearch(E key) {
-        //search from the root
-        Node cur = root;
-        while (cur != null){
-            if (key.compareTo(cur.e) == 0)
-                return cur;
-            else if (key.compareTo(cur.e) < 0)
-                cur = cur.left;
-            else
-                cur = cur.right;
-        }
+    private int blackHeight(Node node) {
+        if (node == null)
+            return 0;
+        if (node.left != null && (node.left.parent != node
+            || node.left.e.compareTo(node.e) >= 0))
+            return -1;
+        if (node.right != null && (node.right.parent != node
+            || node.right.e.compareTo(node.e) <= 0))
+            return -1;
+        if (node.red && (rbNonNullAndRed(node.left)
+            || rbNonNullAndRed(node.right)))
+            return -1;
+        if (node.subtreeSize != sizeOf(node.left) + sizeOf(node.right) + 1)
+            return -1;
+        int leftHeight = blackHeight(node.left);
+        int rightHeight = blackHeight(node.right);
+        if (leftHeight < 0 || leftHeight != rightHeight)
+            return -1;
+        return leftHeight + (node.red ? 0 : 1);
+    }
+
+    /**
+     * Get the leftmost (smallest) node of a subtree.
+     * @param node - the root of the subtree
+     * @return the leftmost node, <tt>null</tt> if the subtree is empty
+     */
+    private Node leftmost(Node node) {
+        if (node == null)
+            return null;
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    /**
+     * Get the rightmost (largest) node of a subtree.
+     * @param node - the root of the subtree
+     * @return the rightmost node, <tt>null</tt> if the subtree is empty
+     */
+    private Node rightmost(Node node) {
+        if (node == null)
+            return null;
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    /**
+     * Get the in-order predecessor of a node using parent pointers, in
+     * constant space. Helper for removeNode().
+     * @param node - the node to get the predecessor
+     * @return the predecessor node, <tt>null</tt> if node is the smallest
+     */
+    private Node predecessor(Node node) {
+        //the predecessor is the rightmost node of the left subtree if present
+        if (node.left != null)
+            return rightmost(node.left);
+        //otherwise it is the first ancestor reached from its right subtree
+        Node par = node.parent;
+        while (par != null && node == par.left) {
+            node = par;
+            par = par.parent;
+        }
+        return par;
+    }
+
+    /**
+     * Find the first and last nodes again after the whole tree was replaced,
+     * cutting their outer threads. Helper for the bulk operations.
+     */
+    private void resetEnds() {
+        firstNode = leftmost(root);
+        lastNode = rightmost(root);
+        //parts cut from a threaded tree keep their inner threads
+        if (threaded && root != null) {
+            thread(null, firstNode);
+            thread(lastNode, null);
+        }
+    }
+
+    /**
+     * Remove a node found without a search, keeping the first and last
+     * nodes, the size and the modification count up to date. Helper for
+     * remove(), pollFirst(), pollLast() and the iterator.
+     * @param node - the node to be removed
+     */
+    private void removeNode(Node node) {
+        //removal relinks nodes without moving elements, so the neighbors of
+        //the node are still the right nodes afterwards; find them only when
+        //needed, as an unthreaded tree climbs parent pointers to do so
+        Node next = (threaded || node == firstNode) ? nextNode(node) : null;
+        Node prev = (threaded || node == lastNode) ? prevNode(node) : null;
+        if (node == firstNode)
+            firstNode = next;
+        if (node == lastNode)
+            lastNode = prev;
+        rbRemoveNode(node);
+        if (threaded)
+            thread(prev, next);
+        size --;
+        modCount ++;
+    }
+
+    /**
+     * Create a node of the kind this tree uses.
+     * @param e - the data of the node
+     * @param red - true if the node is red, false if black
+     * @return a threaded node if this tree is threaded, else a plain node
+     */
+    private Node newNode(E e, boolean red) {
+        return threaded ? new ThreadedNode(e, red) : new Node(e, red);
+    }
+
+    /**
+     * Get the in-order successor of a node, from its thread if this tree is
+     * threaded.
+     * @param node - the node to get the successor
+     * @return the successor node, <tt>null</tt> if node is the largest
+     */
+    private Node nextNode(Node node) {
+        return threaded ? ((ThreadedNode) node).next : successor(node);
+    }
+
+    /**
+     * Get the in-order predecessor of a node, from its thread if this tree
+     * is threaded.
+     * @param node - the node to get the predecessor
+     * @return the predecessor node, <tt>null</tt> if node is the smallest
+     */
+    private Node prevNode(Node node) {
+        return threaded ? ((ThreadedNode) node).prev : predecessor(node);
+    }
+
+    /**
+     * Link two nodes of a threaded tree as in-order neighbors.
+     * @param prev - the earlier node, <tt>null</tt> if next becomes first
+     * @param next - the later node, <tt>null</tt> if prev becomes last
+     */
+    private void thread(Node prev, Node next) {
+        if (prev != null)
+            ((ThreadedNode) prev).next = (ThreadedNode) next;
+        if (next != null)
+            ((ThreadedNode) next).prev = (ThreadedNode) prev;
+    }
+
+    /**
+     * Link every node of a threaded tree to its neighbors after the whole
+     * tree was rebuilt, in O(n), and find the first and last nodes again.
+     * Helper for the bulk loaders and the set operations.
+     */
+    private void rethread() {
+        if (threaded) {
+            Node prev = null;
+            for (Node cur = leftmost(root); cur != null; cur = successor(cur)) {
+                thread(prev, cur);
+                prev = cur;
+            }
+            thread(prev, null);
+        }
+        resetEnds();
+    }
+
+    /**
+     * Verify that a threaded tree may take the nodes of another tree.
+     * @param other - the tree whose nodes would move into this tree
+     * @throws IllegalArgumentException - if this tree is threaded and the
+     * other tree is not
+     */
+    private void checkThreading(BST_RB<E> other) {
+        if (threaded && !other.threaded)
+            throw new IllegalArgumentException("other tree is not threaded");
+    }
+
+    /**
+     * Get the in-order successor of a node using parent pointers, in constant
+     * space. Helper for the iterator and the bulk loaders.
+     * @param node - the node to get the successor
+     * @return the successor node, <tt>null</tt> if node is the largest
+     */
+    private Node successor(Node node) {
+        //the successor is the leftmost node of the right subtree if present
+        if (node.right != null)
+            return leftmost(node.right);
+        //otherwise it is the first ancestor reached from its left subtree
+        Node par = node.parent;
+        while (par != null && node == par.right) {
+            node = par;
+            par = par.parent;
+        }
+        return par;
+    }
+
+    /**
+     * Return the node with the least element greater than (or, if inclusive,
+     * equal to) a key, or with the greatest element less than (or equal to)
+     * it, in one descent. Helper for the neighbor queries and iterator(from).
+     * @param key - the key to search
+     * @param greater - true to search above the key, false to search below
+     * @param inclusive - true if a node equal to the key qualifies
+     * @return the neighbor node, <tt>null</tt> if there is none
+     */
+    private Node neighborNode(E key, boolean greater, boolean inclusive) {
+        if (key == null)
+            throw new NullPointerException();
+        Node best = null;
+        Node cur = root;
+        while (cur != null) {
+            int cmp = compare(key, cur.e);
+            if (cmp == 0 && inclusive)
+                return cur;
+            if (greater ? cmp < 0 : cmp > 0) {
+                best = cur; //cur is a candidate; look for a closer one
+                cur = greater ? cur.left : cur.right;
+            } else {
+                cur = greater ? cur.right : cur.left;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Return the element of a node. Helper for the neighbor queries.
+     * @param node - the node, may be null
+     * @return the node's element, <tt>null</tt> if the node is null
+     */
+    private E elementOf(Node node) {
+        return (node == null) ? null : node.e;
+    }
+
+    /**
+     * Return the node in the BST with matching key, <tt>null</tt> if cannot
+     * found. Helper for contains() and RBT remove(key) and numChildren(key).
+     * @param key - the key to search
+     * @return the node with matching key
+     */
+    private Node BSTSearch(E key) {
+        //search from the root, comparing only once per level
+        Node cur = root;
+        while (cur != null){
+            int cmp = compare(key, cur.e);
+            if (cmp == 0)
+                return cur;
+            else if (cmp < 0)
+                cur = cur.left;
+            else
+                cur = cur.right;
+        }
         return null;
     }
 
+    /**
+     * Compare a key with an element of the tree, counting the comparison.
+     * Every key comparison made by this tree goes through this method.
+     * @param key - the key being searched for or inserted
+     * @param other - the element of the tree to compare against
+     * @return a negative integer, zero, or a positive integer as the key is
+     * less than, equal to, or greater than the other element
+     */
+    private int compare(E key, E other) {
+        comparisons ++;
+        return key.compareTo(other);
+    }
+
     /**
      * Set the child of a parent to a specified child. Helper for
-     * rbReplaceChild().
+     * rbReplaceChild() and BSTinsert().
      * @param parent - the parent node
      * @param isLeftChild - true if intend to set left child, false if right child
      * @param child - the child node to be set
@@ -374,7 +1284,11 @@ public class BST_RB<E extends Comparable <? super E>>
         rbSetChild(node.right, true, node);
         //update the node's right child to point to the right child's former
         //left child
+        Node rightChild = node.right;
         rbSetChild(node, false, rightLeftChild);
+        //the node is now below its former right child: fix sizes bottom up
+        updateSize(node);
+        updateSize(rightChild);
     }
 
     /**
@@ -393,7 +1307,11 @@ public class BST_RB<E extends Comparable <? super E>>
             root.parent = null; //important!! (update parent pointer)
         }
         rbSetChild(node.left, false, node);
+        Node leftChild = node.left;
         rbSetChild(node, true, leftRightChild);
+        //the node is now below its former left child: fix sizes bottom up
+        updateSize(node);
+        updateSize(leftChild);
     }
 
     /**
@@ -475,37 +1393,60 @@ public class BST_RB<E extends Comparable <? super E>>
             return grandparent.left;
     }
 
+    /**
+     * Hang a new red node holding an element under the node where a search
+     * ended, then rebalance. Helper for add() and addAscending().
+     * @param e - the element, not yet in the tree
+     * @param par - the node where the search ended, <tt>null</tt> if the
+     * tree is empty
+     * @param cmp - the comparison of e with par's element
+     * @return the new node
+     */
+    private Node insertBelow(E e, Node par, int cmp) {
+        Node newNode = newNode(e, true);
+        BSTinsert(newNode, par, cmp < 0); //hang the node where search ended
+        if (threaded && par != null) {
+            //the new node sits between its parent and the parent's
+            //neighbor on the side it hangs from
+            if (cmp < 0) {
+                thread(((ThreadedNode) par).prev, newNode);
+                thread(newNode, par);
+            } else {
+                thread(newNode, ((ThreadedNode) par).next);
+                thread(par, newNode);
+            }
+        }
+        //a new end can only hang off the left of the first node or the
+        //right of the last node
+        if (par == null || (cmp < 0 && par == firstNode))
+            firstNode = newNode;
+        if (par == null || (cmp > 0 && par == lastNode))
+            lastNode = newNode;
+        rbBalance(newNode); //rebalance after inserting the new node
+        size ++;
+        modCount ++;
+        return newNode;
+    }
+
     /**
      * Insert a node that maintains BST order. Helper for the RBT add().
-     * add() will guard against duplicates and null elements.
+     * add() has already found the insertion point during its descent and
+     * guards against duplicates and null elements.
      * @param node - the node to insert
+     * @param par - the parent to hang the node under, <tt>null</tt> if the
+     * tree is empty
+     * @param isLeftChild - true if the node becomes the left child of par
      */
-    private void BSTinsert(Node node) {
+    private void BSTinsert(Node node, Node par, boolean isLeftChild) {
         //if the tree is empty
-        if (root == null) {
+        if (par == null) {
             root = node;
             node.parent = null; //important!!! (update parent pointer)
         } else {
-            //traverse from the root to find where to insert
-            Node cur = root;
-            while (cur != null) {
-               //if the node to be inserted is smaller than cur node
-               if ((node.e).compareTo(cur.e) < 0) {
-                   if (cur.left == null) {
-                       cur.left = node;
-                       node.parent = cur; //update parent pointer
-                       cur = null; //immediately exit the loop once inserted 
-                   } else 
-                       cur = cur.left;
-               //if the node to be inserted is greater than cur node 
-               } else {
-                   if (cur.right == null) {
-                       cur.right = node;
-                       node.parent = cur; //update parent pointer
-                       cur = null; //immediately exit the loop once inserted
-                   } else 
-                       cur = cur.right;
-               }
+            rbSetChild(par, isLeftChild, node); //also updates parent pointer
+            //every ancestor's subtree gained one node
+            for (Node cur = par; cur != null; cur = cur.parent) {
+                cur.subtreeSize ++;
             }
         }
     }
@@ -516,14 +1457,11 @@ public class BST_RB<E extends Comparable <? super E>>
      * @param node - the node to be removed
      */
     private void rbRemoveNode(Node node){
-        //if the node has two children
-        if (node.left != null && node.right != null) {
-            Node pred = rbGetPredecessor(node);
-            E predData = pred.e;
-            rbRemoveNode(pred); //recursively remove the predecessor node
-            node.e = predData; //replace the node's data with the pred's data
-            return;
-        }
+        //if the node has two children, move it to its predecessor's place,
+        //which has at most one child; nodes keep their data, so iterators
+        //holding other nodes stay valid
+        if (node.left != null && node.right != null)
+            rbSwapWithPredecessor(node, rbGetPredecessor(node));
 
         //if the node is black, restructure the tree to prepare for removal 
         if (!node.red)
@@ -533,26 +1471,71 @@ public class BST_RB<E extends Comparable <? super E>>
     }
 
     /**
-     * Remove the node from the tree that willmaintain BST property.
+     * Exchange the places of a node with two children and its predecessor in
+     * the tree by relinking them, along with their colors and subtree sizes,
+     * so the tree keeps its shape and only the two nodes trade positions.
      * Helper for rbRemoveNode(node).
+     * @param node - the node with two children
+     * @param pred - the node's predecessor, which has no right child
+     */
+    private void rbSwapWithPredecessor(Node node, Node pred) {
+        Node par = node.parent;
+        Node left = node.left;
+        Node right = node.right;
+        Node predPar = pred.parent;
+        Node predLeft = pred.left;
+
+        //pred takes node's place under node's parent
+        if (par == null)
+            root = pred;
+        else if (par.left == node)
+            par.left = pred;
+        else
+            par.right = pred;
+        pred.parent = par;
+
+        if (left == pred) {
+            //pred was node's left child: node becomes pred's left child
+            pred.left = node;
+            node.parent = pred;
+        } else {
+            //pred was the rightmost node of node's left subtree
+            predPar.right = node;
+            node.parent = predPar;
+            pred.left = left;
+            left.parent = pred;
+        }
+        pred.right = right;
+        right.parent = pred;
+        node.left = predLeft;
+        if (predLeft != null)
+            predLeft.parent = node;
+        node.right = null;
+
+        //the colors and sizes belong to the positions
+        boolean red = node.red;
+        node.red = pred.red;
+        pred.red = red;
+        int subtreeSize = node.subtreeSize;
+        node.subtreeSize = pred.subtreeSize;
+        pred.subtreeSize = subtreeSize;
+    }
+
+    /**
+     * Remove a node with at most one child from the tree that will maintain
+     * BST property. Helper for rbRemoveNode(node).
      * @param node - the node to be removed
      */
     private void BSTremoveNode(Node node) {
         if (node == null) return;
-        
-        //Case1: Remove internal node with 2 children
-        if (node.left != null && node.right != null) {
-            //find successor (leftmost child of right subtree)
-            Node suc = node.right;
-            while (suc.left != null) {
-                suc = suc.left;
-            }
-            node.e = suc.e; //replace the node's data with the succ's data
-            BSTremoveNode(suc); //recursively remove successor node
+
+        //every ancestor's subtree loses one node
+        for (Node cur = node.parent; cur != null; cur = cur.parent) {
+            cur.subtreeSize --;
         }
 
-        //Case2: Remove root node (with 1 or 0 chidren)
-        else if (node == root)  {
+        //Case1: Remove root node (with 1 or 0 chidren)
+        if (node == root)  {
             if (node.left != null) //has a left child
                 root = node.left;
             else  //has a right child or 0 child
@@ -561,11 +1544,11 @@ public class BST_RB<E extends Comparable <? super E>>
                 root.parent = null; //update new root's parent pointer
         }
 
-        //Case3: Remove internal node with left child only
+        //Case2: Remove internal node with left child only
         else if (node.left != null)
             rbReplaceChild(node.parent, node, node.left);
 
-        //Case4: Remove internal node with right chld only OR leaf node
+        //Case3: Remove internal node with right chld only OR leaf node
         else
             rbReplaceChild(node.parent, node, node.right);
     }
@@ -672,6 +1655,755 @@ public class BST_RB<E extends Comparable <? super E>>
     }
 
 
+    /**------------Bulk Loading --------------**/
+
+    /**
+     * Determine if a collection is a SortedSet in natural ordering, meaning
+     * its iterator yields strictly ascending elements. Helper for addAll().
+     * @param c - the collection to check
+     * @return true if c is a SortedSet using natural ordering
+     */
+    private boolean isNaturalSortedSet(Collection<?> c) {
+        return (c instanceof SortedSet && ((SortedSet<?>) c).comparator() == null);
+    }
+
+    /**
+     * Verify that a collection is strictly ascending and has no null element.
+     * Helper for addAllSorted() when it falls back to one-by-one insertion.
+     * @param c - the collection to check
+     * @throws IllegalArgumentException - if c is not strictly ascending
+     */
+    private void checkSorted(Collection<? extends E> c) {
+        if (isNaturalSortedSet(c))
+            return;
+        E prev = null;
+        for (E e : c) {
+            if (e == null)
+                throw new NullPointerException();
+            if (prev != null && compare(prev, e) >= 0)
+                throw new IllegalArgumentException();
+            prev = e;
+        }
+    }
+
+    /**
+     * Insert ascending elements one by one, each searched from the previous
+     * insertion point (finger search) rather than from the root: the search
+     * climbs from the finger only as far as the first ancestor whose subtree
+     * spans the next element, then descends. Over k elements that lie within
+     * n elements of the tree this costs O(k log(n/k)) comparisons. Rotations
+     * keep nodes, so the finger stays valid through rebalancing. Helper for
+     * addSorted().
+     * @param iter - iterator yielding ascending elements
+     * @return true if this tree changed as a result of the call
+     */
+    private boolean addAscending(Iterator<? extends E> iter) {
+        boolean hasAdded = false;
+        Node finger = null; //the node of the previous element
+        while (iter.hasNext()) {
+            E e = iter.next();
+            Node par = null;
+            Node cur = (finger == null) ? root : climb(finger, e);
+            int cmp = 0;
+            while (cur != null) {
+                cmp = compare(e, cur.e);
+                if (cmp == 0)
+                    break; //already contains such element
+                par = cur;
+                cur = (cmp < 0) ? cur.left : cur.right;
+            }
+            if (cur != null) {
+                finger = cur;
+            } else {
+                finger = insertBelow(e, par, cmp);
+                hasAdded = true;
+            }
+        }
+        return hasAdded;
+    }
+
+    /**
+     * Climb from a finger to the lowest ancestor whose subtree spans a
+     * greater element: while the current node is a left child, its parent
+     * bounds its subtree from above, so the climb stops below the first such
+     * parent greater than e; right children are passed without comparison.
+     * Helper for addAscending() and findEach().
+     * @param finger - a node whose subtree spans an element not greater
+     * than e
+     * @param e - the element to search for
+     * @return the node to descend from
+     */
+    private Node climb(Node finger, E e) {
+        Node cur = finger;
+        while (cur.parent != null) {
+            if (cur == cur.parent.left && compare(e, cur.parent.e) < 0)
+                break;
+            cur = cur.parent;
+        }
+        return cur;
+    }
+
+    /**
+     * Look up keys in ascending order by finger search, then report them by
+     * their original positions. Helper for containsEach().
+     * @param keys - the keys to look up, left unmodified
+     * @return the keys found, by index
+     */
+    @SuppressWarnings("unchecked")
+    private BitSet findEach(Object[] keys) {
+        BitSet found = new BitSet(keys.length);
+        for (Object key : keys) {
+            if (key == null)
+                throw new NullPointerException();
+        }
+        if (keys.length == 0 || isEmpty())
+            return found;
+        //sort the positions by key; already sorted keys take linear time
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> ((E) keys[a]).compareTo((E) keys[b]));
+        Node finger = null; //the node where the previous search ended
+        for (int i : order) {
+            E key = (E) keys[i];
+            Node cur = (finger == null) ? root : climb(finger, key);
+            Node last = cur;
+            while (cur != null) {
+                int cmp = compare(key, cur.e);
+                if (cmp == 0)
+                    break;
+                last = cur;
+                cur = (cmp < 0) ? cur.left : cur.right;
+            }
+            if (cur != null) {
+                found.set(i);
+                finger = cur;
+            } else {
+                //key would hang below last, so last's subtree spans it
+                finger = last;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Return the depth (root is depth 0) at which a perfectly balanced tree
+     * of the given size has its deepest, possibly incomplete, level. Nodes on
+     * that level are colored red so that every path has the same number of
+     * black nodes. Helper for buildFromSorted() and mergeSorted().
+     * @param n - the number of nodes of the tree
+     * @return the depth of the level to color red
+     */
+    private static int computeRedLevel(int n) {
+        return 31 - Integer.numberOfLeadingZeros(n + 1);
+    }
+
+    /**
+     * Build a perfectly balanced red-black tree from n ascending elements in
+     * linear time. The returned root has no parent and is black.
+     * @param iter - iterator yielding at least n ascending, distinct elements
+     * @param n - the number of elements to take from iter
+     * @param checkOrder - true to verify that the elements strictly ascend
+     * @return the root of the new tree
+     * @throws IllegalArgumentException - if checkOrder is set and the
+     * elements do not strictly ascend
+     */
+    private Node buildFromSorted(Iterator<? extends E> iter, int n,
+        boolean checkOrder) {
+        SortedSource src = new SortedSource(iter, checkOrder);
+        Node newRoot = buildSubtree(src, 0, 0, n - 1, computeRedLevel(n));
+        newRoot.parent = null;
+        return newRoot;
+    }
+
+    /**
+     * Recursively build the subtree holding positions lo..hi of the sorted
+     * source. The left subtree is built first so that elements are consumed
+     * in order. Helper for buildFromSorted().
+     * @param src - the sorted source of elements
+     * @param level - the depth of the subtree's root
+     * @param lo - the first position of the subtree
+     * @param hi - the last position of the subtree
+     * @param redLevel - the depth at which nodes are colored red
+     * @return the root of the subtree, <tt>null</tt> if lo > hi
+     */
+    private Node buildSubtree(SortedSource src, int level, int lo, int hi,
+        int redLevel) {
+        if (hi < lo)
+            return null;
+        int mid = (lo + hi) >>> 1;
+        Node left = buildSubtree(src, level + 1, lo, mid - 1, redLevel);
+        Node middle = newNode(src.next(), level == redLevel);
+        if (left != null)
+            rbSetChild(middle, true, left);
+        Node right = buildSubtree(src, level + 1, mid + 1, hi, redLevel);
+        if (right != null)
+            rbSetChild(middle, false, right);
+        middle.subtreeSize = hi - lo + 1;
+        return middle;
+    }
+
+    /**
+     * Relink already created nodes at positions lo..hi of an ascending array
+     * into a perfectly balanced red-black subtree. Helper for mergeSorted().
+     * @param nodes - the nodes in ascending order of their elements
+     * @param level - the depth of the subtree's root
+     * @param lo - the first position of the subtree
+     * @param hi - the last position of the subtree
+     * @param redLevel - the depth at which nodes are colored red
+     * @return the root of the subtree, <tt>null</tt> if lo > hi
+     */
+    private Node linkSubtree(Node[] nodes, int level, int lo, int hi,
+        int redLevel) {
+        if (hi < lo)
+            return null;
+        int mid = (lo + hi) >>> 1;
+        Node middle = nodes[mid];
+        middle.red = (level == redLevel);
+        middle.left = null;
+        middle.right = null;
+        Node left = linkSubtree(nodes, level + 1, lo, mid - 1, redLevel);
+        if (left != null)
+            rbSetChild(middle, true, left);
+        Node right = linkSubtree(nodes, level + 1, mid + 1, hi, redLevel);
+        if (right != null)
+            rbSetChild(middle, false, right);
+        middle.subtreeSize = hi - lo + 1;
+        return middle;
+    }
+
+    /**
+     * Merge a non-empty tree with a sorted run in linear time: the existing
+     * nodes and new nodes for the run's elements are collected in order, then
+     * relinked into a perfectly balanced tree. Helper for addAllSorted().
+     * @param iter - iterator over the ascending, distinct run
+     * @param runSize - the number of elements in the run
+     * @param checkOrder - true to verify that the run strictly ascends
+     * @return true if this tree changed as a result of the call
+     * @throws IllegalArgumentException - if checkOrder is set and the run does
+     * not strictly ascend, in which case this tree is left unchanged
+     */
+    private boolean mergeSorted(Iterator<? extends E> iter, int runSize,
+        boolean checkOrder) {
+        SortedSource src = new SortedSource(iter, checkOrder);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Node[] merged = (Node[]) new BST_RB.Node[size + runSize];
+        int n = 0;
+        Node cur = leftmost(root);
+        E next = src.hasNext() ? src.next() : null;
+        while (cur != null || next != null) {
+            int cmp = (cur == null) ? 1 : (next == null) ? -1
+                : compare(cur.e, next);
+            if (cmp <= 0) {
+                merged[n++] = cur;
+                cur = successor(cur);
+                if (cmp == 0) //duplicate: keep the existing node
+                    next = src.hasNext() ? src.next() : null;
+            } else {
+                merged[n++] = newNode(next, false);
+                next = src.hasNext() ? src.next() : null;
+            }
+        }
+        if (n == size)
+            return false;
+        root = linkSubtree(merged, 0, 0, n - 1, computeRedLevel(n));
+        root.parent = null;
+        size = n;
+        modCount ++;
+        rethread();
+        return true;
+    }
+
+    /**
+     * A source of ascending elements for bulk loading, optionally verifying
+     * that every element is non-null and strictly greater than the last one.
+     */
+    private class SortedSource {
+
+        private Iterator<? extends E> iter; //the underlying iterator
+        private boolean checkOrder; //true if the order must be verified
+        private E prev; //the element returned last
+
+        /**
+         * Construct a source over an iterator.
+         * @param iter - the iterator yielding ascending elements
+         * @param checkOrder - true to verify the order of the elements
+         */
+        private SortedSource(Iterator<? extends E> iter, boolean checkOrder) {
+            this.iter = iter;
+            this.checkOrder = checkOrder;
+        }
+
+        /**
+         * Returns true if the source has more elements
+         * @return true if the source has more elements
+         */
+        private boolean hasNext() {
+            return iter.hasNext();
+        }
+
+        /**
+         * Returns the next element of the source.
+         * @return the next element of the source
+         * @throws IllegalArgumentException - if the order is verified and the
+         * element is not greater than the previous one
+         * @throws NoSuchElementException - if the source ran out of elements
+         */
+        private E next() {
+            E e = iter.next();
+            if (e == null)
+                throw new NullPointerException();
+            if (checkOrder && prev != null && compare(prev, e) >= 0)
+                throw new IllegalArgumentException();
+            prev = e;
+            return e;
+        }
+    }
+
+    /**------------Join and Split --------------**/
+
+    /**
+     * Cut the elements from lo, inclusive, to hi, exclusive, out of this tree
+     * by splitting at both bounds and joining the outer parts. Helper for
+     * removeRange(), removeHeadSet(), removeTailSet() and the range views.
+     * @param lo - the inclusive lower bound, <tt>null</tt> if unbounded
+     * @param hi - the exclusive upper bound, <tt>null</tt> if unbounded
+     * @return the number of elements removed
+     */
+    private int removeBetween(E lo, E hi) {
+        int before = size;
+        if (root == null)
+            return 0;
+        if (lo == null && hi == null) {
+            clear();
+            return before;
+        }
+        //[lo, lo) is empty; splitting at lo would drop the node equal to lo
+        if (lo != null && hi != null && compare(lo, hi) >= 0)
+            return 0;
+        Part lower = EMPTY;
+        Part rest = whole();
+        if (lo != null) {
+            Split s = split(rest, lo);
+            comparisons += s.comparisons;
+            lower = s.left; //s.found is lo itself, which goes
+            rest = s.right;
+        }
+        Part upper = EMPTY;
+        if (hi != null) {
+            Split s = split(rest, hi);
+            comparisons += s.comparisons;
+            upper = (s.found == null) ? s.right : join(EMPTY, s.found, s.right);
+        }
+        //the last kept node below the range and the first above it become
+        //neighbors
+        Node lowerLast = rightmost(lower.root);
+        Node upperFirst = leftmost(upper.root);
+        install(join2(lower, upper));
+        if (threaded)
+            thread(lowerLast, upperFirst);
+        return before - size;
+    }
+
+    /**
+     * Run a set operation between this tree and another, leaving the result
+     * in this tree and the other tree empty. Helper for union(),
+     * intersection() and difference().
+     * @param op - the operation, one of the SetOperation constants
+     * @param other - the other operand
+     */
+    private void setOperation(int op, BST_RB<E> other) {
+        if (other == null)
+            throw new NullPointerException();
+        if (other == this) {
+            if (op == SetOperation.DIFFERENCE)
+                clear();
+            return;
+        }
+        checkThreading(other);
+        SetOperation task = new SetOperation(op, whole(), other.whole());
+        Part result = (sizeOf(root) + sizeOf(other.root) >= PARALLEL_THRESHOLD)
+            ? ForkJoinPool.commonPool().invoke(task) : task.compute();
+        comparisons += task.comparisons;
+        install(result);
+        other.install(EMPTY);
+        if (threaded)
+            rethread(); //the nodes of both trees interleave
+    }
+
+    /**
+     * Return this whole tree as a detached part.
+     * @return the root and black height of this tree
+     */
+    private Part whole() {
+        int bh = 0;
+        for (Node cur = root; cur != null; cur = cur.left) {
+            if (!cur.red)
+                bh ++;
+        }
+        return new Part(root, bh);
+    }
+
+    /**
+     * Make a detached part the whole content of this tree, coloring its root
+     * black.
+     * @param part - the new content of this tree
+     */
+    private void install(Part part) {
+        root = part.root;
+        if (root != null) {
+            root.parent = null;
+            root.red = false;
+        }
+        size = sizeOf(root);
+        modCount ++;
+        resetEnds();
+    }
+
+    /**
+     * Return a detached child subtree as a part, clearing its parent pointer.
+     * @param child - the child subtree, may be null
+     * @param bh - the black height of the child subtree
+     * @return the child as a part
+     */
+    private Part detach(Node child, int bh) {
+        if (child == null)
+            return EMPTY;
+        child.parent = null;
+        return new Part(child, bh);
+    }
+
+    /**
+     * Return the black height of a node's children.
+     * @param red - true if the node is red
+     * @param bh - the black height of the node
+     * @return the black height of each of its children
+     */
+    private static int childBlackHeight(boolean red, int bh) {
+        return red ? bh : bh - 1;
+    }
+
+    /**
+     * Hang two subtrees below a node and recompute its size.
+     * @param node - the new parent
+     * @param left - the new left subtree, may be null
+     * @param right - the new right subtree, may be null
+     */
+    private void link(Node node, Node left, Node right) {
+        node.left = left;
+        node.right = right;
+        if (left != null)
+            left.parent = node;
+        if (right != null)
+            right.parent = node;
+        updateSize(node);
+    }
+
+    /**
+     * Join two detached red-black trees with a node whose element lies
+     * between them: every element of left is less than the node's element,
+     * which is less than every element of right. Descends the taller tree's
+     * spine to the black height of the shorter, so it takes time
+     * proportional to the difference of the black heights.
+     * @param left - the lower tree
+     * @param node - the middle node; its old links are ignored
+     * @param right - the upper tree
+     * @return the joined tree, possibly with a red root
+     */
+    private Part join(Part left, Node node, Part right) {
+        Node l = left.root;
+        Node r = right.root;
+        int lbh = left.bh;
+        int rbh = right.bh;
+        //a root can always be blackened; then only node can be red below
+        if (l != null && l.red) {
+            l.red = false;
+            lbh ++;
+        }
+        if (r != null && r.red) {
+            r.red = false;
+            rbh ++;
+        }
+        if (lbh == rbh) {
+            node.red = true;
+            link(node, l, r);
+            node.parent = null;
+            return new Part(node, lbh);
+        }
+        Node joined = (lbh > rbh) ? joinRight(l, lbh, node, r, rbh)
+            : joinLeft(r, rbh, node, l, lbh);
+        joined.parent = null;
+        int bh = Math.max(lbh, rbh);
+        if (joined.red) {
+            //a rotation reached the top: blacken to end the red-red chain
+            joined.red = false;
+            bh ++;
+        }
+        return new Part(joined, bh);
+    }
+
+    /**
+     * Join a taller tree, a middle node and a shorter tree by hanging the
+     * node on the taller tree's right spine, rotating at each black node
+     * whose right child and grandchild became red. Helper for join().
+     * @param t - the subtree of the taller tree on its right spine
+     * @param tbh - the black height of t
+     * @param node - the middle node
+     * @param r - the shorter tree, with a black root
+     * @param rbh - the black height of r
+     * @return the new root of t's subtree
+     */
+    private Node joinRight(Node t, int tbh, Node node, Node r, int rbh) {
+        if ((t == null || !t.red) && tbh == rbh) {
+            node.red = true;
+            link(node, t, r);
+            return node;
+        }
+        Node c = joinRight(t.right, childBlackHeight(t.red, tbh), node, r, rbh);
+        t.right = c;
+        c.parent = t;
+        updateSize(t);
+        if (!t.red && c.red && rbNonNullAndRed(c.right)) {
+            c.right.red = false;
+            return rotateDetached(t, true);
+        }
+        return t;
+    }
+
+    /**
+     * Mirror image of joinRight(): hang the node on the taller tree's left
+     * spine. Helper for join().
+     * @param t - the subtree of the taller tree on its left spine
+     * @param tbh - the black height of t
+     * @param node - the middle node
+     * @param l - the shorter tree, with a black root
+     * @param lbh - the black height of l
+     * @return the new root of t's subtree
+     */
+    private Node joinLeft(Node t, int tbh, Node node, Node l, int lbh) {
+        if ((t == null || !t.red) && tbh == lbh) {
+            node.red = true;
+            link(node, l, t);
+            return node;
+        }
+        Node c = joinLeft(t.left, childBlackHeight(t.red, tbh), node, l, lbh);
+        t.left = c;
+        c.parent = t;
+        updateSize(t);
+        if (!t.red && c.red && rbNonNullAndRed(c.left)) {
+            c.left.red = false;
+            return rotateDetached(t, false);
+        }
+        return t;
+    }
+
+    /**
+     * Rotate at a node without touching its parent's child pointer or the
+     * tree's root, since joins work on detached subtrees. The new subtree
+     * root takes over the node's parent pointer.
+     * @param node - the node at which the rotation is performed
+     * @param left - true to rotate left, false to rotate right
+     * @return the new root of the subtree
+     */
+    private Node rotateDetached(Node node, boolean left) {
+        Node top = left ? node.right : node.left;
+        top.parent = node.parent;
+        if (left) {
+            node.right = top.left;
+            if (top.left != null)
+                top.left.parent = node;
+            top.left = node;
+        } else {
+            node.left = top.right;
+            if (top.right != null)
+                top.right.parent = node;
+            top.right = node;
+        }
+        node.parent = top;
+        updateSize(node);
+        updateSize(top);
+        return top;
+    }
+
+    /**
+     * Join two detached red-black trees, every element of left being less
+     * than every element of right, by taking out the last node of left as
+     * the middle node. Takes O(log n) time.
+     * @param left - the lower tree
+     * @param right - the upper tree
+     * @return the joined tree
+     */
+    private Part join2(Part left, Part right) {
+        if (left.root == null)
+            return right;
+        if (right.root == null)
+            return left;
+        Split s = splitLast(left);
+        return join(s.left, s.found, right);
+    }
+
+    /**
+     * Split the last (greatest) node off a detached tree. Helper for join2().
+     * @param t - a non-empty tree
+     * @return the rest of the tree as left and the last node as found
+     */
+    private Split splitLast(Part t) {
+        Node node = t.root;
+        int cbh = childBlackHeight(node.red, t.bh);
+        Part l = detach(node.left, cbh);
+        if (node.right == null)
+            return new Split(l, node, EMPTY);
+        Split s = splitLast(detach(node.right, cbh));
+        s.left = join(l, node, s.left);
+        return s;
+    }
+
+    /**
+     * Split a detached tree at a key into the elements less than it, the
+     * node equal to it, if any, and the elements greater than it. Descends
+     * once from the root, re-joining the subtrees it passes, in O(log n)
+     * time. The comparisons are counted in the result rather than in this
+     * tree, so that parallel tasks do not share the counter.
+     * @param t - the tree to split
+     * @param key - the key to split at
+     * @return the lower tree, the node equal to key or null, the upper tree
+     */
+    private Split split(Part t, E key) {
+        Node node = t.root;
+        if (node == null)
+            return new Split(EMPTY, null, EMPTY);
+        int cmp = key.compareTo(node.e);
+        int cbh = childBlackHeight(node.red, t.bh);
+        Part l = detach(node.left, cbh);
+        Part r = detach(node.right, cbh);
+        Split s;
+        if (cmp == 0) {
+            s = new Split(l, node, r);
+        } else if (cmp < 0) {
+            s = split(l, key);
+            s.right = join(s.right, node, r);
+        } else {
+            s = split(r, key);
+            s.left = join(l, node, s.left);
+        }
+        s.comparisons ++;
+        return s;
+    }
+
+    /**
+     * A detached red-black tree: a root, which may be red, and the number of
+     * black nodes on every path from the root down to a leaf.
+     */
+    private class Part {
+
+        private final Node root; //the root, null if the tree is empty
+        private final int bh; //the black height, 0 if the tree is empty
+
+        /**
+         * Construct a part.
+         * @param root - the root of the tree
+         * @param bh - the black height of the tree
+         */
+        private Part(Node root, int bh) {
+            this.root = root;
+            this.bh = bh;
+        }
+    }
+
+    /**
+     * The result of a split: the tree below the key, the node equal to it and
+     * the tree above it, with the comparisons the split made.
+     */
+    private class Split {
+
+        private Part left; //the elements less than the key
+        private final Node found; //the node equal to the key, null if none
+        private Part right; //the elements greater than the key
+        private long comparisons; //number of key comparisons made
+
+        /**
+         * Construct a split result.
+         * @param left - the elements less than the key
+         * @param found - the node equal to the key, <tt>null</tt> if none
+         * @param right - the elements greater than the key
+         */
+        private Split(Part left, Node found, Part right) {
+            this.left = left;
+            this.found = found;
+            this.right = right;
+        }
+    }
+
+    /**
+     * A union, intersection or difference of two detached trees. It exposes
+     * the root of the second tree, splits the first tree at its element,
+     * recurses on the two halves, forking one of them when the trees are
+     * large, and joins the results.
+     */
+    @SuppressWarnings("serial")
+    private class SetOperation extends RecursiveTask<Part> {
+
+        private static final int UNION = 0;
+        private static final int INTERSECTION = 1;
+        private static final int DIFFERENCE = 2;
+
+        private final int op; //the operation
+        private final Part a; //the first operand, which is split
+        private final Part b; //the second operand, whose root is exposed
+        private long comparisons; //comparisons made by this task and its subtasks
+
+        /**
+         * Construct a set operation between two detached trees.
+         * @param op - the operation
+         * @param a - the first operand
+         * @param b - the second operand
+         */
+        private SetOperation(int op, Part a, Part b) {
+            this.op = op;
+            this.a = a;
+            this.b = b;
+        }
+
+        /**
+         * Compute the result of the operation.
+         * @return the resulting detached tree
+         */
+        @Override
+        protected Part compute() {
+            if (a.root == null)
+                return (op == UNION) ? b : EMPTY;
+            if (b.root == null)
+                return (op == INTERSECTION) ? EMPTY : a;
+
+            boolean parallel = sizeOf(a.root) + sizeOf(b.root) >= PARALLEL_THRESHOLD;
+            Node node = b.root;
+            int cbh = childBlackHeight(node.red, b.bh);
+            Part bl = detach(node.left, cbh);
+            Part br = detach(node.right, cbh);
+            Split s = split(a, node.e);
+            comparisons += s.comparisons;
+
+            SetOperation left = new SetOperation(op, s.left, bl);
+            SetOperation right = new SetOperation(op, s.right, br);
+            Part l;
+            Part r;
+            if (parallel) {
+                left.fork();
+                r = right.compute();
+                l = left.join();
+            } else {
+                l = left.compute();
+                r = right.compute();
+            }
+            comparisons += left.comparisons + right.comparisons;
+
+            if (op == UNION || (op == INTERSECTION && s.found != null))
+                return BST_RB.this.join(l, node, r);
+            return join2(l, r);
+        }
+    }
+
     /**------------Prepare For Removal Cases --------------**/
 
     /**
@@ -791,25 +2523,21 @@ public class BST_RB<E extends Comparable <? super E>>
 
      /**
       * Inner iterator class for this BST_RB tree. Iterates through the tree using
-      *  inorder traversal. 
+      * inorder traversal, stepping to each node's successor through the parent
+      * pointers, so it needs no stack and allocates nothing after construction.
       */
      private class BST_RBIterator implements Iterator<E> {
 
-        private Stack<Node> nodesStack; 
-        private Node cursor; //the node whose element that a call next() will return,
-        //which is the top of stack
-        
+        private Node cursor; //the node whose element a call to next() will return
+        private Node lastReturned; //the node last returned, null if removed
+        private int expectedModCount = modCount; //modCount this iterator expects
+
         /**
-         * Construct an iterator.Initialize the iterator(cursor and stack).
+         * Construct an iterator positioned at the specified node.
+         * @param start - the node of the first element, <tt>null</tt> for none
          */
-        private BST_RBIterator() {
-            //initialize the stack 
-            nodesStack = new Stack<Node>(); 
-            cursor = root;
-            while (cursor != null) { 
-                nodesStack.push(cursor); //push the left subtree nodes as it goes
-                cursor = cursor.left; //iteratively visit left subtree nodes
-            }
+        private BST_RBIterator(Node start) {
+            cursor = start;
         }
 
         /**
@@ -817,7 +2545,7 @@ public class BST_RB<E extends Comparable <? super E>>
          * @return true if the iteration has more elements
          */
         public boolean hasNext() {
-            return !nodesStack.empty();     
+            return (cursor != null);
         }
         
         /**
@@ -825,32 +2553,343 @@ public class BST_RB<E extends Comparable <? super E>>
          * @return the next element in the iteration
          * @throws NoSuchElementException - if the iteration has no more
          * elements
+         * @throws ConcurrentModificationException - if the tree was changed
+         * other than through this iterator since the iterator was created
          */
         public E next(){
             if (!hasNext())
                 throw new NoSuchElementException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
 
-            cursor = nodesStack.pop(); //update the cursor after each next() 
-            E data = cursor.e; //save the data 
-            //immeidiately after pop, update/reinitialzie cursor to be its successor node
-            cursor = cursor.right; //start from the right subtree's root
-            while (cursor != null) { //push the left subtree nodes
-                nodesStack.push(cursor);
-                cursor = cursor.left;
-            }
-            return data;
+            lastReturned = cursor;
+            cursor = nextNode(cursor); //O(1) if threaded, else amortized O(1)
+            return lastReturned.e;
         }
         
         /**
          * Removes from the underlying collection the last element returned by
-         * this iterator. This operation is not supported by this iterator.
-         * @throws UnsupportedOperationException - this operation is not
-         * supported by this iterator.
+         * this iterator, unlinking its node directly without a search.
+         * @throws IllegalStateException - if next() has not been called, or
+         * remove() has already been called after the last call to next()
+         * @throws ConcurrentModificationException - if the tree was changed
+         * other than through this iterator since the iterator was created
+         */
+        public void remove() {
+            if (lastReturned == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+
+            //removal relinks nodes rather than moving data, so cursor still
+            //holds the next element
+            removeNode(lastReturned);
+            expectedModCount = modCount;
+            lastReturned = null;
+        }
+
+     } //end iterator class
+
+     /**
+      * Inner cursor class for this BST_RB tree. The cursor sits between two
+      * elements; next() and previous() return the node after or before it.
+      * Elements are ordered, so set() and add() are not supported.
+      */
+     private class BST_RBCursor implements ListIterator<E> {
+
+        private Node cursor; //the node next() returns, null at the end
+        private Node lastReturned; //the node last returned, null if removed
+        private int expectedModCount = modCount; //modCount this cursor expects
+
+        /**
+         * Construct a cursor positioned before the specified node.
+         * @param start - the node next() returns first, <tt>null</tt> for the
+         * end of the tree
+         */
+        private BST_RBCursor(Node start) {
+            cursor = start;
+        }
+
+        /**
+         * Returns true if there is an element after the cursor
+         * @return true if there is an element after the cursor
+         */
+        public boolean hasNext() {
+            return (cursor != null);
+        }
+
+        /**
+         * Returns true if there is an element before the cursor
+         * @return true if there is an element before the cursor
+         */
+        public boolean hasPrevious() {
+            return (cursor != firstNode);
+        }
+
+        /**
+         * Returns the element after the cursor and moves the cursor past it.
+         * @return the next element
+         * @throws NoSuchElementException - if the cursor is at the end
+         * @throws ConcurrentModificationException - if the tree was changed
+         * other than through this cursor since the cursor was created
+         */
+        public E next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            checkForComodification();
+            lastReturned = cursor;
+            cursor = nextNode(cursor);
+            return lastReturned.e;
+        }
+
+        /**
+         * Returns the element before the cursor and moves the cursor before
+         * it.
+         * @return the previous element
+         * @throws NoSuchElementException - if the cursor is at the start
+         * @throws ConcurrentModificationException - if the tree was changed
+         * other than through this cursor since the cursor was created
+         */
+        public E previous() {
+            if (!hasPrevious())
+                throw new NoSuchElementException();
+            checkForComodification();
+            cursor = (cursor == null) ? lastNode : prevNode(cursor);
+            lastReturned = cursor;
+            return lastReturned.e;
+        }
+
+        /**
+         * Returns the rank of the element after the cursor.
+         * @return the number of elements before the cursor
+         */
+        public int nextIndex() {
+            return rankOfNode(cursor);
+        }
+
+        /**
+         * Returns the rank of the element before the cursor.
+         * @return the number of elements before the cursor, minus one
+         */
+        public int previousIndex() {
+            return rankOfNode(cursor) - 1;
+        }
+
+        /**
+         * Removes from the tree the element last returned by next() or
+         * previous(), unlinking its node directly without a search.
+         * @throws IllegalStateException - if neither next() nor previous()
+         * has been called since the last remove()
+         * @throws ConcurrentModificationException - if the tree was changed
+         * other than through this cursor since the cursor was created
          */
         public void remove() {
+            if (lastReturned == null)
+                throw new IllegalStateException();
+            checkForComodification();
+            if (lastReturned == cursor) //returned by previous()
+                cursor = nextNode(cursor);
+            removeNode(lastReturned);
+            expectedModCount = modCount;
+            lastReturned = null;
+        }
+
+        /**
+         * Not supported: the position of an element is set by its order.
+         * @param e - ignored
+         * @throws UnsupportedOperationException - always
+         */
+        public void set(E e) {
             throw new UnsupportedOperationException();
         }
 
-     } //end iterator class 
+        /**
+         * Not supported: the position of an element is set by its order.
+         * @param e - ignored
+         * @throws UnsupportedOperationException - always
+         */
+        public void add(E e) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Verify that the tree was changed only through this cursor.
+         * @throws ConcurrentModificationException - if it was not
+         */
+        private void checkForComodification() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+     } //end cursor class
+
+     /**
+      * Inner range view class for this BST_RB tree, which counts its elements
+      * from the subtree sizes instead of iterating them and clears its range
+      * with removeRange's splits and join.
+      */
+     private class RangeView extends BST_RangeView<E> {
+
+        /**
+         * Construct a view of the elements from lo, inclusive, to hi,
+         * exclusive.
+         * @param lo - the inclusive lower bound, <tt>null</tt> if unbounded
+         * @param hi - the exclusive upper bound, <tt>null</tt> if unbounded
+         */
+        private RangeView(E lo, E hi) {
+            super(BST_RB.this, lo, hi);
+        }
+
+        /**
+         * Returns the number of elements in this view in two descents.
+         * @return the number of elements in this view
+         */
+        @Override
+        public int size() {
+            int below = (lo == null) ? 0 : rankOf(lo, false);
+            int belowHi = (hi == null) ? size : rankOf(hi, false);
+            return belowHi - below;
+        }
+
+        /**
+         * Removes every element of this view from the tree, cutting the
+         * range out in O(log n) time.
+         */
+        @Override
+        public void clear() {
+            removeBetween(lo, hi);
+        }
+
+        /**
+         * Create a narrower view that also counts from the subtree sizes.
+         * @param lo - the inclusive lower bound, <tt>null</tt> if unbounded
+         * @param hi - the exclusive upper bound, <tt>null</tt> if unbounded
+         * @return the new view
+         */
+        @Override
+        protected SortedSet<E> view(E lo, E hi) {
+            return new RangeView(lo, hi);
+        }
+     } //end range view class
+
+     /**
+      * Inner spliterator class for this BST_RB tree. Covers the nodes from
+      * current up to, not including, fence in inorder. A split hands off the
+      * part before a subtree root: the tree's root first, then the right
+      * child of the node a suffix starts at, or the left child of the node a
+      * prefix ends at.
+      */
+     private class BST_RBSpliterator implements Spliterator<E> {
+
+        private Node current; //the next node to return, null if none
+        private final Node fence; //the node after the last one, null for end
+        private int est; //exact number of nodes left
+        private int side; //0: whole tree, 1: a suffix, -1: a prefix
+        private final int expectedModCount = modCount; //modCount at creation
+
+        /**
+         * Construct a spliterator over the nodes from current to fence.
+         * @param current - the first node to return
+         * @param fence - the node after the last one, <tt>null</tt> for end
+         * @param est - the number of nodes covered
+         * @param side - 0 for the whole tree, 1 for a suffix, -1 for a prefix
+         */
+        private BST_RBSpliterator(Node current, Node fence, int est, int side) {
+            this.current = current;
+            this.fence = fence;
+            this.est = est;
+            this.side = side;
+        }
+
+        /**
+         * Split off the elements before a subtree root into a new
+         * spliterator, if there is one strictly inside this range.
+         * @return a spliterator over a prefix of this range, <tt>null</tt> if
+         * this range cannot be split
+         */
+        public Spliterator<E> trySplit() {
+            Node e = current;
+            Node f = fence;
+            Node s = (e == null || e == f) ? null
+                : (side == 0) ? root
+                : (side > 0) ? e.right
+                : (f != null) ? f.left
+                : null;
+            if (s == null || s == e || s == f)
+                return null;
+            int prefix = rankOfNode(s) - rankOfNode(e);
+            if (prefix <= 0 || prefix >= est)
+                return null; //e already past s, or s not before fence
+            current = s;
+            est -= prefix;
+            side = 1;
+            return new BST_RBSpliterator(e, s, prefix, -1);
+        }
+
+        /**
+         * Perform the action on the next element, if any.
+         * @param action - the action to perform
+         * @return false if no elements remained
+         * @throws ConcurrentModificationException - if the tree was changed
+         * since this spliterator was created
+         */
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            if (current == null || current == fence)
+                return false;
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            Node node = current;
+            current = nextNode(node);
+            est --;
+            action.accept(node.e);
+            return true;
+        }
+
+        /**
+         * Perform the action on each remaining element, in order.
+         * @param action - the action to perform
+         * @throws ConcurrentModificationException - if the tree was changed
+         * since this spliterator was created
+         */
+        public void forEachRemaining(Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            Node node = current;
+            current = fence;
+            est = 0;
+            while (node != null && node != fence) {
+                action.accept(node.e);
+                node = nextNode(node);
+            }
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        /**
+         * Returns the exact number of elements left.
+         * @return the number of elements left
+         */
+        public long estimateSize() {
+            return est;
+        }
+
+        /**
+         * Returns the characteristics of this spliterator.
+         * @return SIZED, SUBSIZED, SORTED, DISTINCT, ORDERED and NONNULL
+         */
+        public int characteristics() {
+            return Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.SORTED
+                | Spliterator.DISTINCT | Spliterator.ORDERED | Spliterator.NONNULL;
+        }
+
+        /**
+         * Returns null, since the elements are in natural order.
+         * @return null
+         */
+        public Comparator<? super E> getComparator() {
+            return null;
+        }
+    } //end spliterator class 
 
 } //end BST_RB class
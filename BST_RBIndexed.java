@@ -0,0 +1,595 @@
+import java.util.*;
+
+/**
+ * BST_RBIndexed class that implements a Red-Black Balance BST Tree over nodes
+ * named by int handles instead of object references, and implements the
+ * BST_Interface interface. The red-black logic (the insertion cases of
+ * rbBalance() and the removal cases of rbPrepForRemoval()) lives here once;
+ * subclasses only decide where a node's links, color and key are stored.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+public abstract class BST_RBIndexed<E extends Comparable <? super E>>
+    implements BST_Interface<E> {
+
+    /** The handle that stands for "no node", like a null reference. **/
+    protected static final int NIL = -1;
+
+    protected int root = NIL; //handle of the root node
+    protected int size; //number of nodes in the tree
+
+    /************** Node Storage **********/
+
+    /**
+     * Allocate a red node with no links that holds the specified key.
+     * @param key - the key of the new node
+     * @return the handle of the new node
+     */
+    protected abstract int allocNode(E key);
+
+    /**
+     * Release a node that has been unlinked from the tree so its storage can
+     * be reused.
+     * @param node - the handle of the node to release
+     */
+    protected abstract void freeNode(int node);
+
+    /**
+     * Release the storage of every node at once. Helper for clear().
+     */
+    protected abstract void clearNodes();
+
+    /** @return the handle of the node's left child, NIL if none **/
+    protected abstract int left(int node);
+
+    /** @return the handle of the node's right child, NIL if none **/
+    protected abstract int right(int node);
+
+    /** @return the handle of the node's parent, NIL if node is the root **/
+    protected abstract int parent(int node);
+
+    /** @return true if the node is red, false if black **/
+    protected abstract boolean isRed(int node);
+
+    /** Set the left child handle of the node. **/
+    protected abstract void setLeft(int node, int child);
+
+    /** Set the right child handle of the node. **/
+    protected abstract void setRight(int node, int child);
+
+    /** Set the parent handle of the node. **/
+    protected abstract void setParent(int node, int par);
+
+    /** Set the color of the node: true for red, false for black. **/
+    protected abstract void setRed(int node, boolean red);
+
+    /** @return the key held by the node **/
+    protected abstract E key(int node);
+
+    /**
+     * Replace the key of a node with the key of another node. Helper for
+     * rbRemoveNode() when the removed node has two children.
+     * @param from - the node whose key is copied
+     * @param to - the node that receives the key
+     */
+    protected abstract void copyKey(int from, int to);
+
+    /**
+     * Compare a key with the key held by a node. Subclasses that store keys
+     * in encoded form may override this to compare without decoding.
+     * @param key - the key being searched for or inserted
+     * @param node - the node to compare against
+     * @return a negative integer, zero, or a positive integer as the key is
+     * less than, equal to, or greater than the node's key
+     */
+    protected int compareKey(E key, int node) {
+        return key.compareTo(key(node));
+    }
+
+    /************** BST_Interface Methods **********/
+
+    /**
+     * Adds the specified element to this binary search tree if it is not already
+     * present.
+     * @param e - element to be added to this tree
+     * @return true if this tree did not already contain the specified element
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in this tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    public boolean add(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        //single descent: duplicate check and insertion point in one pass
+        int par = NIL;
+        int cur = root;
+        boolean isLeftChild = false;
+        while (cur != NIL) {
+            int cmp = compareKey(e, cur);
+            if (cmp == 0) return false;
+            par = cur;
+            isLeftChild = (cmp < 0);
+            cur = isLeftChild ? left(cur) : right(cur);
+        }
+        int newNode = allocNode(e);
+        if (par == NIL)
+            root = newNode;
+        else
+            rbSetChild(par, isLeftChild, newNode);
+        rbBalance(newNode); //rebalance after inserting the new node
+        size ++;
+        return true;
+    }
+
+    /**
+     * Add all of the elements in the specified collection to this search tree.
+     * @param  c - collection containing elements to be added to this tree
+     * @return true if this tree changed as a result of the call
+     * @throws ClassCastException - if the elements provided cannot be compared
+     * with the elements currently in the tree
+     * @throws NullPointerException - if the specified collection is null or if
+     * any element is null
+     */
+    public boolean addAll(Collection<? extends E> c) {
+        if (c == null)
+            throw new NullPointerException();
+        boolean hasAdded = false;
+        for (E e : c) {
+            if (add(e))
+                hasAdded = true;
+        }
+        return hasAdded;
+    }
+
+    /**
+     * Removes all of the elements from this search tree. The node storage is
+     * reset for reuse rather than discarded.
+     */
+    public void clear() {
+        clearNodes();
+        root = NIL;
+        size = 0;
+    }
+
+    /**
+     * Returns true if this search tree contains the specified element
+     * @param  o - element to be checked for containment in this tree
+     * @return true if this tree contains the specified element
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in the tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    public boolean contains(E o) {
+        if (o == null)
+            throw new NullPointerException();
+        return (BSTSearch(o) != NIL);
+    }
+
+    /**
+     * Returns the first (lowest) element currently in this search tree.
+     * @return the first (lowest) element currently in this tree
+     * @throws NoSuchElementException - if this tree is empty
+     */
+    public E first() {
+        if (isEmpty())
+            throw new NoSuchElementException();
+        return key(leftmost(root));
+    }
+
+    /**
+     * Returns true if this search tree contains no elements.
+     * @return true if this tree contains no elements
+     */
+    public boolean isEmpty() {
+        return (root == NIL);
+    }
+
+    /**
+     * Returns an iterator over the elements in this search tree in ascending
+     * order.
+     * @return an iterator over the elements in this tree in ascending order
+     */
+    public Iterator<E> iterator() {
+        return new IndexedIterator();
+    }
+
+    /**
+     * Returns the last (highest) element currently in this search tree.
+     * @return the last (highest) element currently in this search tree
+     * @throws NoSuchElementException - if this tree is empty
+     */
+    public E last() {
+        if (isEmpty())
+            throw new NoSuchElementException();
+        int cur = root;
+        while (right(cur) != NIL) {
+            cur = right(cur);
+        }
+        return key(cur);
+    }
+
+    /**
+     * Removes the specified element from this search tree if it is present.
+     * @param o - object to be removed from this tree, if present
+     * @return true if this tree contained the specified element
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in this tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    public boolean remove(E o) {
+        if (o == null)
+            throw new NullPointerException();
+        int node = BSTSearch(o);
+        if (node == NIL) return false; //can't find the key
+        rbRemoveNode(node);
+        size --;
+        return true;
+    }
+
+    /**
+     * Returns the number of elements in this search tree (its cardinality)
+     * @return the number of elements in this search tree (its cardinality)
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the height of the search tree. An empty tree returns 0, a tree
+     * with one element returns a height of 1.
+     * @return the height of the search tree
+     */
+    public int height() {
+        return heightRecur(root);
+    }
+
+    /**
+     * Returns the number of children of the Node that references target.
+     * @param target - the target element the node references to
+     * @return the number of children of the node that references the target
+     * @throws NoSuchElementException If target is not found in the tree
+     * @throws IllegalArgumentException Any other problems, eg.NullPointer,
+     * ClassCastException, ...
+     */
+    public int numChildren(E target) {
+        if (target == null)
+            throw new IllegalArgumentException();
+        int node;
+        try {
+            node = BSTSearch(target);
+        } catch (Exception e) {
+            throw new IllegalArgumentException();
+        }
+        if (node == NIL) //target not found
+            throw new NoSuchElementException();
+        return numNodes(node) - 1;
+    }
+
+    /**
+     * Returns a string representation of the tree.
+     * @return a string representation of the tree.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int cur = leftmost(root); cur != NIL; cur = successor(cur)) {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(key(cur));
+        }
+        return sb.append(']').toString();
+    }
+
+    /************** Private Helper Methods **********/
+
+    /**
+     * Return the number of nodes (including all children and itself) from a
+     * specified node. Helper for numChildren().
+     * @param node - the starting node to calculate number of nodes
+     * @return the number of nodes from a specified node
+     */
+    private int numNodes(int node) {
+        if (node == NIL)
+            return 0;
+        return numNodes(left(node)) + numNodes(right(node)) + 1;
+    }
+
+    /**
+     * Return the height of the tree from the specified node. Helper for
+     * height().
+     * @param node - the starting node to calculate the height from
+     * @return the number of nodes from the node to its farthest leaf
+     */
+    private int heightRecur(int node) {
+        if (node == NIL)
+            return 0;
+        return 1 + Math.max(heightRecur(left(node)), heightRecur(right(node)));
+    }
+
+    /**
+     * Return the node with matching key, NIL if cannot found. Helper for
+     * contains(), remove() and numChildren().
+     * @param key - the key to search
+     * @return the handle of the node with matching key
+     */
+    private int BSTSearch(E key) {
+        int cur = root;
+        while (cur != NIL) {
+            int cmp = compareKey(key, cur);
+            if (cmp == 0)
+                return cur;
+            cur = (cmp < 0) ? left(cur) : right(cur);
+        }
+        return NIL;
+    }
+
+    /**
+     * Get the leftmost (smallest) node of a subtree.
+     * @param node - the root of the subtree
+     * @return the leftmost node, NIL if the subtree is empty
+     */
+    private int leftmost(int node) {
+        if (node == NIL)
+            return NIL;
+        while (left(node) != NIL) {
+            node = left(node);
+        }
+        return node;
+    }
+
+    /**
+     * Get the in-order successor of a node using parent links.
+     * @param node - the node to get the successor
+     * @return the successor node, NIL if node is the largest
+     */
+    private int successor(int node) {
+        if (right(node) != NIL)
+            return leftmost(right(node));
+        int par = parent(node);
+        while (par != NIL && node == right(par)) {
+            node = par;
+            par = parent(par);
+        }
+        return par;
+    }
+
+    /**
+     * Set the child of a parent to a specified child, updating the child's
+     * parent link.
+     * @param par - the parent node
+     * @param isLeftChild - true if intend to set left child, false if right child
+     * @param child - the child node to be set
+     */
+    private void rbSetChild(int par, boolean isLeftChild, int child) {
+        if (isLeftChild)
+            setLeft(par, child);
+        else
+            setRight(par, child);
+        if (child != NIL)
+            setParent(child, par);
+    }
+
+    /**
+     * Replace the current child of a parent with another new child, or the
+     * root if the current child has no parent.
+     * @param par - the parent node, NIL if curChild is the root
+     * @param curChild - the current child
+     * @param newChild - the new child to replace the current child
+     */
+    private void rbReplaceChild(int par, int curChild, int newChild) {
+        if (par == NIL) {
+            root = newChild;
+            if (newChild != NIL)
+                setParent(newChild, NIL);
+        } else {
+            rbSetChild(par, left(par) == curChild, newChild);
+        }
+    }
+
+    /**
+     * Rotate left at the specified node. Only the node, its right child, the
+     * right child's former left child and the node's parent are written.
+     * @param node - the node at which the rotation is performed
+     */
+    private void rbRotateLeft(int node) {
+        int rightChild = right(node);
+        rbReplaceChild(parent(node), node, rightChild);
+        rbSetChild(node, false, left(rightChild));
+        rbSetChild(rightChild, true, node);
+    }
+
+    /**
+     * Rotate right at the specified node. Only the node, its left child, the
+     * left child's former right child and the node's parent are written.
+     * @param node - the node at which the rotation is performed
+     */
+    private void rbRotateRight(int node) {
+        int leftChild = left(node);
+        rbReplaceChild(parent(node), node, leftChild);
+        rbSetChild(node, true, right(leftChild));
+        rbSetChild(leftChild, false, node);
+    }
+
+    /**
+     * Determine if the node is non-NIL and red.
+     * @param node - the node to be determined whether it's red
+     * @return true if the node is non-NIL and red, false otherwise
+     */
+    private boolean rbNonNullAndRed(int node) {
+        return (node != NIL && isRed(node));
+    }
+
+    /**
+     * Rebalance to maintain the red black balance tree after insertion. Same
+     * cases as BST_RB.rbBalance().
+     * @param node - the current node to be rebalanced
+     */
+    private void rbBalance(int node) {
+        while (true) {
+            int par = parent(node);
+            //Case1: if node is root
+            if (par == NIL) {
+                setRed(node, false);
+                return;
+            }
+            //Case2: if node's parent is black
+            if (!isRed(par)) return;
+            int grandparent = parent(par);
+            int uncle = (left(grandparent) == par) ? right(grandparent)
+                : left(grandparent);
+            //Case3: if parent and uncle are both red
+            if (rbNonNullAndRed(uncle)) {
+                setRed(par, false);
+                setRed(uncle, false);
+                setRed(grandparent, true);
+                node = grandparent; //rebalance grandparent
+                continue;
+            }
+            //Case4: if parent is red but uncle is black
+            if (node == right(par) && par == left(grandparent)) {
+                rbRotateLeft(par);
+                node = par;
+                par = parent(node);
+            } else if (node == left(par) && par == right(grandparent)) {
+                rbRotateRight(par);
+                node = par;
+                par = parent(node);
+            }
+            setRed(par, false);
+            setRed(grandparent, true);
+            if (node == left(par))
+                rbRotateRight(grandparent);
+            else
+                rbRotateLeft(grandparent);
+            return;
+        }
+    }
+
+    /**
+     * Remove a node of a RB tree that will maintain RBT property. A node with
+     * two children takes its predecessor's key and the predecessor is removed.
+     * @param node - the node to be removed
+     */
+    private void rbRemoveNode(int node) {
+        if (left(node) != NIL && right(node) != NIL) {
+            int pred = left(node);
+            while (right(pred) != NIL) {
+                pred = right(pred);
+            }
+            copyKey(pred, node);
+            node = pred;
+        }
+        //if the node is black, restructure the tree to prepare for removal
+        if (!isRed(node))
+            rbPrepForRemoval(node);
+        rbReplaceChild(parent(node), node,
+            (left(node) != NIL) ? left(node) : right(node));
+        freeNode(node);
+    }
+
+    /**
+     * Restructure the tree (prepare for removal of black node) to maintain the
+     * RBT black-path-length property. Same cases as BST_RB.rbPrepForRemoval().
+     * @param node - the node to be removed
+     */
+    private void rbPrepForRemoval(int node) {
+        while (true) {
+            //Case1: node is red or node is the root
+            if (isRed(node) || parent(node) == NIL)
+                return;
+            int par = parent(node);
+            int sibling = (node == left(par)) ? right(par) : left(par);
+            //Case2: sibling is red
+            if (isRed(sibling)) {
+                setRed(par, true);
+                setRed(sibling, false);
+                if (node == left(par))
+                    rbRotateLeft(par);
+                else
+                    rbRotateRight(par);
+                sibling = (node == left(par)) ? right(par) : left(par);
+            }
+            boolean bothBlack = !rbNonNullAndRed(left(sibling))
+                && !rbNonNullAndRed(right(sibling));
+            //Case3: parent is black and both of sibling's children are black
+            if (!isRed(par) && bothBlack) {
+                setRed(sibling, true);
+                node = par; //prepare the parent
+                continue;
+            }
+            //Case4: parent is red and both of sibling's children are black
+            if (isRed(par) && bothBlack) {
+                setRed(par, false);
+                setRed(sibling, true);
+                return;
+            }
+            //Case5: sibling's left child is red, right child is black, and
+            //node is left child
+            if (rbNonNullAndRed(left(sibling))
+                && !rbNonNullAndRed(right(sibling)) && node == left(par)) {
+                setRed(sibling, true);
+                setRed(left(sibling), false);
+                rbRotateRight(sibling);
+                sibling = right(par);
+            }
+            //Case6: sibling's left child is black, right child is red, and
+            //node is right child
+            else if (!rbNonNullAndRed(left(sibling))
+                && rbNonNullAndRed(right(sibling)) && node == right(par)) {
+                setRed(sibling, true);
+                setRed(right(sibling), false);
+                rbRotateLeft(sibling);
+                sibling = left(par);
+            }
+            setRed(sibling, isRed(par));
+            setRed(par, false);
+            if (node == left(par)) {
+                setRed(right(sibling), false);
+                rbRotateLeft(par);
+            } else {
+                setRed(left(sibling), false);
+                rbRotateRight(par);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Inner iterator class for the indexed tree. Iterates in order by
+     * following parent links; it holds no stack.
+     */
+    private class IndexedIterator implements Iterator<E> {
+
+        private int next; //the node whose element a call to next() will return
+
+        /**
+         * Construct an iterator positioned at the smallest element.
+         */
+        private IndexedIterator() {
+            next = leftmost(root);
+        }
+
+        /**
+         * Returns true if the iteration has more elements
+         * @return true if the iteration has more elements
+         */
+        public boolean hasNext() {
+            return (next != NIL);
+        }
+
+        /**
+         * Returns the next element in the iteration.
+         * @return the next element in the iteration
+         * @throws NoSuchElementException - if the iteration has no more
+         * elements
+         */
+        public E next() {
+            if (next == NIL)
+                throw new NoSuchElementException();
+            E data = key(next);
+            next = successor(next);
+            return data;
+        }
+    } //end iterator class
+
+} //end BST_RBIndexed class
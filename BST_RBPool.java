@@ -0,0 +1,174 @@
+import java.util.*;
+
+/**
+ * BST_RBPool class that implements a Red-Black Balance BST Tree whose nodes
+ * live in parallel arrays (keys, left, right, parent and a color bit set) and
+ * link to each other by array index. Slots of removed nodes are kept on a free
+ * list and reused by later insertions, and clear() resets the arrays without
+ * discarding them, so a tree under steady insert/remove churn allocates
+ * nothing per insertion once its arrays have grown.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+public class BST_RBPool<E extends Comparable <? super E>>
+    extends BST_RBIndexed<E> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private Object[] keys; //the key of each slot
+    private int[] lefts; //left child index of each slot
+    private int[] rights; //right child index of each slot
+    private int[] parents; //parent index of each slot
+    private long[] colors; //bit set of slots that are red
+    private int used; //number of slots ever handed out (high-water mark)
+    private int freeHead = NIL; //first free slot, chained through lefts
+
+    /**
+     * Constructs a new, empty binary search tree, sorted according to the
+     * natural ordering of its elements.
+     */
+    public BST_RBPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new, empty binary search tree with room for the specified
+     * number of nodes before its arrays have to grow.
+     * @param capacity - the initial number of node slots
+     * @throws IllegalArgumentException - if capacity is negative
+     */
+    public BST_RBPool(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException();
+        keys = new Object[capacity];
+        lefts = new int[capacity];
+        rights = new int[capacity];
+        parents = new int[capacity];
+        colors = new long[(capacity + 63) >>> 6];
+    }
+
+    /**
+     * Constructs a new binary search tree containing the elements in the
+     * specified collection, sorted according to the natural ordering of its
+     * elements.
+     * @param c - collection whose elements will comprise the new BST
+     * @throws ClassCastException - if the elements in c are not Comparable, or
+     * are not mutually comparable
+     * @throws NullPointerException - if the specified collection is null
+     */
+    public BST_RBPool(Collection<? extends E> c) {
+        this(c.size());
+        addAll(c);
+    }
+
+    /**
+     * Returns the number of node slots the arrays can hold before growing.
+     * @return the current capacity of the node arrays
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /************** Node Storage **********/
+
+    @Override
+    protected int allocNode(E key) {
+        int node;
+        if (freeHead != NIL) {
+            //reuse the slot of a removed node
+            node = freeHead;
+            freeHead = lefts[node];
+        } else {
+            if (used == keys.length)
+                grow();
+            node = used ++;
+        }
+        keys[node] = key;
+        lefts[node] = NIL;
+        rights[node] = NIL;
+        parents[node] = NIL;
+        setRed(node, true);
+        return node;
+    }
+
+    @Override
+    protected void freeNode(int node) {
+        keys[node] = null; //let go of the key
+        lefts[node] = freeHead;
+        freeHead = node;
+    }
+
+    @Override
+    protected void clearNodes() {
+        Arrays.fill(keys, 0, used, null);
+        used = 0;
+        freeHead = NIL;
+    }
+
+    @Override
+    protected int left(int node) {
+        return lefts[node];
+    }
+
+    @Override
+    protected int right(int node) {
+        return rights[node];
+    }
+
+    @Override
+    protected int parent(int node) {
+        return parents[node];
+    }
+
+    @Override
+    protected boolean isRed(int node) {
+        return (colors[node >>> 6] & (1L << node)) != 0;
+    }
+
+    @Override
+    protected void setLeft(int node, int child) {
+        lefts[node] = child;
+    }
+
+    @Override
+    protected void setRight(int node, int child) {
+        rights[node] = child;
+    }
+
+    @Override
+    protected void setParent(int node, int par) {
+        parents[node] = par;
+    }
+
+    @Override
+    protected void setRed(int node, boolean red) {
+        if (red)
+            colors[node >>> 6] |= (1L << node);
+        else
+            colors[node >>> 6] &= ~(1L << node);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected E key(int node) {
+        return (E) keys[node];
+    }
+
+    @Override
+    protected void copyKey(int from, int to) {
+        keys[to] = keys[from];
+    }
+
+    /**
+     * Grow every node array by half of its length. Helper for allocNode().
+     */
+    private void grow() {
+        int capacity = Math.max(DEFAULT_CAPACITY, keys.length + (keys.length >> 1));
+        keys = Arrays.copyOf(keys, capacity);
+        lefts = Arrays.copyOf(lefts, capacity);
+        rights = Arrays.copyOf(rights, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        colors = Arrays.copyOf(colors, (capacity + 63) >>> 6);
+    }
+
+} //end BST_RBPool class
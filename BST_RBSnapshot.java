@@ -0,0 +1,256 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * BST_RBSnapshot class that saves a BST_RB to a compact binary file and loads
+ * it back. The file holds a header (magic, version, element count), then each
+ * element in ascending order as a length-prefixed encoded key, then a CRC32 of
+ * everything before it. Both directions stream through a fixed buffer, and
+ * loading builds the balanced tree in linear time straight from the file.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+public final class BST_RBSnapshot {
+
+    private static final int MAGIC = 0x42535453; //"BSTS"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * No instances: the class only has static methods.
+     */
+    private BST_RBSnapshot() {
+    }
+
+    /**
+     * Saves the elements of a tree to a file, replacing the file atomically
+     * once the new snapshot is completely on the storage device, and returns
+     * once the replacement is durable too.
+     * @param tree - the tree to save
+     * @param file - the file to write
+     * @param codec - the codec that encodes the elements
+     * @throws IOException - if the file cannot be written
+     * @throws NullPointerException - if any argument is null
+     */
+    public static <E extends Comparable <? super E>> void save(BST_RB<E> tree,
+        Path file, KeyCodec<E> codec) throws IOException {
+        if (tree == null || codec == null)
+            throw new NullPointerException();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 crc = new CRC32();
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            buf.putInt(MAGIC).putInt(VERSION).putInt(tree.size());
+            Iterator<E> iter = tree.iterator();
+            while (iter.hasNext()) {
+                byte[] key = codec.encode(iter.next());
+                if (buf.remaining() < Integer.BYTES + key.length) {
+                    flush(channel, buf, crc);
+                    if (buf.remaining() < Integer.BYTES + key.length)
+                        buf = ByteBuffer.allocate(Integer.BYTES + key.length);
+                }
+                buf.putInt(key.length).put(key);
+            }
+            flush(channel, buf, crc);
+            buf.putLong(crc.getValue());
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        //the rename is durable only once the directory holding it is synced
+        try (FileChannel dir = FileChannel.open(
+                file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        }
+    }
+
+    /**
+     * Loads a tree from a file written by save(). The tree is built in linear
+     * time as the file streams in.
+     * @param file - the file to read
+     * @param codec - the codec that decodes the elements
+     * @return a new tree holding the elements of the snapshot
+     * @throws IOException - if the file cannot be read, is truncated, is not
+     * a snapshot, or fails its checksum
+     * @throws NullPointerException - if any argument is null
+     */
+    public static <E extends Comparable <? super E>> BST_RB<E> load(Path file,
+        KeyCodec<E> codec) throws IOException {
+        if (codec == null)
+            throw new NullPointerException();
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            final SnapshotReader<E> reader = new SnapshotReader<E>(channel, codec);
+            BST_RB<E> tree = new BST_RB<E>();
+            try {
+                tree.addAllSorted(new AbstractCollection<E>() {
+                    public Iterator<E> iterator() {
+                        return reader;
+                    }
+                    public int size() {
+                        return reader.count;
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (IllegalArgumentException | NoSuchElementException e) {
+                throw new IOException("corrupt snapshot", e);
+            }
+            reader.checkTrailer();
+            return tree;
+        }
+    }
+
+    /**
+     * Write out the buffered bytes and add them to the checksum. Helper for
+     * save().
+     * @param channel - the file being written
+     * @param buf - the buffer, in fill mode; cleared on return
+     * @param crc - the running checksum
+     * @throws IOException - if the file cannot be written
+     */
+    private static void flush(FileChannel channel, ByteBuffer buf, CRC32 crc)
+        throws IOException {
+        buf.flip();
+        crc.update(buf.duplicate());
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * Inner iterator class that decodes the elements of a snapshot file as
+     * they are read, keeping a running checksum of the bytes consumed.
+     */
+    private static class SnapshotReader<E> implements Iterator<E> {
+
+        private final FileChannel channel; //the file being read
+        private final KeyCodec<E> codec; //decodes the elements
+        private final CRC32 crc = new CRC32(); //checksum of consumed bytes
+        private ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE); //read mode
+        private int crcMark; //buffer position up to which crc is updated
+        private int count; //number of elements in the snapshot
+        private int remaining; //number of elements not yet decoded
+
+        /**
+         * Construct a reader and read the header of the snapshot.
+         * @param channel - the file to read
+         * @param codec - the codec that decodes the elements
+         * @throws IOException - if the file is not a snapshot
+         */
+        private SnapshotReader(FileChannel channel, KeyCodec<E> codec)
+            throws IOException {
+            this.channel = channel;
+            this.codec = codec;
+            buf.limit(0);
+            ensure(3 * Integer.BYTES);
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION)
+                throw new IOException("not a BST_RB snapshot");
+            count = buf.getInt();
+            if (count < 0)
+                throw new IOException("corrupt snapshot");
+            remaining = count;
+        }
+
+        /**
+         * Returns true if the snapshot has more elements
+         * @return true if the snapshot has more elements
+         */
+        public boolean hasNext() {
+            return (remaining > 0);
+        }
+
+        /**
+         * Returns the next element of the snapshot.
+         * @return the next element of the snapshot
+         * @throws NoSuchElementException - if all elements were read
+         * @throws UncheckedIOException - if the file cannot be read
+         */
+        public E next() {
+            if (remaining == 0)
+                throw new NoSuchElementException();
+            try {
+                ensure(Integer.BYTES);
+                int length = buf.getInt();
+                //a corrupt length must not make ensure() allocate past the
+                //file; ask the file only when the buffer must be refilled
+                if (length < 0 || (length > buf.remaining()
+                    && length > buf.remaining() + channel.size()
+                        - channel.position()))
+                    throw new IOException("corrupt snapshot");
+                ensure(length);
+                int start = buf.position();
+                E e = codec.decode(buf, length);
+                buf.position(start + length);
+                remaining --;
+                return e;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Read the trailer and compare it with the checksum of everything
+         * consumed, which must be every element.
+         * @throws IOException - if elements are left or the checksum differs
+         */
+        private void checkTrailer() throws IOException {
+            if (remaining != 0)
+                throw new IOException("corrupt snapshot");
+            checksumConsumed();
+            ensure(Long.BYTES);
+            if (buf.getLong() != crc.getValue())
+                throw new IOException("snapshot checksum mismatch");
+        }
+
+        /**
+         * Make at least n bytes available in the buffer, reading more of the
+         * file and growing the buffer if needed.
+         * @param n - the number of bytes needed
+         * @throws IOException - if the file ends first
+         */
+        private void ensure(int n) throws IOException {
+            if (buf.remaining() >= n)
+                return;
+            checksumConsumed();
+            buf.compact();
+            if (buf.capacity() < n) {
+                buf.flip();
+                buf = ByteBuffer.allocate(n).put(buf);
+            }
+            while (buf.position() < n) {
+                if (channel.read(buf) < 0)
+                    throw new EOFException("truncated snapshot");
+            }
+            buf.flip();
+            crcMark = 0;
+        }
+
+        /**
+         * Add the bytes consumed since the last call to the checksum.
+         */
+        private void checksumConsumed() {
+            ByteBuffer consumed = buf.duplicate();
+            consumed.position(crcMark).limit(buf.position());
+            crc.update(consumed);
+            crcMark = buf.position();
+        }
+    } //end reader class
+
+} //end BST_RBSnapshot class
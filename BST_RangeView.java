@@ -0,0 +1,335 @@
+import java.util.*;
+
+/**
+ * BST_RangeView class that presents the elements of a BST_Interface tree
+ * within a range as a SortedSet. The view copies nothing: it positions an
+ * iterator of the tree at the lower bound with iterator(from) and stops at
+ * the last element below the upper bound, and writes through to the tree.
+ * The static helpers are the linear-scan neighbor queries that back the
+ * BST_Interface defaults for trees that cannot search for neighbors.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+public class BST_RangeView<E> extends AbstractSet<E> implements SortedSet<E> {
+
+    protected final BST_Interface<E> tree; //the backing tree
+    protected final E lo; //the inclusive lower bound, null if unbounded
+    protected final E hi; //the exclusive upper bound, null if unbounded
+
+    /**
+     * Constructs a view of the elements of a tree from lo, inclusive, to hi,
+     * exclusive.
+     * @param tree - the backing tree
+     * @param lo - the inclusive lower bound, <tt>null</tt> if unbounded
+     * @param hi - the exclusive upper bound, <tt>null</tt> if unbounded
+     * @throws IllegalArgumentException - if lo is greater than hi
+     * @throws NullPointerException - if tree is null
+     */
+    public BST_RangeView(BST_Interface<E> tree, E lo, E hi) {
+        if (tree == null)
+            throw new NullPointerException();
+        if (lo != null && hi != null && compare(lo, hi) > 0)
+            throw new IllegalArgumentException();
+        this.tree = tree;
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    /**
+     * Returns an iterator over the elements in this view in ascending order.
+     * Its remove() removes from the backing tree.
+     * @return an iterator over the elements in this view
+     */
+    @Override
+    public Iterator<E> iterator() {
+        final Iterator<E> iter = (lo == null) ? tree.iterator()
+            : tree.iterator(lo);
+        //the last element in range, found up front so that hasNext() never
+        //has to read ahead of the element the tree's iterator last returned
+        final E end = (hi == null) ? null : tree.lower(hi);
+        final boolean empty = (hi != null) && (end == null
+            || (lo != null && compare(end, lo) < 0));
+        return new Iterator<E>() {
+            private boolean done = empty; //true once end was returned
+
+            public boolean hasNext() {
+                return !done && iter.hasNext();
+            }
+
+            public E next() {
+                if (done)
+                    throw new NoSuchElementException();
+                E e = iter.next();
+                if (end != null && compare(e, end) >= 0)
+                    done = true;
+                return e;
+            }
+
+            public void remove() {
+                iter.remove();
+            }
+        };
+    }
+
+    /**
+     * Returns the number of elements in this view, by counting them.
+     * @return the number of elements in this view
+     */
+    @Override
+    public int size() {
+        int count = 0;
+        for (Iterator<E> iter = iterator(); iter.hasNext(); iter.next()) {
+            count ++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns true if this view contains the specified element.
+     * @param o - element to be checked for containment in this view
+     * @return true if the element is in range and in the tree
+     * @throws ClassCastException - if the element cannot be compared
+     * @throws NullPointerException - if the specified element is null
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+        E e = (E) o;
+        return inRange(e) && tree.contains(e);
+    }
+
+    /**
+     * Adds the specified element to the backing tree.
+     * @param e - element to be added
+     * @return true if the tree did not already contain the element
+     * @throws IllegalArgumentException - if the element is out of range
+     */
+    @Override
+    public boolean add(E e) {
+        if (!inRange(e))
+            throw new IllegalArgumentException("element out of range");
+        return tree.add(e);
+    }
+
+    /**
+     * Removes the specified element from the backing tree if it is in range.
+     * @param o - element to be removed
+     * @return true if the element was in range and in the tree
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o) {
+        E e = (E) o;
+        return inRange(e) && tree.remove(e);
+    }
+
+    /**
+     * Returns null, since the elements are in natural order.
+     * @return null
+     */
+    public Comparator<? super E> comparator() {
+        return null;
+    }
+
+    /**
+     * Returns the first (lowest) element in this view.
+     * @return the first element in this view
+     * @throws NoSuchElementException - if this view is empty
+     */
+    public E first() {
+        E e = (lo == null) ? (tree.isEmpty() ? null : tree.first())
+            : tree.ceiling(lo);
+        if (e == null || !inRange(e))
+            throw new NoSuchElementException();
+        return e;
+    }
+
+    /**
+     * Returns the last (highest) element in this view.
+     * @return the last element in this view
+     * @throws NoSuchElementException - if this view is empty
+     */
+    public E last() {
+        E e = (hi == null) ? (tree.isEmpty() ? null : tree.last())
+            : tree.lower(hi);
+        if (e == null || !inRange(e))
+            throw new NoSuchElementException();
+        return e;
+    }
+
+    /**
+     * Returns a view of the elements of this view from fromElement,
+     * inclusive, to toElement, exclusive.
+     * @param fromElement - the inclusive lower bound
+     * @param toElement - the exclusive upper bound
+     * @return a view of the range
+     * @throws IllegalArgumentException - if the range is not within this
+     * view's range, or fromElement is greater than toElement
+     * @throws NullPointerException - if either bound is null
+     */
+    public SortedSet<E> subSet(E fromElement, E toElement) {
+        checkBound(fromElement);
+        checkBound(toElement);
+        return view(fromElement, toElement);
+    }
+
+    /**
+     * Returns a view of the elements of this view less than toElement.
+     * @param toElement - the exclusive upper bound
+     * @return a view of the range
+     * @throws IllegalArgumentException - if toElement is out of range
+     * @throws NullPointerException - if toElement is null
+     */
+    public SortedSet<E> headSet(E toElement) {
+        checkBound(toElement);
+        return view(lo, toElement);
+    }
+
+    /**
+     * Returns a view of the elements of this view greater than or equal to
+     * fromElement.
+     * @param fromElement - the inclusive lower bound
+     * @return a view of the range
+     * @throws IllegalArgumentException - if fromElement is out of range
+     * @throws NullPointerException - if fromElement is null
+     */
+    public SortedSet<E> tailSet(E fromElement) {
+        checkBound(fromElement);
+        return view(fromElement, hi);
+    }
+
+    /**
+     * Create a view of the backing tree over a narrower range. Trees that
+     * return a subclass override this to keep their views' subclass.
+     * @param lo - the inclusive lower bound, <tt>null</tt> if unbounded
+     * @param hi - the exclusive upper bound, <tt>null</tt> if unbounded
+     * @return the new view
+     */
+    protected SortedSet<E> view(E lo, E hi) {
+        return new BST_RangeView<E>(tree, lo, hi);
+    }
+
+    /**
+     * Determine if an element is within the range of this view.
+     * @param e - the element to check
+     * @return true if lo <= e < hi
+     * @throws NullPointerException - if the element is null
+     */
+    protected boolean inRange(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        return (lo == null || compare(e, lo) >= 0)
+            && (hi == null || compare(e, hi) < 0);
+    }
+
+    /**
+     * Verify that a bound of a narrower view is within this view's range; the
+     * upper bound itself may be the exclusive bound of this view.
+     * @param bound - the bound to check
+     * @throws IllegalArgumentException - if the bound is out of range
+     * @throws NullPointerException - if the bound is null
+     */
+    private void checkBound(E bound) {
+        if (bound == null)
+            throw new NullPointerException();
+        if ((lo != null && compare(bound, lo) < 0)
+            || (hi != null && compare(bound, hi) > 0))
+            throw new IllegalArgumentException("bound out of range");
+    }
+
+    /************** Linear-Scan Helpers **********/
+
+    /**
+     * Compare two elements by their natural ordering.
+     * @param a - the first element
+     * @param b - the second element
+     * @return a negative, zero or positive value as a is less than, equal to
+     * or greater than b
+     * @throws ClassCastException - if the elements are not mutually comparable
+     */
+    @SuppressWarnings("unchecked")
+    static <E> int compare(E a, E b) {
+        return ((Comparable<? super E>) a).compareTo(b);
+    }
+
+    /**
+     * Return the least element of a tree greater than (or, if inclusive,
+     * equal to) a key, or the greatest element less than (or equal to) it,
+     * by scanning the tree's iterator. Backs the BST_Interface defaults.
+     * @param tree - the tree to scan
+     * @param key - the key to search
+     * @param greater - true to search above the key, false to search below
+     * @param inclusive - true if an element equal to the key qualifies
+     * @return the neighbor, <tt>null</tt> if there is none
+     * @throws NullPointerException - if the key is null
+     */
+    static <E> E neighbor(BST_Interface<E> tree, E key, boolean greater,
+        boolean inclusive) {
+        if (key == null)
+            throw new NullPointerException();
+        E found = null;
+        Iterator<E> iter = tree.iterator();
+        while (iter.hasNext()) {
+            E e = iter.next();
+            int cmp = compare(e, key);
+            if (greater) {
+                if (cmp > 0 || (cmp == 0 && inclusive))
+                    return e;
+            } else {
+                if (cmp > 0 || (cmp == 0 && !inclusive))
+                    return found;
+                found = e;
+            }
+        }
+        return greater ? null : found;
+    }
+
+    /**
+     * Return an iterator of a tree positioned at the least element greater
+     * than or equal to a key, by scanning the tree's iterator. Its remove()
+     * is the tree iterator's. Backs the BST_Interface default.
+     * @param tree - the tree to iterate
+     * @param from - the lowest element to iterate from
+     * @return an iterator over the elements from the key onwards
+     * @throws NullPointerException - if the key is null
+     */
+    static <E> Iterator<E> iteratorFrom(BST_Interface<E> tree, E from) {
+        if (from == null)
+            throw new NullPointerException();
+        final Iterator<E> iter = tree.iterator();
+        //consume up to the first element in range, which next() returns first
+        E first = null;
+        while (iter.hasNext()) {
+            E e = iter.next();
+            if (compare(e, from) >= 0) {
+                first = e;
+                break;
+            }
+        }
+        final E head = first;
+        return new Iterator<E>() {
+            private boolean atHead = (head != null); //head not yet returned
+
+            public boolean hasNext() {
+                return atHead || (head != null && iter.hasNext());
+            }
+
+            public E next() {
+                if (atHead) {
+                    atHead = false;
+                    return head;
+                }
+                if (head == null)
+                    throw new NoSuchElementException();
+                return iter.next();
+            }
+
+            public void remove() {
+                if (atHead)
+                    throw new IllegalStateException();
+                iter.remove();
+            }
+        };
+    }
+
+} //end BST_RangeView class
@@ -0,0 +1,585 @@
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * CombiningBST_RB class that lets many threads share one unsynchronized
+ * BST_RB without a lock, and implements the BST_Interface interface
+ * (flat combining). Producers publish requests into a lock-free queue; one
+ * combiner thread, the only thread that touches the tree, drains the queue
+ * in batches of up to BATCH requests, stably sorts each batch by key and
+ * applies it in key order, so consecutive descents follow the same, cached
+ * paths. Requests on the same key keep their order, since the sort is
+ * stable.
+ *
+ * Writes come in three modes: add() and remove() wait for their result;
+ * addAsync() and removeAsync() return a Future of it; addLater() and
+ * removeLater() return at once and drop the result (fire-and-forget;
+ * flush() waits for them). contains() is batched with the writes; the other
+ * reads run on the combiner between batches, and iterators run over a copy.
+ *
+ * close() applies every request submitted before it and stops the combiner
+ * thread; requests submitted afterwards are rejected with
+ * IllegalStateException. A tree that becomes unreachable without close()
+ * is stopped the same way by a Cleaner, but only after a garbage
+ * collection, so close() it (try-with-resources) to free its thread
+ * promptly.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+public class CombiningBST_RB<E extends Comparable <? super E>>
+    implements BST_Interface<E>, AutoCloseable {
+
+    static final int BATCH = 1024; //most requests applied per batch
+
+    //the kinds of request
+    private static final int ADD = 0;
+    private static final int REMOVE = 1;
+    private static final int CONTAINS = 2;
+    private static final int QUERY = 3; //runs a function on the whole tree
+
+    //stops the combiner thread of a tree that became unreachable unclosed
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Combiner<E> combiner; //the queue, the tree and the thread
+    private final Cleaner.Cleanable cleanable; //runs combiner.stop() once
+
+    /** A request published by a producer **/
+    private static final class Request<E extends Comparable <? super E>> {
+        final int op; //ADD, REMOVE, CONTAINS or QUERY
+        final E e; //the key, null for a QUERY
+        final Function<BST_RB<E>, ?> query; //the function of a QUERY
+        final CompletableFuture<Object> result; //null if fire-and-forget
+
+        /**
+         * Construct a request.
+         * @param op - ADD, REMOVE, CONTAINS or QUERY
+         * @param e - the key, null for a QUERY
+         * @param query - the function of a QUERY, null otherwise
+         * @param result - completed with the result, null if fire-and-forget
+         */
+        Request(int op, E e, Function<BST_RB<E>, ?> query,
+            CompletableFuture<Object> result) {
+            this.op = op;
+            this.e = e;
+            this.query = query;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Constructs a new, empty combining search tree, sorted according to the
+     * natural ordering of its elements, and starts its combiner thread.
+     */
+    public CombiningBST_RB() {
+        combiner = new Combiner<E>();
+        cleanable = CLEANER.register(this, combiner::stop);
+        combiner.thread.start();
+    }
+
+    /**
+     * Adds the specified element and waits for the result.
+     * @param e - element to be added to this tree
+     * @return true if this tree did not already contain the specified element
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in this tree
+     * @throws NullPointerException - if the specified element is null
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public boolean add(E e) {
+        return (Boolean) await(submit(ADD, e, null, true));
+    }
+
+    /**
+     * Requests that the specified element be added, without waiting.
+     * @param e - element to be added to this tree
+     * @return a Future of true if this tree did not already contain e
+     * @throws NullPointerException - if the specified element is null
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public Future<Boolean> addAsync(E e) {
+        return cast(submit(ADD, e, null, true));
+    }
+
+    /**
+     * Requests that the specified element be added, dropping the result.
+     * @param e - element to be added to this tree
+     * @throws NullPointerException - if the specified element is null
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public void addLater(E e) {
+        submit(ADD, e, null, false);
+    }
+
+    /**
+     * Adds all of the elements in the specified collection in one request,
+     * through BST_RB.addAll(), and waits for the result.
+     * @param c - collection containing elements to be added to this tree
+     * @return true if this tree changed as a result of the call
+     * @throws ClassCastException - if the elements provided cannot be
+     * compared with the elements currently in the tree
+     * @throws NullPointerException - if the specified collection is null or
+     * if any element is null
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public boolean addAll(Collection<? extends E> c) {
+        if (c == null)
+            throw new NullPointerException();
+        return query(t -> t.addAll(c));
+    }
+
+    /**
+     * Removes all of the elements, after the requests submitted before.
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public void clear() {
+        query(t -> {
+            t.clear();
+            return null;
+        });
+    }
+
+    /**
+     * Returns true if this tree contains the specified element, batched with
+     * the writes.
+     * @param o - element to be checked for containment in this tree
+     * @return true if this tree contains the specified element
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in the tree
+     * @throws NullPointerException - if the specified element is null
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public boolean contains(E o) {
+        return (Boolean) await(submit(CONTAINS, o, null, true));
+    }
+
+    /**
+     * Looks up a batch of keys in one request, through
+     * BST_RB.containsEach().
+     * @param keys - the keys to look up
+     * @return the keys found, by position
+     * @throws ClassCastException - if a key cannot be compared with the
+     * elements currently in the tree
+     * @throws NullPointerException - if keys is null or holds a null key
+     * @throws IllegalStateException - if this tree is closed
+     */
+    @Override
+    public BitSet containsEach(Collection<? extends E> keys) {
+        if (keys == null)
+            throw new NullPointerException();
+        return query(t -> t.containsEach(keys));
+    }
+
+    /**
+     * Looks up an array of keys in one request, through
+     * BST_RB.containsEach().
+     * @param keys - the keys to look up
+     * @return the keys found, by index
+     * @throws ClassCastException - if a key cannot be compared with the
+     * elements currently in the tree
+     * @throws NullPointerException - if keys is null or holds a null key
+     * @throws IllegalStateException - if this tree is closed
+     */
+    @Override
+    public BitSet containsEach(E[] keys) {
+        if (keys == null)
+            throw new NullPointerException();
+        return query(t -> t.containsEach(keys));
+    }
+
+    /**
+     * Returns the first (lowest) element currently in this tree.
+     * @return the first (lowest) element currently in this tree
+     * @throws NoSuchElementException - if this tree is empty
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public E first() {
+        return query(t -> t.first());
+    }
+
+    /**
+     * Returns true if this tree contains no elements.
+     * @return true if this tree contains no elements
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public boolean isEmpty() {
+        return query(t -> t.isEmpty());
+    }
+
+    /**
+     * Returns an iterator over a copy of the elements, taken after the
+     * requests submitted before, in ascending order. Its remove() removes the
+     * last returned element from this tree.
+     * @return an iterator over the elements in this tree in ascending order
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public Iterator<E> iterator() {
+        final List<E> copy = query(t -> {
+            List<E> list = new ArrayList<E>(t.size());
+            for (Iterator<E> iter = t.iterator(); iter.hasNext(); ) {
+                list.add(iter.next());
+            }
+            return list;
+        });
+        return new Iterator<E>() {
+            private final Iterator<E> iter = copy.iterator(); //over the copy
+            private E lastReturned; //the element last returned, null if removed
+
+            public boolean hasNext() {
+                return iter.hasNext();
+            }
+
+            public E next() {
+                lastReturned = iter.next();
+                return lastReturned;
+            }
+
+            public void remove() {
+                if (lastReturned == null)
+                    throw new IllegalStateException();
+                CombiningBST_RB.this.remove(lastReturned);
+                lastReturned = null;
+            }
+        };
+    }
+
+    /**
+     * Returns the last (highest) element currently in this tree.
+     * @return the last (highest) element currently in this tree
+     * @throws NoSuchElementException - if this tree is empty
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public E last() {
+        return query(t -> t.last());
+    }
+
+    /**
+     * Removes the specified element and waits for the result.
+     * @param o - element to be removed from this tree, if present
+     * @return true if this tree contained the specified element
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in this tree
+     * @throws NullPointerException - if the specified element is null
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public boolean remove(E o) {
+        return (Boolean) await(submit(REMOVE, o, null, true));
+    }
+
+    /**
+     * Requests that the specified element be removed, without waiting.
+     * @param o - element to be removed from this tree, if present
+     * @return a Future of true if this tree contained o
+     * @throws NullPointerException - if the specified element is null
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public Future<Boolean> removeAsync(E o) {
+        return cast(submit(REMOVE, o, null, true));
+    }
+
+    /**
+     * Requests that the specified element be removed, dropping the result.
+     * @param o - element to be removed from this tree, if present
+     * @throws NullPointerException - if the specified element is null
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public void removeLater(E o) {
+        submit(REMOVE, o, null, false);
+    }
+
+    /**
+     * Returns the number of elements, after the requests submitted before.
+     * @return the number of elements in this tree
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public int size() {
+        return query(t -> t.size());
+    }
+
+    /**
+     * Returns the height of this tree.
+     * @return the height of this tree
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public int height() {
+        return query(t -> t.height());
+    }
+
+    /**
+     * Returns the number of children of the Node that references target.
+     * @param target - the target element the node references to
+     * @return the number of children of the node that references the target
+     * @throws NoSuchElementException If target is not found in the tree
+     * @throws IllegalArgumentException Any other problems, eg.NullPointer,
+     * ClassCastException, ...
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public int numChildren(E target) {
+        return query(t -> t.numChildren(target));
+    }
+
+    /**
+     * Waits until every request submitted before has been applied, including
+     * those of addLater() and removeLater().
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public void flush() {
+        query(t -> null);
+    }
+
+    /**
+     * Applies every request submitted before, then stops the combiner
+     * thread. Later requests are rejected; calling close() again does
+     * nothing.
+     */
+    @Override
+    public void close() {
+        cleanable.clean();
+        awaitCombiner();
+    }
+
+    /**
+     * Returns a string representation of the tree.
+     * @return a string representation of the tree.
+     * @throws IllegalStateException - if this tree is closed
+     */
+    @Override
+    public String toString() {
+        return query(t -> t.toString());
+    }
+
+    /************** Private Helper Methods **********/
+
+    /**
+     * Publish a request and wake the combiner if it is parked.
+     * @param op - ADD, REMOVE, CONTAINS or QUERY
+     * @param e - the key, null for a QUERY
+     * @param query - the function of a QUERY, null otherwise
+     * @param wait - true to create a completion, false for fire-and-forget
+     * @return the completion, null if fire-and-forget
+     * @throws NullPointerException - if a key request has a null key
+     * @throws IllegalStateException - if this tree is closed
+     */
+    private CompletableFuture<Object> submit(int op, E e,
+        Function<BST_RB<E>, ?> query, boolean wait) {
+        if (op != QUERY && e == null)
+            throw new NullPointerException();
+        if (combiner.closed)
+            throw new IllegalStateException("closed");
+        CompletableFuture<Object> result = wait
+            ? new CompletableFuture<Object>() : null;
+        try {
+            combiner.queue.offer(new Request<E>(op, e, query, result));
+            if (combiner.parked)
+                LockSupport.unpark(combiner.thread);
+            if (combiner.closed) {
+                //close() raced with this request: once the combiner has
+                //gone, reject whatever it left behind, this request perhaps
+                //among them
+                awaitCombiner();
+                for (Request<E> r; (r = combiner.queue.poll()) != null; ) {
+                    if (r.result != null)
+                        r.result.completeExceptionally(
+                            new IllegalStateException("closed"));
+                }
+            }
+        } finally {
+            //keep the Cleaner from stopping the combiner mid-request
+            Reference.reachabilityFence(this);
+        }
+        return result;
+    }
+
+    /**
+     * Run a function on the tree on the combiner thread, after the requests
+     * submitted before, and wait for its result.
+     * @param query - the function to run
+     * @return the result of the function
+     * @throws IllegalStateException - if this tree is closed
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T query(Function<BST_RB<E>, T> query) {
+        return (T) await(submit(QUERY, null, query, true));
+    }
+
+    /**
+     * Wait for a completion, rethrowing the exception the request failed
+     * with.
+     * @param result - the completion
+     * @return the result
+     */
+    private static Object await(CompletableFuture<Object> result) {
+        try {
+            return result.join();
+        } catch (CompletionException ce) {
+            Throwable cause = ce.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw ce;
+        }
+    }
+
+    /**
+     * View a completion of a key request as the Future of its result.
+     * @param result - the completion
+     * @return the completion as a Future of Boolean
+     */
+    @SuppressWarnings("unchecked")
+    private static Future<Boolean> cast(CompletableFuture<Object> result) {
+        return (Future<Boolean>) (Future<?>) result;
+    }
+
+    /**
+     * Wait for the combiner thread to stop, keeping the interrupt status.
+     */
+    private void awaitCombiner() {
+        if (Thread.currentThread() == combiner.thread)
+            return;
+        boolean interrupted = false;
+        while (combiner.thread.isAlive()) {
+            try {
+                combiner.thread.join();
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * The state the combiner thread works on. It holds no reference to its
+     * CombiningBST_RB, so an unreachable tree can be collected and its
+     * combiner stopped by the Cleaner.
+     */
+    private static final class Combiner<E extends Comparable <? super E>>
+        implements Runnable {
+        final BST_RB<E> tree = new BST_RB<E>(); //combiner thread only
+        final ConcurrentLinkedQueue<Request<E>> queue =
+            new ConcurrentLinkedQueue<Request<E>>(); //the published requests
+        final Thread thread; //the thread that applies the requests
+        volatile boolean parked; //true while the combiner may be parked
+        volatile boolean closed; //true once stop() was called
+        private final List<Request<E>> sorted =
+            new ArrayList<Request<E>>(BATCH); //a run sorted by key
+
+        /**
+         * Construct the combiner state and its thread, not yet started.
+         */
+        Combiner() {
+            thread = new Thread(this, "CombiningBST_RB-combiner");
+            thread.setDaemon(true);
+        }
+
+        /**
+         * Reject later requests and wake the thread, which applies what is
+         * left in the queue and stops. Run once, by close() or the Cleaner.
+         */
+        void stop() {
+            closed = true;
+            LockSupport.unpark(thread);
+        }
+
+        /**
+         * The combiner thread's loop: drain a batch, apply it, and park while
+         * the queue is empty; after stop(), drain what is left and stop.
+         */
+        @Override
+        public void run() {
+            List<Request<E>> batch = new ArrayList<Request<E>>(BATCH);
+            List<Request<E>> run = new ArrayList<Request<E>>(BATCH);
+            while (true) {
+                //read the flag before draining: a request published before
+                //stop() is then in the queue when the flag reads true
+                boolean wasClosed = closed;
+                for (Request<E> r; batch.size() < BATCH
+                    && (r = queue.poll()) != null; ) {
+                    batch.add(r);
+                }
+                if (batch.isEmpty()) {
+                    if (wasClosed)
+                        return;
+                    parked = true;
+                    //re-check after announcing, so a producer that missed the
+                    //flag has already published its request
+                    if (queue.isEmpty() && !closed)
+                        LockSupport.park(this);
+                    parked = false;
+                    continue;
+                }
+                //key requests between two queries form a run, applied sorted
+                for (Request<E> r : batch) {
+                    if (r.op == QUERY) {
+                        applyRun(run);
+                        complete(r);
+                    } else {
+                        run.add(r);
+                    }
+                }
+                applyRun(run);
+                batch.clear();
+            }
+        }
+
+        /**
+         * Sort a run of key requests stably by key and apply them in key order,
+         * then empty the run.
+         * @param run - the key requests, in arrival order
+         */
+        private void applyRun(List<Request<E>> run) {
+            //sort a copy: a compareTo() that throws mid-merge leaves the
+            //list being sorted with requests duplicated and others lost
+            sorted.addAll(run);
+            List<Request<E>> order = sorted;
+            try {
+                sorted.sort((a, b) -> a.e.compareTo(b.e));
+            } catch (RuntimeException e) {
+                //incomparable keys: apply in arrival order, failing one by one
+                order = run;
+            }
+            for (Request<E> r : order) {
+                complete(r);
+            }
+            sorted.clear();
+            run.clear();
+        }
+
+        /**
+         * Apply one request to the tree and complete it.
+         * @param r - the request
+         */
+        private void complete(Request<E> r) {
+            Object value;
+            try {
+                switch (r.op) {
+                    case ADD:
+                        value = tree.add(r.e);
+                        break;
+                    case REMOVE:
+                        value = tree.remove(r.e);
+                        break;
+                    case CONTAINS:
+                        value = tree.contains(r.e);
+                        break;
+                    default:
+                        value = r.query.apply(tree);
+                }
+            } catch (RuntimeException e) {
+                if (r.result != null)
+                    r.result.completeExceptionally(e);
+                return;
+            }
+            if (r.result != null)
+                r.result.complete(value);
+        }
+    }
+
+} //end CombiningBST_RB class
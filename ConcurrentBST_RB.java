@@ -0,0 +1,334 @@
+import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * ConcurrentBST_RB class that makes a BST_RB safe for many threads, and
+ * implements the BST_Interface interface. Writers take a StampedLock's write
+ * lock. contains(), first(), last(), size() and isEmpty() first read without
+ * any lock and keep the answer only if no writer ran meanwhile (an optimistic
+ * read), so readers neither block each other nor write to shared memory; only
+ * when a writer interferes do they retry under the read lock. The other reads
+ * take the read lock.
+ *
+ * Iterators run over a copy of the elements taken under the read lock, so
+ * they never see a change in progress and never throw
+ * ConcurrentModificationException; their remove() removes from the tree.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+public class ConcurrentBST_RB<E extends Comparable <? super E>>
+    implements BST_Interface<E> {
+
+    private final BST_RB<E> tree = new BST_RB<E>(); //the guarded tree
+    private final StampedLock lock = new StampedLock(); //guards tree
+
+    /**
+     * Constructs a new, empty concurrent search tree, sorted according to the
+     * natural ordering of its elements.
+     */
+    public ConcurrentBST_RB() {
+    }
+
+    /**
+     * Constructs a new concurrent search tree containing the elements in the
+     * specified collection.
+     * @param c - collection whose elements will comprise the new tree
+     * @throws NullPointerException - if the specified collection is null
+     */
+    public ConcurrentBST_RB(Collection<? extends E> c) {
+        tree.addAll(c);
+    }
+
+    /** Adds the specified element under the write lock. **/
+    public boolean add(E e) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.add(e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Adds all of the elements in the collection under one write lock. **/
+    public boolean addAll(Collection<? extends E> c) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.addAll(c);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Removes all of the elements under the write lock. **/
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            tree.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Removes the specified element under the write lock. **/
+    public boolean remove(E o) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.remove(o);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns true if this tree contains the specified element. The search
+     * runs optimistically and is repeated under the read lock only if a
+     * writer changed the tree meanwhile.
+     * @param o - element to be checked for containment in this tree
+     * @return true if this tree contains the specified element
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in the tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    public boolean contains(E o) {
+        if (o == null)
+            throw new NullPointerException();
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int found = tree.searchUnchecked(o);
+                if (found >= 0 && lock.validate(stamp))
+                    return (found == 1);
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp))
+                    throw e; //a genuine failure, not a torn read
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return tree.contains(o);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the first (lowest) element currently in this tree, read
+     * optimistically.
+     * @return the first (lowest) element currently in this tree
+     * @throws NoSuchElementException - if this tree is empty
+     */
+    public E first() {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                E e = tree.isEmpty() ? null : tree.first();
+                if (lock.validate(stamp)) {
+                    if (e == null)
+                        throw new NoSuchElementException();
+                    return e;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp))
+                    throw e;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return tree.first();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the last (highest) element currently in this tree, read
+     * optimistically.
+     * @return the last (highest) element currently in this tree
+     * @throws NoSuchElementException - if this tree is empty
+     */
+    public E last() {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                E e = tree.isEmpty() ? null : tree.last();
+                if (lock.validate(stamp)) {
+                    if (e == null)
+                        throw new NoSuchElementException();
+                    return e;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp))
+                    throw e;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return tree.last();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the number of elements in this tree, read optimistically.
+     * @return the number of elements in this tree
+     */
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int size = tree.size();
+        if (stamp != 0 && lock.validate(stamp))
+            return size;
+        stamp = lock.readLock();
+        try {
+            return tree.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Returns true if this tree contains no elements, read optimistically. **/
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns an iterator over a copy of the elements taken under the read
+     * lock, in ascending order. Its remove() removes the last returned
+     * element from this tree.
+     * @return an iterator over the elements in this tree in ascending order
+     */
+    public Iterator<E> iterator() {
+        final List<E> copy;
+        long stamp = lock.readLock();
+        try {
+            copy = new ArrayList<E>(tree.size());
+            Iterator<E> iter = tree.iterator();
+            while (iter.hasNext()) {
+                copy.add(iter.next());
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return new Iterator<E>() {
+            private final Iterator<E> iter = copy.iterator(); //over the copy
+            private E lastReturned; //the element last returned, null if removed
+
+            public boolean hasNext() {
+                return iter.hasNext();
+            }
+
+            public E next() {
+                lastReturned = iter.next();
+                return lastReturned;
+            }
+
+            public void remove() {
+                if (lastReturned == null)
+                    throw new IllegalStateException();
+                ConcurrentBST_RB.this.remove(lastReturned);
+                lastReturned = null;
+            }
+        };
+    }
+
+    /** Looks up a batch of keys in one traversal under the read lock. **/
+    @Override
+    public BitSet containsEach(Collection<? extends E> keys) {
+        long stamp = lock.readLock();
+        try {
+            return tree.containsEach(keys);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Looks up an array of keys in one traversal under the read lock. **/
+    @Override
+    public BitSet containsEach(E[] keys) {
+        long stamp = lock.readLock();
+        try {
+            return tree.containsEach(keys);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Returns the height of this tree under the read lock. **/
+    public int height() {
+        long stamp = lock.readLock();
+        try {
+            return tree.height();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Returns the number of children of target's node under the read lock. **/
+    public int numChildren(E target) {
+        long stamp = lock.readLock();
+        try {
+            return tree.numChildren(target);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Returns the floor of e under the read lock. **/
+    @Override
+    public E floor(E e) {
+        long stamp = lock.readLock();
+        try {
+            return tree.floor(e);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Returns the ceiling of e under the read lock. **/
+    @Override
+    public E ceiling(E e) {
+        long stamp = lock.readLock();
+        try {
+            return tree.ceiling(e);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Returns the least element greater than e under the read lock. **/
+    @Override
+    public E higher(E e) {
+        long stamp = lock.readLock();
+        try {
+            return tree.higher(e);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Returns the greatest element less than e under the read lock. **/
+    @Override
+    public E lower(E e) {
+        long stamp = lock.readLock();
+        try {
+            return tree.lower(e);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns a string representation of the tree.
+     * @return a string representation of the tree.
+     */
+    @Override
+    public String toString() {
+        long stamp = lock.readLock();
+        try {
+            return tree.toString();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+} //end ConcurrentBST_RB class
@@ -0,0 +1,119 @@
+import java.nio.ByteBuffer;
+
+/**
+ * FixedKeyCodec interface that stores keys of one fixed width in a ByteBuffer
+ * and compares a key with a stored key without decoding it. Used by the
+ * red-black trees that keep their nodes outside the Java heap.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+public interface FixedKeyCodec<E extends Comparable <? super E>> {
+
+    /** Codec for Integer keys, 4 bytes each. **/
+    public static final FixedKeyCodec<Integer> INT = new FixedKeyCodec<Integer>() {
+        public int width() {
+            return Integer.BYTES;
+        }
+        public void write(ByteBuffer buf, int offset, Integer key) {
+            buf.putInt(offset, key);
+        }
+        public Integer read(ByteBuffer buf, int offset) {
+            return buf.getInt(offset);
+        }
+        public int compare(Integer key, ByteBuffer buf, int offset) {
+            return Integer.compare(key, buf.getInt(offset));
+        }
+    };
+
+    /** Codec for Long keys, 8 bytes each. **/
+    public static final FixedKeyCodec<Long> LONG = new FixedKeyCodec<Long>() {
+        public int width() {
+            return Long.BYTES;
+        }
+        public void write(ByteBuffer buf, int offset, Long key) {
+            buf.putLong(offset, key);
+        }
+        public Long read(ByteBuffer buf, int offset) {
+            return buf.getLong(offset);
+        }
+        public int compare(Long key, ByteBuffer buf, int offset) {
+            return Long.compare(key, buf.getLong(offset));
+        }
+    };
+
+    /**
+     * Returns a codec for byte-string keys of exactly the specified width.
+     * Keys are ByteBuffers whose remaining bytes are the key, ordered like
+     * ByteBuffer.compareTo(); decoded keys are read-only heap buffers.
+     * @param width - the number of bytes in every key
+     * @return a codec for fixed-width byte-string keys
+     * @throws IllegalArgumentException - if width is not positive
+     */
+    public static FixedKeyCodec<ByteBuffer> bytes(final int width) {
+        if (width <= 0)
+            throw new IllegalArgumentException();
+        return new FixedKeyCodec<ByteBuffer>() {
+            public int width() {
+                return width;
+            }
+            public void write(ByteBuffer buf, int offset, ByteBuffer key) {
+                if (key.remaining() != width)
+                    throw new IllegalArgumentException();
+                for (int i = 0; i < width; i++) {
+                    buf.put(offset + i, key.get(key.position() + i));
+                }
+            }
+            public ByteBuffer read(ByteBuffer buf, int offset) {
+                byte[] key = new byte[width];
+                for (int i = 0; i < width; i++) {
+                    key[i] = buf.get(offset + i);
+                }
+                return ByteBuffer.wrap(key).asReadOnlyBuffer();
+            }
+            public int compare(ByteBuffer key, ByteBuffer buf, int offset) {
+                if (key.remaining() != width)
+                    throw new IllegalArgumentException();
+                for (int i = 0; i < width; i++) {
+                    int cmp = Byte.compare(key.get(key.position() + i),
+                        buf.get(offset + i));
+                    if (cmp != 0)
+                        return cmp;
+                }
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Returns the number of bytes every encoded key occupies.
+     * @return the width of an encoded key in bytes
+     */
+    public int width();
+
+    /**
+     * Encode a key into the buffer at an absolute offset.
+     * @param buf - the buffer to write into
+     * @param offset - the absolute offset of the key's first byte
+     * @param key - the key to encode
+     */
+    public void write(ByteBuffer buf, int offset, E key);
+
+    /**
+     * Decode the key stored in the buffer at an absolute offset.
+     * @param buf - the buffer to read from
+     * @param offset - the absolute offset of the key's first byte
+     * @return the decoded key
+     */
+    public E read(ByteBuffer buf, int offset);
+
+    /**
+     * Compare a key with the key stored at an absolute offset, consistently
+     * with the keys' natural ordering.
+     * @param key - the key to compare
+     * @param buf - the buffer holding the stored key
+     * @param offset - the absolute offset of the stored key's first byte
+     * @return a negative integer, zero, or a positive integer as the key is
+     * less than, equal to, or greater than the stored key
+     */
+    public int compare(E key, ByteBuffer buf, int offset);
+}
@@ -0,0 +1,574 @@
+import java.util.*;
+
+/**
+ * IntRBTree class that implements a Red-Black Balance BST Tree specialized for
+ * primitive int keys. Keys are stored unboxed in the nodes and compared with
+ * the primitive operators, so add(), contains(), remove() and iteration never
+ * box. Use asBST() to access the tree through the BST_Interface interface.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+public class IntRBTree {
+
+    private Node root;
+    private int size;
+
+    /** Inner RBTree Node class **/
+    private static class Node {
+        private int key; //the key in the Node
+        private Node left; //left child pointer
+        private Node right; //right child pointer
+        private Node parent; //parent pointer
+        private boolean red; //true: red; false: black
+
+        /**
+         * Construct a node with specified key and color
+         * @param key - the key of the node
+         * @param red - true if the node is red, false if black
+         */
+        private Node(int key, boolean red){
+            this.key = key;
+            this.red = red;
+        }
+    }
+
+    /**
+     * Constructs a new, empty int search tree, sorted in ascending order.
+     */
+    public IntRBTree() {
+        //root default: null
+        //size default: 0
+    }
+
+    /**
+     * Adds the specified key to this search tree if it is not already present.
+     * @param key - key to be added to this tree
+     * @return true if this tree did not already contain the specified key
+     */
+    public boolean add(int key) {
+        //single descent: duplicate check and insertion point in one pass
+        Node par = null;
+        Node cur = root;
+        boolean isLeftChild = false;
+        while (cur != null) {
+            if (key == cur.key) return false;
+            par = cur;
+            isLeftChild = (key < cur.key);
+            cur = isLeftChild ? cur.left : cur.right;
+        }
+        Node newNode = new Node(key, true);
+        if (par == null)
+            root = newNode;
+        else
+            rbSetChild(par, isLeftChild, newNode);
+        rbBalance(newNode); //rebalance after inserting the new node
+        size ++;
+        return true;
+    }
+
+    /**
+     * Removes all of the keys from this search tree.
+     */
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    /**
+     * Returns true if this search tree contains the specified key
+     * @param key - key to be checked for containment in this tree
+     * @return true if this tree contains the specified key
+     */
+    public boolean contains(int key) {
+        return (BSTSearch(key) != null);
+    }
+
+    /**
+     * Returns the first (lowest) key currently in this search tree.
+     * @return the first (lowest) key currently in this tree
+     * @throws NoSuchElementException - if this tree is empty
+     */
+    public int first() {
+        if (isEmpty())
+            throw new NoSuchElementException();
+        Node cur = root;
+        while (cur.left != null) {
+            cur = cur.left;
+        }
+        return cur.key;
+    }
+
+    /**
+     * Returns the last (highest) key currently in this search tree.
+     * @return the last (highest) key currently in this tree
+     * @throws NoSuchElementException - if this tree is empty
+     */
+    public int last() {
+        if (isEmpty())
+            throw new NoSuchElementException();
+        Node cur = root;
+        while (cur.right != null) {
+            cur = cur.right;
+        }
+        return cur.key;
+    }
+
+    /**
+     * Returns true if this search tree contains no keys.
+     * @return true if this tree contains no keys
+     */
+    public boolean isEmpty() {
+        return (root == null);
+    }
+
+    /**
+     * Returns a primitive iterator over the keys in this search tree in
+     * ascending order.
+     * @return an iterator over the keys in this tree in ascending order
+     */
+    public PrimitiveIterator.OfInt iterator() {
+        return new IntRBTreeIterator();
+    }
+
+    /**
+     * Removes the specified key from this search tree if it is present.
+     * @param key - key to be removed from this tree, if present
+     * @return true if this tree contained the specified key
+     */
+    public boolean remove(int key) {
+        Node node = BSTSearch(key);
+        if (node == null) return false; //can't find the key
+        rbRemoveNode(node);
+        size --;
+        return true;
+    }
+
+    /**
+     * Returns the number of keys in this search tree (its cardinality)
+     * @return the number of keys in this search tree (its cardinality)
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the height of the search tree. An empty tree returns 0, a tree
+     * with one key returns a height of 1.
+     * @return the height of the search tree
+     */
+    public int height() {
+        return heightRecur(root);
+    }
+
+    /**
+     * Returns the number of children of the Node that holds the key.
+     * @param key - the key of the node
+     * @return the number of children of the node that holds the key
+     * @throws NoSuchElementException If key is not found in the tree
+     */
+    public int numChildren(int key) {
+        Node node = BSTSearch(key);
+        if (node == null) //key not found
+            throw new NoSuchElementException();
+        return numNodes(node) - 1;
+    }
+
+    /**
+     * Returns a view of this tree through the BST_Interface interface. The
+     * view boxes keys at its boundary only and reads and writes this tree.
+     * @return a BST_Interface view backed by this tree
+     */
+    public BST_Interface<Integer> asBST() {
+        return new BSTView();
+    }
+
+    /**
+     * Returns a string representation of the tree.
+     * @return a string representation of the tree.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        PrimitiveIterator.OfInt iter = iterator();
+        while (iter.hasNext()) {
+            sb.append(iter.nextInt());
+            if (iter.hasNext())
+                sb.append(", ");
+        }
+        return sb.append(']').toString();
+    }
+
+    /************** Private Helper Methods **********/
+
+    /**
+     * Return the number of nodes (including all children and itself) from a
+     * specified node. Helper for numChildren().
+     * @param node - the starting node to calculate number of nodes
+     * @return the number of nodes from a specified node
+     */
+    private int numNodes(Node node) {
+        if (node == null)
+            return 0;
+        return (numNodes(node.left) + numNodes(node.right) + 1);
+    }
+
+    /**
+     * Return the height of the tree from the specified node. Helper for
+     * height().
+     * @param node - the starting node to calculate the height from
+     * @return the number of nodes from the node to its farthest leaf
+     */
+    private int heightRecur(Node node) {
+        if (node == null)
+            return 0;
+        return 1 + Math.max(heightRecur(node.left), heightRecur(node.right));
+    }
+
+    /**
+     * Return the node with matching key, <tt>null</tt> if cannot found.
+     * Helper for contains(), remove() and numChildren().
+     * @param key - the key to search
+     * @return the node with matching key
+     */
+    private Node BSTSearch(int key) {
+        Node cur = root;
+        while (cur != null && cur.key != key) {
+            cur = (key < cur.key) ? cur.left : cur.right;
+        }
+        return cur;
+    }
+
+    /**
+     * Set the child of a parent to a specified child, updating the child's
+     * parent pointer.
+     * @param parent - the parent node
+     * @param isLeftChild - true if intend to set left child, false if right child
+     * @param child - the child node to be set
+     */
+    private void rbSetChild(Node parent, boolean isLeftChild, Node child) {
+        if (isLeftChild)
+            parent.left = child;
+        else
+            parent.right = child;
+        if (child != null)
+            child.parent = parent;
+    }
+
+    /**
+     * Replace the current child of a parent with another new child, or the
+     * root if the current child has no parent.
+     * @param parent - the parent node, <tt>null</tt> if curChild is the root
+     * @param curChild - the current child
+     * @param newChild - the new child to replace the current child
+     */
+    private void rbReplaceChild(Node parent, Node curChild, Node newChild) {
+        if (parent == null) {
+            root = newChild;
+            if (newChild != null)
+                newChild.parent = null;
+        } else {
+            rbSetChild(parent, parent.left == curChild, newChild);
+        }
+    }
+
+    /**
+     * Rotate left at the specified node.
+     * @param node - the node at which the rotation is performed
+     */
+    private void rbRotateLeft(Node node) {
+        Node rightChild = node.right;
+        rbReplaceChild(node.parent, node, rightChild);
+        rbSetChild(node, false, rightChild.left);
+        rbSetChild(rightChild, true, node);
+    }
+
+    /**
+     * Rotate right at the specified node.
+     * @param node - the node at which the rotation is performed
+     */
+    private void rbRotateRight(Node node) {
+        Node leftChild = node.left;
+        rbReplaceChild(node.parent, node, leftChild);
+        rbSetChild(node, true, leftChild.right);
+        rbSetChild(leftChild, false, node);
+    }
+
+    /**
+     * Rebalance to maintain the red black balance tree after insertion. Same
+     * cases as BST_RB.rbBalance().
+     * @param node - the current node to be rebalanced
+     */
+    private void rbBalance(Node node) {
+        while (true) {
+            Node par = node.parent;
+            //Case1: if node is root
+            if (par == null) {
+                node.red = false;
+                return;
+            }
+            //Case2: if node's parent is black
+            if (!par.red) return;
+            Node grandparent = par.parent;
+            Node uncle = (grandparent.left == par) ? grandparent.right
+                : grandparent.left;
+            //Case3: if parent and uncle are both red
+            if (uncle != null && uncle.red) {
+                par.red = false;
+                uncle.red = false;
+                grandparent.red = true;
+                node = grandparent; //rebalance grandparent
+                continue;
+            }
+            //Case4: if parent is red but uncle is black
+            if (node == par.right && par == grandparent.left) {
+                rbRotateLeft(par);
+                node = par;
+                par = node.parent;
+            } else if (node == par.left && par == grandparent.right) {
+                rbRotateRight(par);
+                node = par;
+                par = node.parent;
+            }
+            par.red = false;
+            grandparent.red = true;
+            if (node == par.left)
+                rbRotateRight(grandparent);
+            else
+                rbRotateLeft(grandparent);
+            return;
+        }
+    }
+
+    /**
+     * Remove a node of a RB tree that will maintain RBT property. A node with
+     * two children takes its predecessor's key and the predecessor is removed.
+     * @param node - the node to be removed
+     */
+    private void rbRemoveNode(Node node) {
+        if (node.left != null && node.right != null) {
+            Node pred = node.left;
+            while (pred.right != null) {
+                pred = pred.right;
+            }
+            node.key = pred.key;
+            node = pred;
+        }
+        //if the node is black, restructure the tree to prepare for removal
+        if (!node.red)
+            rbPrepForRemoval(node);
+        rbReplaceChild(node.parent, node,
+            (node.left != null) ? node.left : node.right);
+    }
+
+    /**
+     * Determine if the node is non-null and red.
+     * @param node - the node to be determined whether it's red
+     * @return true if the node is non-null and red, false otherwise
+     */
+    private boolean rbNonNullAndRed(Node node) {
+        return (node != null && node.red);
+    }
+
+    /**
+     * Restructure the tree (prepare for removal of black node) to maintain the
+     * RBT black-path-length property. Same cases as BST_RB.rbPrepForRemoval().
+     * @param node - the node to be removed
+     */
+    private void rbPrepForRemoval(Node node) {
+        while (true) {
+            //Case1: node is red or node is the root
+            if (node.red || node.parent == null)
+                return;
+            Node par = node.parent;
+            Node sibling = (node == par.left) ? par.right : par.left;
+            //Case2: sibling is red
+            if (sibling.red) {
+                par.red = true;
+                sibling.red = false;
+                if (node == par.left)
+                    rbRotateLeft(par);
+                else
+                    rbRotateRight(par);
+                sibling = (node == par.left) ? par.right : par.left;
+            }
+            boolean bothBlack = !rbNonNullAndRed(sibling.left)
+                && !rbNonNullAndRed(sibling.right);
+            //Case3: parent is black and both of sibling's children are black
+            if (!par.red && bothBlack) {
+                sibling.red = true;
+                node = par; //prepare the parent
+                continue;
+            }
+            //Case4: parent is red and both of sibling's children are black
+            if (par.red && bothBlack) {
+                par.red = false;
+                sibling.red = true;
+                return;
+            }
+            //Case5: sibling's left child is red, right child is black, and
+            //node is left child
+            if (rbNonNullAndRed(sibling.left) && !rbNonNullAndRed(sibling.right)
+                && node == par.left) {
+                sibling.red = true;
+                sibling.left.red = false;
+                rbRotateRight(sibling);
+                sibling = par.right;
+            }
+            //Case6: sibling's left child is black, right child is red, and
+            //node is right child
+            else if (!rbNonNullAndRed(sibling.left)
+                && rbNonNullAndRed(sibling.right) && node == par.right) {
+                sibling.red = true;
+                sibling.right.red = false;
+                rbRotateLeft(sibling);
+                sibling = par.left;
+            }
+            sibling.red = par.red;
+            par.red = false;
+            if (node == par.left) {
+                sibling.right.red = false;
+                rbRotateLeft(par);
+            } else {
+                sibling.left.red = false;
+                rbRotateRight(par);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Inner primitive iterator class for this tree. Iterates through the tree
+     * in order by following parent pointers, without any allocation.
+     */
+    private class IntRBTreeIterator implements PrimitiveIterator.OfInt {
+
+        private Node next; //the node whose key a call to nextInt() will return
+
+        /**
+         * Construct an iterator positioned at the smallest key.
+         */
+        private IntRBTreeIterator() {
+            next = root;
+            if (next != null) {
+                while (next.left != null) {
+                    next = next.left;
+                }
+            }
+        }
+
+        /**
+         * Returns true if the iteration has more keys
+         * @return true if the iteration has more keys
+         */
+        public boolean hasNext() {
+            return (next != null);
+        }
+
+        /**
+         * Returns the next key in the iteration without boxing.
+         * @return the next key in the iteration
+         * @throws NoSuchElementException - if the iteration has no more keys
+         */
+        public int nextInt() {
+            if (next == null)
+                throw new NoSuchElementException();
+            int key = next.key;
+            //advance to the successor
+            if (next.right != null) {
+                next = next.right;
+                while (next.left != null) {
+                    next = next.left;
+                }
+            } else {
+                Node child = next;
+                next = next.parent;
+                while (next != null && child == next.right) {
+                    child = next;
+                    next = next.parent;
+                }
+            }
+            return key;
+        }
+    } //end iterator class
+
+    /**
+     * Inner adapter class that exposes this tree as a BST_Interface of boxed
+     * keys for existing callers.
+     */
+    private class BSTView implements BST_Interface<Integer> {
+
+        /** Adds the key unboxed; see IntRBTree.add(). **/
+        public boolean add(Integer e) {
+            return IntRBTree.this.add(e.intValue());
+        }
+
+        /** Adds every key of the collection unboxed. **/
+        public boolean addAll(Collection<? extends Integer> c) {
+            boolean hasAdded = false;
+            for (Integer e : c) {
+                if (IntRBTree.this.add(e.intValue()))
+                    hasAdded = true;
+            }
+            return hasAdded;
+        }
+
+        /** Removes all of the keys from the backing tree. **/
+        public void clear() {
+            IntRBTree.this.clear();
+        }
+
+        /** Checks the key unboxed; see IntRBTree.contains(). **/
+        public boolean contains(Integer o) {
+            return IntRBTree.this.contains(o.intValue());
+        }
+
+        /** Returns the boxed first (lowest) key. **/
+        public Integer first() {
+            return IntRBTree.this.first();
+        }
+
+        /** Returns true if the backing tree has no keys. **/
+        public boolean isEmpty() {
+            return IntRBTree.this.isEmpty();
+        }
+
+        /** Returns the primitive iterator, which boxes only through next(). **/
+        public Iterator<Integer> iterator() {
+            return IntRBTree.this.iterator();
+        }
+
+        /** Returns the boxed last (highest) key. **/
+        public Integer last() {
+            return IntRBTree.this.last();
+        }
+
+        /** Removes the key unboxed; see IntRBTree.remove(). **/
+        public boolean remove(Integer o) {
+            return IntRBTree.this.remove(o.intValue());
+        }
+
+        /** Returns the number of keys in the backing tree. **/
+        public int size() {
+            return IntRBTree.this.size();
+        }
+
+        /** Returns the height of the backing tree. **/
+        public int height() {
+            return IntRBTree.this.height();
+        }
+
+        /** Returns the number of children of the node holding target. **/
+        public int numChildren(Integer target) {
+            if (target == null)
+                throw new IllegalArgumentException();
+            return IntRBTree.this.numChildren(target.intValue());
+        }
+
+        /** Returns a string representation of the backing tree. **/
+        @Override
+        public String toString() {
+            return IntRBTree.this.toString();
+        }
+    } //end adapter class
+
+} //end IntRBTree class
@@ -0,0 +1,568 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * JournaledBST_RB class that makes the mutations of a BST_RB durable with a
+ * write-ahead log, and implements the BST_Interface interface. Every add,
+ * remove and clear that changes the tree appends a checksummed record to the
+ * log; the call returns once its record is on the storage device. Records of
+ * concurrent callers are written and synced together (group commit): a
+ * background thread syncs whatever has accumulated when the oldest pending
+ * record has waited maxDelayMicros, or as soon as maxBatchBytes are pending.
+ *
+ * On startup the last snapshot (see BST_RBSnapshot) is loaded and the log is
+ * replayed over it; a torn record at the end of the log is cut off. Once the
+ * log grows past compactBytes, checkpoint() writes a new snapshot and empties
+ * the log, so the log never grows without bound.
+ *
+ * A mutator changes the in-memory tree before its record is synced, but no
+ * read returns a change that is not yet durable: a reader holds the tree's
+ * lock, so no new change comes in, and waits for the records already
+ * appended to be synced. Reads may therefore wait up to maxDelayMicros while
+ * writes are pending. If the log cannot be written, the failed change stays
+ * in memory and every later call throws UncheckedIOException instead.
+ *
+ * All methods are thread-safe. As with Collections.synchronizedSet, callers
+ * must synchronize on the tree while iterating over it.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+public class JournaledBST_RB<E extends Comparable <? super E>>
+    implements BST_Interface<E>, AutoCloseable {
+
+    private static final String SNAPSHOT_FILE = "tree.snapshot";
+    private static final String LOG_FILE = "tree.log";
+
+    //record types; a record is type, key length, key, then a CRC32 of those
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+    private static final int RECORD_OVERHEAD = 1 + 2 * Integer.BYTES;
+    private static final int REPLAY_BUFFER = 1 << 16; //log read per refill
+
+    private final BST_RB<E> tree; //the tree being journaled
+    private final KeyCodec<E> codec; //encodes the keys in the log
+    private final Path snapshotFile; //the last checkpoint of the tree
+    private final FileChannel log; //the write-ahead log
+    private final long maxDelayNanos; //longest a record waits for its sync
+    private final int maxBatchBytes; //pending bytes that trigger a sync
+    private final long compactBytes; //log size that triggers a checkpoint
+    private final Thread flusher; //the group commit thread
+
+    //group commit state, guarded by pendingLock
+    private final Object pendingLock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 12); //unsynced records
+    private long pendingSince; //System.nanoTime() of the oldest pending record
+    private long appendedSeq; //sequence number of the last appended record
+    private long durableSeq; //sequence number of the last synced record
+    private long logBytes; //size of the log once pending records are synced
+    private IOException failure; //set if the log could not be written
+    private boolean compactRequested; //set once the log passes compactBytes
+    private boolean closed; //true once close() has been called
+
+    /**
+     * Opens a journaled tree in a directory with a 1 ms group commit delay,
+     * 64KB batches and compaction at 64MB of log.
+     * @param directory - the directory holding the snapshot and the log
+     * @param codec - the codec that encodes the keys
+     * @throws IOException - if the snapshot or the log cannot be read
+     */
+    public JournaledBST_RB(Path directory, KeyCodec<E> codec) throws IOException {
+        this(directory, codec, 1000, 1 << 16, 1L << 26);
+    }
+
+    /**
+     * Opens a journaled tree in a directory, loading the last snapshot and
+     * replaying the log over it.
+     * @param directory - the directory holding the snapshot and the log
+     * @param codec - the codec that encodes the keys
+     * @param maxDelayMicros - the longest a record waits for other records
+     * to share its sync, in microseconds; 0 syncs as soon as possible
+     * @param maxBatchBytes - the number of pending bytes that start a sync
+     * without waiting for the delay
+     * @param compactBytes - the size of the log that triggers a checkpoint
+     * @throws IOException - if the snapshot or the log cannot be read
+     * @throws IllegalArgumentException - if a bound is negative or zero
+     */
+    public JournaledBST_RB(Path directory, KeyCodec<E> codec,
+        long maxDelayMicros, int maxBatchBytes, long compactBytes)
+        throws IOException {
+        if (directory == null || codec == null)
+            throw new NullPointerException();
+        if (maxDelayMicros < 0 || maxBatchBytes <= 0 || compactBytes <= 0)
+            throw new IllegalArgumentException();
+        this.codec = codec;
+        this.maxDelayNanos = maxDelayMicros * 1000;
+        this.maxBatchBytes = maxBatchBytes;
+        this.compactBytes = compactBytes;
+        Files.createDirectories(directory);
+        snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        tree = Files.exists(snapshotFile)
+            ? BST_RBSnapshot.load(snapshotFile, codec) : new BST_RB<E>();
+        log = FileChannel.open(directory.resolve(LOG_FILE),
+            StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        try {
+            replay();
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+        flusher = new Thread(this::flushLoop, "JournaledBST_RB-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Adds the specified element to this tree if it is not already present,
+     * returning once the change is durable.
+     * @param e - element to be added to this tree
+     * @return true if this tree did not already contain the specified element
+     * @throws NullPointerException - if the specified element is null
+     * @throws UncheckedIOException - if the log cannot be written
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public boolean add(E e) {
+        long seq;
+        boolean changed;
+        synchronized (this) {
+            checkWritable();
+            changed = tree.add(e);
+            seq = changed ? append(ADD, e) : lastAppended();
+        }
+        awaitDurable(seq);
+        maybeCompact();
+        return changed;
+    }
+
+    /**
+     * Add all of the elements in the specified collection to this tree,
+     * returning once every change is durable. The changes share syncs.
+     * @param  c - collection containing elements to be added to this tree
+     * @return true if this tree changed as a result of the call
+     * @throws NullPointerException - if the specified collection is null or if
+     * any element is null
+     * @throws UncheckedIOException - if the log cannot be written
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public boolean addAll(Collection<? extends E> c) {
+        if (c == null)
+            throw new NullPointerException();
+        long seq;
+        boolean hasAdded = false;
+        synchronized (this) {
+            checkWritable();
+            for (E e : c) {
+                if (tree.add(e)) {
+                    append(ADD, e);
+                    hasAdded = true;
+                }
+            }
+            seq = lastAppended();
+        }
+        awaitDurable(seq);
+        maybeCompact();
+        return hasAdded;
+    }
+
+    /**
+     * Removes all of the elements from this tree, returning once the change is
+     * durable.
+     * @throws UncheckedIOException - if the log cannot be written
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public void clear() {
+        long seq;
+        synchronized (this) {
+            checkWritable();
+            tree.clear();
+            seq = append(CLEAR, null);
+        }
+        awaitDurable(seq);
+        maybeCompact();
+    }
+
+    /**
+     * Removes the specified element from this tree if it is present,
+     * returning once the change is durable.
+     * @param o - object to be removed from this tree, if present
+     * @return true if this tree contained the specified element
+     * @throws NullPointerException - if the specified element is null
+     * @throws UncheckedIOException - if the log cannot be written
+     * @throws IllegalStateException - if this tree is closed
+     */
+    public boolean remove(E o) {
+        long seq;
+        boolean changed;
+        synchronized (this) {
+            checkWritable();
+            changed = tree.remove(o);
+            seq = changed ? append(REMOVE, o) : lastAppended();
+        }
+        awaitDurable(seq);
+        maybeCompact();
+        return changed;
+    }
+
+    /** Returns true if this tree contains the specified element. **/
+    public synchronized boolean contains(E o) {
+        awaitApplied();
+        return tree.contains(o);
+    }
+
+    /** Returns the first (lowest) element currently in this tree. **/
+    public synchronized E first() {
+        awaitApplied();
+        return tree.first();
+    }
+
+    /** Returns true if this tree contains no elements. **/
+    public synchronized boolean isEmpty() {
+        awaitApplied();
+        return tree.isEmpty();
+    }
+
+    /**
+     * Returns an iterator over the elements in this tree in ascending order.
+     * Callers must synchronize on this tree while they iterate.
+     * @return an iterator over the elements in this tree in ascending order
+     */
+    public synchronized Iterator<E> iterator() {
+        awaitApplied();
+        return tree.iterator();
+    }
+
+    /** Returns the last (highest) element currently in this tree. **/
+    public synchronized E last() {
+        awaitApplied();
+        return tree.last();
+    }
+
+    /** Returns the number of elements in this tree. **/
+    public synchronized int size() {
+        awaitApplied();
+        return tree.size();
+    }
+
+    /** Returns the height of this tree. **/
+    public synchronized int height() {
+        awaitApplied();
+        return tree.height();
+    }
+
+    /** Returns the number of children of the node that references target. **/
+    public synchronized int numChildren(E target) {
+        awaitApplied();
+        return tree.numChildren(target);
+    }
+
+    /**
+     * Returns a string representation of the tree.
+     * @return a string representation of the tree.
+     */
+    @Override
+    public synchronized String toString() {
+        awaitApplied();
+        return tree.toString();
+    }
+
+    /**
+     * Writes a snapshot of this tree and empties the log. Called by the
+     * mutators once the log passes compactBytes; mutations wait meanwhile.
+     * @throws UncheckedIOException - if the snapshot or the log cannot be
+     * written
+     */
+    public synchronized void checkpoint() {
+        awaitApplied(); //the flusher is idle from here on
+        try {
+            BST_RBSnapshot.save(tree, snapshotFile, codec);
+            //a crash before the truncation replays the log over the new
+            //snapshot, which ends in the same state
+            log.truncate(0);
+            log.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        synchronized (pendingLock) {
+            logBytes = 0;
+        }
+    }
+
+    /**
+     * Syncs every pending record, stops the group commit thread and closes
+     * the log. The tree must not be changed afterwards.
+     * @throws IOException - if the log cannot be written or closed
+     */
+    public void close() throws IOException {
+        //take the tree's lock too, so no mutator is between its checkWritable()
+        //and its append()
+        synchronized (this) {
+            synchronized (pendingLock) {
+                if (closed)
+                    return;
+                closed = true;
+                pendingLock.notifyAll();
+            }
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+        synchronized (pendingLock) {
+            if (failure != null)
+                throw failure;
+        }
+    }
+
+    /************** Private Helper Methods **********/
+
+    /**
+     * Append a record to the pending batch, waking the group commit thread.
+     * Called while holding the tree's lock, so records are in mutation order.
+     * @param type - the record type
+     * @param key - the key of the record, <tt>null</tt> for CLEAR
+     * @return the sequence number of the record
+     */
+    private long append(byte type, E key) {
+        byte[] bytes = (key == null) ? new byte[0] : codec.encode(key);
+        synchronized (pendingLock) {
+            if (closed)
+                throw new IllegalStateException();
+            if (pending.remaining() < RECORD_OVERHEAD + bytes.length) {
+                int capacity = Math.max(2 * pending.capacity(),
+                    pending.position() + RECORD_OVERHEAD + bytes.length);
+                pending.flip();
+                pending = ByteBuffer.allocate(capacity).put(pending);
+            }
+            int start = pending.position();
+            pending.put(type).putInt(bytes.length).put(bytes);
+            CRC32 crc = new CRC32();
+            ByteBuffer record = pending.duplicate();
+            record.position(start).limit(pending.position());
+            crc.update(record);
+            pending.putInt((int) crc.getValue());
+            if (start == 0)
+                pendingSince = System.nanoTime();
+            logBytes += pending.position() - start;
+            //wake the group commit thread when a batch starts or fills up
+            if (start == 0 || pending.position() >= maxBatchBytes)
+                pendingLock.notifyAll();
+            appendedSeq ++;
+            if (logBytes > compactBytes)
+                compactRequested = true;
+            return appendedSeq;
+        }
+    }
+
+    /**
+     * Refuse a change once the tree is closed or the log has failed, before
+     * the change reaches the tree. Called while holding the tree's lock.
+     * @throws IllegalStateException - if the tree is closed
+     * @throws UncheckedIOException - if the log could not be written
+     */
+    private void checkWritable() {
+        synchronized (pendingLock) {
+            if (closed)
+                throw new IllegalStateException();
+            if (failure != null)
+                throw new UncheckedIOException(failure);
+        }
+    }
+
+    /**
+     * Return the sequence number of the last appended record.
+     * @return the sequence number of the last appended record
+     */
+    private long lastAppended() {
+        synchronized (pendingLock) {
+            return appendedSeq;
+        }
+    }
+
+    /**
+     * Wait until the record with the given sequence number is synced.
+     * @param seq - the sequence number to wait for
+     * @throws UncheckedIOException - if the log cannot be written
+     */
+    private void awaitDurable(long seq) {
+        synchronized (pendingLock) {
+            boolean interrupted = false;
+            while (durableSeq < seq && failure == null) {
+                try {
+                    pendingLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true; //durability is not optional
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+            if (failure != null)
+                throw new UncheckedIOException(failure);
+        }
+    }
+
+    /**
+     * Wait until every change applied to the tree is synced, so that a read
+     * sees no change a crash could undo. Called while holding the tree's
+     * lock, which keeps new changes out meanwhile.
+     * @throws UncheckedIOException - if the log cannot be written
+     */
+    private void awaitApplied() {
+        awaitDurable(lastAppended());
+    }
+
+    /**
+     * Checkpoint if the log has grown past compactBytes. Called by the
+     * mutators after their change is durable.
+     * @throws UncheckedIOException - if the snapshot cannot be written
+     */
+    private void maybeCompact() {
+        synchronized (pendingLock) {
+            if (!compactRequested)
+                return;
+            compactRequested = false;
+        }
+        checkpoint();
+    }
+
+    /**
+     * Body of the group commit thread: wait for records, give other callers
+     * up to maxDelayNanos to add theirs unless maxBatchBytes are pending,
+     * then write and sync the whole batch and wake every waiting caller.
+     */
+    private void flushLoop() {
+        ByteBuffer batch = ByteBuffer.allocate(pending.capacity());
+        while (true) {
+            long target;
+            synchronized (pendingLock) {
+                try {
+                    while (pending.position() == 0 && !closed)
+                        pendingLock.wait();
+                    while (!closed && pending.position() < maxBatchBytes) {
+                        long wait = pendingSince + maxDelayNanos - System.nanoTime();
+                        if (wait <= 0)
+                            break;
+                        pendingLock.wait(wait / 1000000, (int) (wait % 1000000));
+                    }
+                } catch (InterruptedException e) {
+                    //flush what we have and keep going
+                }
+                if (pending.position() == 0 && closed)
+                    return;
+                //swap the buffers so callers keep appending during the sync
+                ByteBuffer full = pending;
+                batch.clear();
+                pending = batch;
+                batch = full;
+                target = appendedSeq;
+            }
+            IOException error = null;
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    log.write(batch);
+                }
+                log.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+            synchronized (pendingLock) {
+                if (error != null) {
+                    failure = error;
+                    pendingLock.notifyAll();
+                    return;
+                }
+                durableSeq = target;
+                pendingLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Replay the records of the log over the loaded snapshot, cutting off a
+     * torn or corrupt record at the end. The log streams through a buffer of
+     * REPLAY_BUFFER bytes, grown only for a larger record, so a log of any
+     * size replays. Helper for the constructor.
+     * @throws IOException - if the log cannot be read
+     */
+    private void replay() throws IOException {
+        long size = log.size();
+        long good = 0; //end of the last intact record
+        ByteBuffer data = ByteBuffer.allocate(REPLAY_BUFFER);
+        data.flip();
+        log.position(0);
+        CRC32 crc = new CRC32();
+        while (true) {
+            data = fill(data, RECORD_OVERHEAD);
+            if (data.remaining() < RECORD_OVERHEAD)
+                break;
+            int start = data.position();
+            byte type = data.get(start);
+            int length = data.getInt(start + 1);
+            if (length < 0 || length > size - good - RECORD_OVERHEAD)
+                break;
+            data = fill(data, RECORD_OVERHEAD + length);
+            if (data.remaining() < RECORD_OVERHEAD + length)
+                break;
+            start = data.position(); //filling may have moved the record
+            int keyStart = start + 1 + Integer.BYTES;
+            crc.reset();
+            ByteBuffer record = data.duplicate();
+            record.position(start).limit(keyStart + length);
+            crc.update(record);
+            if (data.getInt(keyStart + length) != (int) crc.getValue())
+                break;
+            ByteBuffer key = data.duplicate();
+            key.position(keyStart).limit(keyStart + length);
+            if (type == ADD)
+                tree.add(codec.decode(key, length));
+            else if (type == REMOVE)
+                tree.remove(codec.decode(key, length));
+            else if (type == CLEAR)
+                tree.clear();
+            else
+                break;
+            data.position(keyStart + length + Integer.BYTES);
+            good += RECORD_OVERHEAD + length;
+        }
+        log.truncate(good); //drop a torn tail
+        log.position(good);
+        logBytes = good;
+    }
+
+    /**
+     * Read more of the log into the replay buffer until it holds at least
+     * the given number of unread bytes or the log ends. Helper for replay().
+     * @param data - the replay buffer, ready for reading
+     * @param need - the number of unread bytes wanted
+     * @return the replay buffer, a larger one if need exceeded its capacity,
+     * ready for reading
+     * @throws IOException - if the log cannot be read
+     */
+    private ByteBuffer fill(ByteBuffer data, int need) throws IOException {
+        if (data.remaining() >= need)
+            return data;
+        if (data.capacity() < need) {
+            ByteBuffer larger = ByteBuffer.allocate(
+                Math.max(need, 2 * data.capacity()));
+            data = larger.put(data);
+        } else {
+            data.compact();
+        }
+        while (data.position() < need && log.read(data) >= 0) {
+            //read until the record is in or the log ends
+        }
+        data.flip();
+        return data;
+    }
+
+} //end JournaledBST_RB class
@@ -0,0 +1,65 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * KeyCodec interface that turns keys into bytes and back, for saving trees to
+ * files. Encoded keys may have any length; the file format records it.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+public interface KeyCodec<E> {
+
+    /** Codec for Integer keys, 4 bytes each. **/
+    public static final KeyCodec<Integer> INTEGER = new KeyCodec<Integer>() {
+        public byte[] encode(Integer key) {
+            return ByteBuffer.allocate(Integer.BYTES).putInt(key).array();
+        }
+        public Integer decode(ByteBuffer src, int length) {
+            if (length != Integer.BYTES)
+                throw new IllegalArgumentException("bad key length " + length);
+            return src.getInt();
+        }
+    };
+
+    /** Codec for Long keys, 8 bytes each. **/
+    public static final KeyCodec<Long> LONG = new KeyCodec<Long>() {
+        public byte[] encode(Long key) {
+            return ByteBuffer.allocate(Long.BYTES).putLong(key).array();
+        }
+        public Long decode(ByteBuffer src, int length) {
+            if (length != Long.BYTES)
+                throw new IllegalArgumentException("bad key length " + length);
+            return src.getLong();
+        }
+    };
+
+    /** Codec for String keys, stored as UTF-8. **/
+    public static final KeyCodec<String> STRING = new KeyCodec<String>() {
+        public byte[] encode(String key) {
+            return key.getBytes(StandardCharsets.UTF_8);
+        }
+        public String decode(ByteBuffer src, int length) {
+            byte[] bytes = new byte[length];
+            src.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * Encode a key into bytes.
+     * @param key - the key to encode
+     * @return the encoded key
+     */
+    public byte[] encode(E key);
+
+    /**
+     * Decode a key from the next length bytes of the buffer, advancing its
+     * position past them.
+     * @param src - the buffer positioned at the encoded key
+     * @param length - the number of bytes of the encoded key
+     * @return the decoded key
+     * @throws IllegalArgumentException - if length is not a length this codec
+     * encodes keys to
+     */
+    public E decode(ByteBuffer src, int length);
+}
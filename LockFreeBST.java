@@ -0,0 +1,654 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LockFreeBST class that implements a non-blocking binary search tree, and
+ * implements the BST_Interface interface, after Ellen, Fatourou, Ruppert and
+ * van Breugel, "Non-blocking Binary Search Trees" (PODC 2010). No thread ever
+ * waits for another: any number of writers add and remove concurrently, and
+ * a thread that finds an operation in progress helps it finish instead of
+ * waiting for it.
+ *
+ * The tree is leaf-oriented: elements live in the leaves, and each internal
+ * node holds a routing key and always has two children. An insertion
+ * replaces a leaf with an internal node over the old leaf and the new one; a
+ * removal replaces a leaf's parent with the leaf's sibling. Before changing
+ * a child pointer, a writer flags the internal node above it (and a removal
+ * also marks the node it unlinks) with a compare-and-set of the node's
+ * update field; the flag records the whole operation, so any thread that
+ * meets it can complete it. add(), remove() and contains() are
+ * linearizable. Two sentinel keys, greater than every element, keep the
+ * root and its children permanent.
+ *
+ * The tree is not rebalanced: keys inserted in random order give O(log n)
+ * expected depth, but sorted insertions build a path. Iterators are weakly
+ * consistent: they never throw ConcurrentModificationException, return
+ * elements in ascending order, and reflect some of the changes made after
+ * they were created. size() is exact only when no writer is running.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+public class LockFreeBST<E extends Comparable <? super E>>
+    implements BST_Interface<E> {
+
+    //the states of an internal node's update field
+    private static final int CLEAN = 0; //no operation in progress
+    private static final int IFLAG = 1; //an insertion changes a child
+    private static final int DFLAG = 2; //a removal changes a child
+    private static final int MARK = 3; //a removal unlinks this node
+
+    //the sentinel ranks of a node's key: INF1 < INF2, both above any element
+    private static final int INF1 = 1;
+    private static final int INF2 = 2;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Internal, Node> LEFT =
+        AtomicReferenceFieldUpdater.newUpdater(Internal.class, Node.class,
+            "left");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Internal, Node> RIGHT =
+        AtomicReferenceFieldUpdater.newUpdater(Internal.class, Node.class,
+            "right");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Internal, Update> UPDATE =
+        AtomicReferenceFieldUpdater.newUpdater(Internal.class, Update.class,
+            "update");
+
+    private final Internal<E> root; //the permanent root, keyed INF2
+    private final LongAdder size = new LongAdder(); //the number of elements
+
+    /** A node of the tree: a leaf holding an element or a sentinel, or an
+     *  internal node holding a routing key **/
+    private static class Node<E> {
+        final E key; //the element or routing key, null for a sentinel
+        final int inf; //0 for a real key, INF1 or INF2 for a sentinel
+
+        /**
+         * Construct a node with the specified key.
+         * @param key - the key, null for a sentinel
+         * @param inf - 0 for a real key, INF1 or INF2 for a sentinel
+         */
+        Node(E key, int inf) {
+            this.key = key;
+            this.inf = inf;
+        }
+    }
+
+    /** A leaf, which holds an element or a sentinel **/
+    private static final class Leaf<E> extends Node<E> {
+
+        /**
+         * Construct a leaf with the specified key.
+         * @param key - the key, null for a sentinel
+         * @param inf - 0 for a real key, INF1 or INF2 for a sentinel
+         */
+        Leaf(E key, int inf) {
+            super(key, inf);
+        }
+    }
+
+    /** An internal node, which always has two children **/
+    private static final class Internal<E> extends Node<E> {
+        volatile Node<E> left; //keys less than this key
+        volatile Node<E> right; //keys greater than or equal to this key
+        volatile Update update; //the operation in progress at this node
+
+        /**
+         * Construct a clean internal node with the specified key and children.
+         * @param key - the routing key, null for a sentinel
+         * @param inf - 0 for a real key, INF1 or INF2 for a sentinel
+         * @param left - the left child
+         * @param right - the right child
+         */
+        Internal(E key, int inf, Node<E> left, Node<E> right) {
+            super(key, inf);
+            this.left = left;
+            this.right = right;
+            this.update = new Update(CLEAN, null);
+        }
+    }
+
+    /** The value of an update field: a state and the operation it records.
+     *  Compared by identity, so every flag and mark is a new object **/
+    private static final class Update {
+        final int state; //CLEAN, IFLAG, DFLAG or MARK
+        final Info info; //the operation, null for a new node
+
+        /**
+         * Construct an update field value.
+         * @param state - CLEAN, IFLAG, DFLAG or MARK
+         * @param info - the operation recorded
+         */
+        Update(int state, Info info) {
+            this.state = state;
+            this.info = info;
+        }
+    }
+
+    /** The record of an operation, which lets any thread complete it **/
+    private abstract static class Info {
+    }
+
+    /** The record of an insertion: p's child l becomes newInternal **/
+    private static final class InsertInfo<E> extends Info {
+        final Internal<E> p; //the parent of the replaced leaf
+        final Node<E> l; //the replaced leaf
+        final Internal<E> newInternal; //the node replacing l
+        final Update flag = new Update(IFLAG, this); //p's flag for it
+
+        /**
+         * Record an insertion.
+         * @param p - the parent of the replaced leaf
+         * @param l - the replaced leaf
+         * @param newInternal - the node replacing the leaf
+         */
+        InsertInfo(Internal<E> p, Node<E> l, Internal<E> newInternal) {
+            this.p = p;
+            this.l = l;
+            this.newInternal = newInternal;
+        }
+    }
+
+    /** The record of a removal: gp's child p becomes l's sibling **/
+    private static final class DeleteInfo<E> extends Info {
+        final Internal<E> gp; //the grandparent of the removed leaf
+        final Internal<E> p; //the parent of the removed leaf, unlinked with it
+        final Node<E> l; //the removed leaf
+        final Update pupdate; //p's update field as the removal read it
+        final Update flag = new Update(DFLAG, this); //gp's flag for it
+        final Update mark = new Update(MARK, this); //p's mark for it
+
+        /**
+         * Record a removal.
+         * @param gp - the grandparent of the removed leaf
+         * @param p - the parent of the removed leaf
+         * @param l - the removed leaf
+         * @param pupdate - p's update field as the removal read it
+         */
+        DeleteInfo(Internal<E> gp, Internal<E> p, Node<E> l, Update pupdate) {
+            this.gp = gp;
+            this.p = p;
+            this.l = l;
+            this.pupdate = pupdate;
+        }
+    }
+
+    /** The result of a search: the leaf reached, its parent and grandparent,
+     *  and their update fields as read on the way down **/
+    private static final class Search<E> {
+        Internal<E> gp; //the grandparent of the leaf, null if p is the root
+        Internal<E> p; //the parent of the leaf
+        Leaf<E> l; //the leaf reached
+        Update gpupdate; //gp's update field, read before reading p
+        Update pupdate; //p's update field, read before reading l
+    }
+
+    /**
+     * Constructs a new, empty lock-free search tree, sorted according to the
+     * natural ordering of its elements.
+     */
+    public LockFreeBST() {
+        root = new Internal<E>(null, INF2, new Leaf<E>(null, INF1),
+            new Leaf<E>(null, INF2));
+    }
+
+    /**
+     * Constructs a new lock-free search tree containing the elements in the
+     * specified collection.
+     * @param c - collection whose elements will comprise the new tree
+     * @throws NullPointerException - if the specified collection is null
+     */
+    public LockFreeBST(Collection<? extends E> c) {
+        this();
+        addAll(c);
+    }
+
+    /**
+     * Adds the specified element to this tree if it is not already present.
+     * Lock-free and linearizable.
+     * @param e - element to be added to this tree
+     * @return true if this tree did not already contain the specified element
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in this tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    public boolean add(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        Search<E> s = new Search<E>();
+        Leaf<E> newLeaf = new Leaf<E>(e, 0);
+        while (true) {
+            search(e, s);
+            if (compare(e, 0, s.l) == 0)
+                return false; //already contains such element
+            if (s.pupdate.state != CLEAN) {
+                help(s.pupdate);
+                continue;
+            }
+            //the new internal node takes the larger key, with l's copy and
+            //the new leaf in order beneath it
+            Leaf<E> sibling = new Leaf<E>(s.l.key, s.l.inf);
+            Internal<E> newInternal = (compare(e, 0, s.l) < 0)
+                ? new Internal<E>(sibling.key, sibling.inf, newLeaf, sibling)
+                : new Internal<E>(e, 0, sibling, newLeaf);
+            InsertInfo<E> op = new InsertInfo<E>(s.p, s.l, newInternal);
+            if (UPDATE.compareAndSet(s.p, s.pupdate, op.flag)) {
+                helpInsert(op);
+                size.increment();
+                return true;
+            }
+            help(s.p.update); //someone else changed p first
+        }
+    }
+
+    /**
+     * Adds all of the elements in the specified collection to this tree, one
+     * at a time.
+     * @param c - collection containing elements to be added to this tree
+     * @return true if this tree changed as a result of the call
+     * @throws ClassCastException - if the elements provided cannot be
+     * compared with the elements currently in the tree
+     * @throws NullPointerException - if the specified collection is null or
+     * if any element is null
+     */
+    public boolean addAll(Collection<? extends E> c) {
+        boolean changed = false;
+        for (E e : c) {
+            changed |= add(e);
+        }
+        return changed;
+    }
+
+    /**
+     * Removes all of the elements from this tree, one at a time; elements
+     * added concurrently may remain.
+     */
+    public void clear() {
+        for (Iterator<E> iter = iterator(); iter.hasNext(); ) {
+            remove(iter.next());
+        }
+    }
+
+    /**
+     * Returns true if this tree contains the specified element. Lock-free and
+     * linearizable.
+     * @param o - element to be checked for containment in this tree
+     * @return true if this tree contains the specified element
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in the tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    public boolean contains(E o) {
+        if (o == null)
+            throw new NullPointerException();
+        Node<E> l = root;
+        while (l instanceof Internal) {
+            Internal<E> p = (Internal<E>) l;
+            l = (compare(o, 0, p) < 0) ? p.left : p.right;
+        }
+        return compare(o, 0, l) == 0;
+    }
+
+    /**
+     * Returns the first (lowest) element currently in this tree.
+     * @return the first (lowest) element currently in this tree
+     * @throws NoSuchElementException - if this tree is empty
+     */
+    public E first() {
+        Node<E> l = root;
+        while (l instanceof Internal) {
+            l = ((Internal<E>) l).left;
+        }
+        if (l.inf != 0)
+            throw new NoSuchElementException();
+        return l.key;
+    }
+
+    /**
+     * Returns the last (highest) element currently in this tree.
+     * @return the last (highest) element currently in this tree
+     * @throws NoSuchElementException - if this tree is empty
+     */
+    public E last() {
+        //the elements all lie left of the INF1 leaf, the rightmost leaf of
+        //the root's left subtree: take the rightmost leaf of the last left
+        //subtree passed over on the way down to it
+        Node<E> l = root.left;
+        Node<E> passed = null;
+        while (l instanceof Internal) {
+            Internal<E> p = (Internal<E>) l;
+            passed = p.left;
+            l = p.right;
+        }
+        if (passed == null)
+            throw new NoSuchElementException();
+        while (passed instanceof Internal) {
+            passed = ((Internal<E>) passed).right;
+        }
+        if (passed.inf != 0)
+            throw new NoSuchElementException();
+        return passed.key;
+    }
+
+    /**
+     * Returns true if this tree contains no elements.
+     * @return true if this tree contains no elements
+     */
+    public boolean isEmpty() {
+        //the INF1 leaf is the root's left child exactly when no element is
+        return (root.left instanceof Leaf);
+    }
+
+    /**
+     * Returns a weakly consistent iterator over the elements in this tree in
+     * ascending order. Its remove() removes the last returned element.
+     * @return an iterator over the elements in this tree in ascending order
+     */
+    public Iterator<E> iterator() {
+        return new LockFreeIterator();
+    }
+
+    /**
+     * Removes the specified element from this tree if it is present.
+     * Lock-free and linearizable.
+     * @param o - element to be removed from this tree, if present
+     * @return true if this tree contained the specified element
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in this tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    public boolean remove(E o) {
+        if (o == null)
+            throw new NullPointerException();
+        Search<E> s = new Search<E>();
+        while (true) {
+            search(o, s);
+            if (compare(o, 0, s.l) != 0)
+                return false; //can't find the key
+            if (s.gpupdate.state != CLEAN) {
+                help(s.gpupdate);
+                continue;
+            }
+            if (s.pupdate.state != CLEAN) {
+                help(s.pupdate);
+                continue;
+            }
+            DeleteInfo<E> op = new DeleteInfo<E>(s.gp, s.p, s.l, s.pupdate);
+            if (UPDATE.compareAndSet(s.gp, s.gpupdate, op.flag)) {
+                if (helpDelete(op)) {
+                    size.decrement();
+                    return true;
+                }
+            } else {
+                help(s.gp.update); //someone else changed gp first
+            }
+        }
+    }
+
+    /**
+     * Returns the number of elements in this tree; exact only when no writer
+     * is running.
+     * @return the number of elements in this tree
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, size.sum()));
+    }
+
+    /**
+     * Returns the height of the leaf-oriented tree that holds the elements,
+     * counting leaves and internal nodes but not the sentinels; 0 if empty.
+     * @return the height of the tree
+     */
+    public int height() {
+        Node<E> top = root.left;
+        if (!(top instanceof Internal))
+            return 0;
+        //level-order walk, since an unbalanced tree may be deep
+        List<Node<E>> level = new ArrayList<Node<E>>();
+        level.add(((Internal<E>) top).left);
+        int height = 0;
+        while (!level.isEmpty()) {
+            height ++;
+            List<Node<E>> below = new ArrayList<Node<E>>();
+            for (Node<E> node : level) {
+                if (node instanceof Internal) {
+                    below.add(((Internal<E>) node).left);
+                    below.add(((Internal<E>) node).right);
+                }
+            }
+            level = below;
+        }
+        return height;
+    }
+
+    /**
+     * Returns the number of children of the node that holds target, which is
+     * always a leaf.
+     * @param target - the target element
+     * @return 0
+     * @throws NoSuchElementException If target is not found in the tree
+     * @throws IllegalArgumentException Any other problems, eg.NullPointer,
+     * ClassCastException, ...
+     */
+    public int numChildren(E target) {
+        boolean found;
+        try {
+            found = contains(target);
+        } catch (Exception e) {
+            throw new IllegalArgumentException();
+        }
+        if (!found)
+            throw new NoSuchElementException();
+        return 0;
+    }
+
+    /**
+     * Returns a string representation of the tree.
+     * @return a string representation of the tree.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (Iterator<E> iter = iterator(); iter.hasNext(); ) {
+            sb.append(iter.next());
+            if (iter.hasNext())
+                sb.append(", ");
+        }
+        return sb.append(']').toString();
+    }
+
+    /************** Private Helper Methods **********/
+
+    /**
+     * Compare a key with a node's key; the sentinels are greater than every
+     * element, and INF1 is less than INF2.
+     * @param key - the key, null for a sentinel
+     * @param inf - 0 for a real key, INF1 or INF2 for a sentinel
+     * @param node - the node to compare with
+     * @return a negative, zero or positive value as the key is less than,
+     * equal to or greater than the node's key
+     */
+    private static <E extends Comparable <? super E>> int compare(E key,
+        int inf, Node<E> node) {
+        if (inf != node.inf)
+            return inf - node.inf;
+        return (inf != 0) ? 0 : key.compareTo(node.key);
+    }
+
+    /**
+     * Search down to the leaf where key belongs, recording the leaf, its
+     * parent and grandparent, and their update fields as read before their
+     * children.
+     * @param key - the key to search
+     * @param s - receives the result
+     */
+    private void search(E key, Search<E> s) {
+        Internal<E> gp = null;
+        Internal<E> p = null;
+        Update gpupdate = null;
+        Update pupdate = null;
+        Node<E> l = root;
+        while (l instanceof Internal) {
+            gp = p;
+            p = (Internal<E>) l;
+            gpupdate = pupdate;
+            pupdate = p.update;
+            l = (compare(key, 0, p) < 0) ? p.left : p.right;
+        }
+        s.gp = gp;
+        s.p = p;
+        s.l = (Leaf<E>) l;
+        s.gpupdate = gpupdate;
+        s.pupdate = pupdate;
+    }
+
+    /**
+     * Complete the operation recorded in an update field value.
+     * @param u - the update field value read from some node
+     */
+    @SuppressWarnings("unchecked")
+    private void help(Update u) {
+        if (u.state == IFLAG)
+            helpInsert((InsertInfo<E>) u.info);
+        else if (u.state == MARK)
+            helpMarked((DeleteInfo<E>) u.info);
+        else if (u.state == DFLAG)
+            helpDelete((DeleteInfo<E>) u.info);
+    }
+
+    /**
+     * Complete an insertion whose parent is flagged: swing the child pointer
+     * and unflag the parent.
+     * @param op - the insertion
+     */
+    private void helpInsert(InsertInfo<E> op) {
+        casChild(op.p, op.l, op.newInternal);
+        UPDATE.compareAndSet(op.p, op.flag, new Update(CLEAN, op));
+    }
+
+    /**
+     * Try to complete a removal whose grandparent is flagged: mark the
+     * parent, then unlink it. If another operation holds the parent, help it
+     * and back off by unflagging the grandparent.
+     * @param op - the removal
+     * @return true if the removal took effect
+     */
+    private boolean helpDelete(DeleteInfo<E> op) {
+        UPDATE.compareAndSet(op.p, op.pupdate, op.mark);
+        Update result = op.p.update;
+        if (result == op.mark) {
+            helpMarked(op);
+            return true;
+        }
+        help(result);
+        UPDATE.compareAndSet(op.gp, op.flag, new Update(CLEAN, op));
+        return false;
+    }
+
+    /**
+     * Complete a removal whose parent is marked: replace the parent with the
+     * leaf's sibling and unflag the grandparent.
+     * @param op - the removal
+     */
+    private void helpMarked(DeleteInfo<E> op) {
+        //p is marked, so its children no longer change
+        Node<E> other = (op.p.right == op.l) ? op.p.left : op.p.right;
+        casChild(op.gp, op.p, other);
+        UPDATE.compareAndSet(op.gp, op.flag, new Update(CLEAN, op));
+    }
+
+    /**
+     * Swing the child pointer of a parent from one node to another on the
+     * same side.
+     * @param parent - the parent
+     * @param old - the expected child
+     * @param node - the new child
+     */
+    private static <E extends Comparable <? super E>> void casChild(
+        Internal<E> parent, Node<E> old, Node<E> node) {
+        if (compare(node.key, node.inf, parent) < 0)
+            LEFT.compareAndSet(parent, old, node);
+        else
+            RIGHT.compareAndSet(parent, old, node);
+    }
+
+    /**
+     * Inner iterator class for the lock-free tree: an in-order walk over the
+     * leaves with an explicit stack. Each internal node's key stays between
+     * the keys of its two subtrees forever, so the walk returns ascending
+     * elements even while writers change the tree.
+     */
+    private class LockFreeIterator implements Iterator<E> {
+        private final Deque<Node<E>> stack = new ArrayDeque<Node<E>>();
+        private Leaf<E> nextLeaf; //the next leaf to return, null at the end
+        private E lastReturned; //the element last returned, null if removed
+
+        /**
+         * Construct an iterator positioned at the first element.
+         */
+        private LockFreeIterator() {
+            stack.push(root);
+            advance();
+        }
+
+        /**
+         * Returns true if the iteration has more elements
+         * @return true if the iteration has more elements
+         */
+        public boolean hasNext() {
+            return (nextLeaf != null);
+        }
+
+        /**
+         * Returns the next element in the iteration.
+         * @return the next element in the iteration
+         * @throws NoSuchElementException - if the iteration has no more
+         * elements
+         */
+        public E next() {
+            if (nextLeaf == null)
+                throw new NoSuchElementException();
+            lastReturned = nextLeaf.key;
+            advance();
+            return lastReturned;
+        }
+
+        /**
+         * Removes from the tree the last element returned by next().
+         * @throws IllegalStateException - if next() has not been called, or
+         * remove() has already been called after the last call to next()
+         */
+        public void remove() {
+            if (lastReturned == null)
+                throw new IllegalStateException();
+            LockFreeBST.this.remove(lastReturned);
+            lastReturned = null;
+        }
+
+        /**
+         * Find the next leaf holding an element, descending left children
+         * and stacking the right ones.
+         */
+        private void advance() {
+            nextLeaf = null;
+            while (!stack.isEmpty()) {
+                Node<E> node = stack.pop();
+                while (node instanceof Internal) {
+                    Internal<E> p = (Internal<E>) node;
+                    stack.push(p.right);
+                    node = p.left;
+                }
+                if (node.inf == 0) {
+                    nextLeaf = (Leaf<E>) node;
+                    return;
+                }
+                if (node.inf == INF1) {
+                    stack.clear(); //every element lies left of INF1
+                    return;
+                }
+            }
+        }
+    } //end iterator class
+
+} //end LockFreeBST class
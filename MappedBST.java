@@ -0,0 +1,532 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * MappedBST class that implements a Red-Black Balance BST Tree stored in a
+ * memory-mapped file, for data sets larger than the heap. The file is a header
+ * page followed by fixed-size pages of node slots; a node is named by its
+ * slot number, which is its page number times the slots per page plus its
+ * slot within the page. Reopening a file maps it and reads the header only,
+ * so no tree is rebuilt.
+ *
+ * Changes reach the file when the operating system writes the mapped pages
+ * back; force() is the durability point. Before the first change to a page
+ * after a force(), the page as it was forced is appended to an undo log next
+ * to the file (the file name plus ".undo") and the log is forced, so that a
+ * file reopened after a crash is rolled back to its last force(). That costs
+ * one page write and one sync per page first changed after each force().
+ * A file is locked while it is open, so it cannot be opened twice.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+public class MappedBST<E extends Comparable <? super E>>
+    extends BST_RBIndexed<E> implements AutoCloseable {
+
+    /** Size of a page of the file in bytes. **/
+    public static final int PAGE_SIZE = 4096;
+
+    private static final long MAGIC = 0x4253545f52424d31L; //"BST_RBM1"
+    private static final int REGION_SHIFT = 26; //files are mapped 64MB at a time
+
+    //layout of the header page
+    private static final int H_MAGIC = 0;
+    private static final int H_WIDTH = 8;
+    private static final int H_ROOT = 12;
+    private static final int H_SIZE = 16;
+    private static final int H_USED = 20;
+    private static final int H_FREE = 24;
+    private static final int H_CLEAN = 28;
+    private static final int H_EPOCH = 32; //tags the undo records of a change
+
+    //layout of an undo record: epoch, page number, the page, then a CRC32
+    private static final int U_EPOCH = 0;
+    private static final int U_PAGE = 8;
+    private static final int U_DATA = 12;
+    private static final int U_CRC = U_DATA + PAGE_SIZE;
+    private static final int RECORD = U_CRC + 8;
+
+    //layout of a node slot: three int links, an int of flags, then the key
+    private static final int LEFT = 0;
+    private static final int RIGHT = 4;
+    private static final int PARENT = 8;
+    private static final int FLAGS = 12;
+    private static final int KEY = 16;
+    private static final int RED = 1; //flag bit set if the node is red
+
+    private final FixedKeyCodec<E> codec; //encodes the fixed-width keys
+    private final FileChannel channel; //the file holding the tree
+    private final Path undoFile; //the undo log of the file
+    private final FileChannel undo; //the open undo log
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD); //undo buffer
+    private final BitSet saved = new BitSet(); //pages logged since force()
+    private final int strideShift; //log2 of the bytes per node slot
+    private final MappedByteBuffer header; //the mapped header page
+    private MappedByteBuffer[] regions = new MappedByteBuffer[0]; //node pages
+    private int used; //number of slots ever handed out (high-water mark)
+    private int freeHead = NIL; //first free slot, chained through LEFT
+    private boolean dirty; //true if changed since the last force()
+    private long epoch; //the epoch of the current change, from the header
+    private long forcedEnd; //end of the slots in use at the last force()
+    private long undoEnd; //end of the undo records of the current change
+
+    /**
+     * Opens the tree stored in the specified file, or creates an empty tree
+     * there if the file does not exist or is empty.
+     * @param file - the file holding the tree
+     * @param codec - the codec that stores the keys
+     * @throws IOException - if the file cannot be opened or mapped, is
+     * already open, or holds a tree of a different key width
+     * @throws NullPointerException - if file or codec is null
+     */
+    public MappedBST(Path file, FixedKeyCodec<E> codec) throws IOException {
+        if (file == null || codec == null)
+            throw new NullPointerException();
+        this.codec = codec;
+        int stride = Integer.highestOneBit(KEY + codec.width() - 1) << 1;
+        if (stride > PAGE_SIZE)
+            throw new IllegalArgumentException();
+        this.strideShift = Integer.numberOfTrailingZeros(stride);
+        this.undoFile = undoPath(file);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel log = null;
+        try {
+            lock();
+            log = FileChannel.open(undoFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.undo = log;
+            boolean isNew = (channel.size() == 0);
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, PAGE_SIZE);
+            header.order(ByteOrder.nativeOrder());
+            if (isNew) {
+                header.putLong(H_MAGIC, MAGIC);
+                header.putInt(H_WIDTH, codec.width());
+                writeHeader();
+                header.force();
+            } else {
+                readHeader();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (log != null)
+                log.close();
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes every change made to this tree to the file and waits until the
+     * file is on the storage device.
+     * @throws UncheckedIOException - if the file cannot be written
+     */
+    public void force() {
+        for (MappedByteBuffer region : regions) {
+            region.force();
+        }
+        writeHeader();
+        header.force();
+        dirty = false;
+        forcedEnd = position(used);
+        saved.clear();
+    }
+
+    /**
+     * Forces this tree to the file, closes the file and deletes its undo
+     * log. The tree must not be used afterwards.
+     * @throws IOException - if the file cannot be written or closed
+     */
+    public void close() throws IOException {
+        if (!channel.isOpen())
+            return;
+        try {
+            force();
+        } finally {
+            undo.close();
+            channel.close();
+        }
+        Files.deleteIfExists(undoFile);
+    }
+
+    /**
+     * Returns the undo log of the tree stored in the specified file.
+     * @param file - the file holding the tree
+     * @return the path of its undo log
+     */
+    static Path undoPath(Path file) {
+        return file.resolveSibling(file.getFileName() + ".undo");
+    }
+
+    @Override
+    public boolean add(E e) {
+        markDirty();
+        return super.add(e);
+    }
+
+    @Override
+    public void clear() {
+        markDirty();
+        super.clear();
+    }
+
+    @Override
+    public boolean remove(E o) {
+        markDirty();
+        return super.remove(o);
+    }
+
+    /************** Node Storage **********/
+
+    @Override
+    protected int allocNode(E key) {
+        int node;
+        if (freeHead != NIL) {
+            //reuse the slot of a removed node
+            node = freeHead;
+            freeHead = left(node);
+        } else {
+            if (used == Integer.MAX_VALUE)
+                throw new IllegalStateException();
+            node = used;
+            if ((position(node) >>> REGION_SHIFT) == regions.length)
+                mapRegion(regions.length);
+            used ++;
+        }
+        saveSlot(node);
+        ByteBuffer buf = region(node);
+        int off = offset(node);
+        buf.putInt(off + LEFT, NIL);
+        buf.putInt(off + RIGHT, NIL);
+        buf.putInt(off + PARENT, NIL);
+        buf.putInt(off + FLAGS, RED);
+        codec.write(buf, off + KEY, key);
+        return node;
+    }
+
+    @Override
+    protected void freeNode(int node) {
+        setLeft(node, freeHead);
+        freeHead = node;
+    }
+
+    @Override
+    protected void clearNodes() {
+        //keep the file and its mappings for reuse
+        used = 0;
+        freeHead = NIL;
+    }
+
+    @Override
+    protected int left(int node) {
+        return region(node).getInt(offset(node) + LEFT);
+    }
+
+    @Override
+    protected int right(int node) {
+        return region(node).getInt(offset(node) + RIGHT);
+    }
+
+    @Override
+    protected int parent(int node) {
+        return region(node).getInt(offset(node) + PARENT);
+    }
+
+    @Override
+    protected boolean isRed(int node) {
+        return (region(node).getInt(offset(node) + FLAGS) & RED) != 0;
+    }
+
+    @Override
+    protected void setLeft(int node, int child) {
+        writeInt(node, LEFT, child);
+    }
+
+    @Override
+    protected void setRight(int node, int child) {
+        writeInt(node, RIGHT, child);
+    }
+
+    @Override
+    protected void setParent(int node, int par) {
+        writeInt(node, PARENT, par);
+    }
+
+    @Override
+    protected void setRed(int node, boolean red) {
+        writeInt(node, FLAGS, red ? RED : 0);
+    }
+
+    @Override
+    protected E key(int node) {
+        return codec.read(region(node), offset(node) + KEY);
+    }
+
+    @Override
+    protected void copyKey(int from, int to) {
+        ByteBuffer src = region(from);
+        ByteBuffer dst = region(to);
+        int srcOff = offset(from) + KEY;
+        int dstOff = offset(to) + KEY;
+        saveSlot(to);
+        for (int i = 0; i < codec.width(); i++) {
+            dst.put(dstOff + i, src.get(srcOff + i));
+        }
+    }
+
+    @Override
+    protected int compareKey(E key, int node) {
+        //compare against the stored bytes without decoding the key
+        return codec.compare(key, region(node), offset(node) + KEY);
+    }
+
+    /************** Private Helper Methods **********/
+
+    /**
+     * Write an int field of a node only if it changes, so that the fix-ups'
+     * redundant parent and color writes do not dirty pages that would then
+     * have to be written back. Helper for the setters.
+     * @param node - the slot number of the node
+     * @param field - the offset of the field within the slot
+     * @param value - the new value of the field
+     */
+    private void writeInt(int node, int field, int value) {
+        ByteBuffer buf = region(node);
+        int off = offset(node) + field;
+        if (buf.getInt(off) != value) {
+            saveSlot(node);
+            buf.putInt(off, value);
+        }
+    }
+
+    /**
+     * Return the position of a node's slot in the file.
+     * @param node - the slot number of the node
+     * @return the byte position of the slot, after the header page
+     */
+    private long position(int node) {
+        return PAGE_SIZE + ((long) node << strideShift);
+    }
+
+    /**
+     * Return the mapped region that holds a node.
+     * @param node - the slot number of the node
+     * @return the mapped buffer holding the node
+     */
+    private ByteBuffer region(int node) {
+        return regions[(int) (position(node) >>> REGION_SHIFT)];
+    }
+
+    /**
+     * Return the offset of a node within its mapped region.
+     * @param node - the slot number of the node
+     * @return the byte offset of the node's slot in its region
+     */
+    private int offset(int node) {
+        return (int) (position(node) & ((1L << REGION_SHIFT) - 1));
+    }
+
+    /**
+     * Map one more region of the file, growing the file if needed. Regions
+     * already mapped never move. Helper for allocNode() and readHeader().
+     * @param index - the index of the region to map
+     * @throws UncheckedIOException - if the file cannot be mapped
+     */
+    private void mapRegion(int index) {
+        try {
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE,
+                (long) index << REGION_SHIFT, 1L << REGION_SHIFT);
+            region.order(ByteOrder.nativeOrder());
+            regions = Arrays.copyOf(regions, index + 1);
+            regions[index] = region;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Take the file lock, so that no other MappedBST rolls the file back
+     * under this one. Helper for the constructor.
+     * @throws IOException - if the file is already open
+     */
+    private void lock() throws IOException {
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null)
+            throw new IOException("file is already open");
+    }
+
+    /**
+     * Record in the file, before the first change after a force(), that the
+     * file is being changed: log the forced header under a new epoch, then
+     * mark the header. Helper for the mutators and saveSlot().
+     * @throws UncheckedIOException - if the undo log cannot be written
+     */
+    private void markDirty() {
+        if (dirty)
+            return;
+        epoch = header.getLong(H_EPOCH) + 1;
+        undoEnd = 0;
+        saved.clear();
+        savePage(0, header, 0);
+        header.putLong(H_EPOCH, epoch);
+        header.putInt(H_CLEAN, 0);
+        header.force();
+        dirty = true;
+    }
+
+    /**
+     * Log the page of a node before its first change after a force(). Slots
+     * handed out after the force() hold nothing to roll back. Helper for the
+     * node writers.
+     * @param node - the slot number of the node about to change
+     * @throws UncheckedIOException - if the undo log cannot be written
+     */
+    private void saveSlot(int node) {
+        markDirty();
+        long pos = position(node);
+        if (pos >= forcedEnd)
+            return;
+        int page = (int) (pos / PAGE_SIZE);
+        if (saved.get(page))
+            return;
+        //slots never straddle pages, so the page starts at the slot's page
+        savePage(page, region(node), offset(node) & -PAGE_SIZE);
+        saved.set(page);
+    }
+
+    /**
+     * Append one page to the undo log under the current epoch and force the
+     * log. Helper for markDirty() and saveSlot().
+     * @param page - the page number in the file
+     * @param buf - the mapped buffer holding the page
+     * @param off - the offset of the page in buf
+     * @throws UncheckedIOException - if the undo log cannot be written
+     */
+    private void savePage(int page, ByteBuffer buf, int off) {
+        record.clear();
+        record.putLong(U_EPOCH, epoch);
+        record.putInt(U_PAGE, page);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            record.put(U_DATA + i, buf.get(off + i));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, U_CRC);
+        record.putLong(U_CRC, crc.getValue());
+        try {
+            while (record.hasRemaining()) {
+                undo.write(record, undoEnd + record.position());
+            }
+            undo.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        undoEnd += RECORD;
+    }
+
+    /**
+     * Roll a file that was changed after its last force() back to it: copy
+     * the logged pages of the header's epoch back, stopping at the first
+     * record that is torn or of another epoch, then mark the file clean. The
+     * header is restored last, and marked clean only once the pages are
+     * on the storage device. Helper for readHeader().
+     * @throws IOException - if the file or its undo log cannot be read or
+     * written
+     */
+    private void recover() throws IOException {
+        long crashed = header.getLong(H_EPOCH);
+        byte[] forcedHeader = null;
+        ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE);
+        for (long pos = 0; pos + RECORD <= undo.size(); pos += RECORD) {
+            record.clear();
+            while (record.hasRemaining()) {
+                if (undo.read(record, pos + record.position()) < 0)
+                    throw new IOException("undo log truncated");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 0, U_CRC);
+            if (record.getLong(U_CRC) != crc.getValue()
+                || record.getLong(U_EPOCH) != crashed)
+                break;
+            int number = record.getInt(U_PAGE);
+            if (number == 0) {
+                forcedHeader = Arrays.copyOfRange(record.array(), U_DATA, U_CRC);
+                continue;
+            }
+            page.clear();
+            page.put(record.array(), U_DATA, PAGE_SIZE);
+            page.flip();
+            while (page.hasRemaining()) {
+                channel.write(page, (long) number * PAGE_SIZE + page.position());
+            }
+        }
+        channel.force(true);
+        if (forcedHeader != null) {
+            //keep the file marked changed until the whole header is back
+            ByteBuffer forced = ByteBuffer.wrap(forcedHeader)
+                .order(ByteOrder.nativeOrder());
+            forced.putInt(H_CLEAN, 0);
+            forced.putLong(H_EPOCH, crashed);
+            ByteBuffer dst = header.duplicate();
+            dst.position(0);
+            dst.put(forced);
+            header.force();
+        }
+        header.putInt(H_CLEAN, 1);
+        header.force();
+        undo.truncate(0);
+    }
+
+    /**
+     * Store the tree's root, size and free list in the header page and mark
+     * the file clean. Helper for force().
+     */
+    private void writeHeader() {
+        header.putInt(H_ROOT, root);
+        header.putInt(H_SIZE, size);
+        header.putInt(H_USED, used);
+        header.putInt(H_FREE, freeHead);
+        header.putInt(H_CLEAN, 1);
+    }
+
+    /**
+     * Load the tree's root, size and free list from the header page of an
+     * existing file, rolling it back first if it was changed after its last
+     * force(), and map its node pages. Helper for the constructor.
+     * @throws IOException - if the file does not hold a tree of this key
+     * width, or cannot be rolled back to its last force()
+     */
+    private void readHeader() throws IOException {
+        if (header.getLong(H_MAGIC) != MAGIC)
+            throw new IOException("not a MappedBST file");
+        if (header.getInt(H_WIDTH) != codec.width())
+            throw new IOException("key width mismatch");
+        if (header.getInt(H_CLEAN) != 1)
+            recover();
+        root = header.getInt(H_ROOT);
+        size = header.getInt(H_SIZE);
+        used = header.getInt(H_USED);
+        freeHead = header.getInt(H_FREE);
+        forcedEnd = position(used);
+        if (used > 0) {
+            int lastRegion = (int) (position(used - 1) >>> REGION_SHIFT);
+            for (int i = 0; i <= lastRegion; i++) {
+                mapRegion(i);
+            }
+        }
+    }
+
+} //end MappedBST class
@@ -0,0 +1,212 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * OffHeapBST class that implements a Red-Black Balance BST Tree whose nodes
+ * and fixed-width keys live outside the Java heap, in direct buffers, so that
+ * a tree of hundreds of millions of keys adds nothing for the garbage
+ * collector to trace. Nodes link to each other by slot number; a removed
+ * node's slot is reused by a later insertion.
+ *
+ * Node memory is handed out in chunks and is released by close(); after
+ * close() the tree is empty and refuses further insertions.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+public class OffHeapBST<E extends Comparable <? super E>>
+    extends BST_RBIndexed<E> implements AutoCloseable {
+
+    //layout of a node slot: three int links, an int of flags, then the key
+    private static final int LEFT = 0;
+    private static final int RIGHT = 4;
+    private static final int PARENT = 8;
+    private static final int FLAGS = 12;
+    private static final int KEY = 16;
+    private static final int RED = 1; //flag bit set if the node is red
+
+    private static final int CHUNK_SHIFT = 16; //65536 nodes per chunk
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private final FixedKeyCodec<E> codec; //encodes the fixed-width keys
+    private final int stride; //bytes per node slot
+    private ByteBuffer[] chunks = new ByteBuffer[0]; //the node memory
+    private int used; //number of slots ever handed out (high-water mark)
+    private int freeHead = NIL; //first free slot, chained through LEFT
+    private boolean closed; //true once close() released the memory
+
+    /**
+     * Constructs a new, empty off-heap search tree for keys of the codec's
+     * fixed width, sorted according to the natural ordering of its elements.
+     * @param codec - the codec that stores the keys
+     * @throws NullPointerException - if codec is null
+     * @throws IllegalArgumentException - if the keys are too wide for a chunk
+     * of nodes to fit in one ByteBuffer
+     */
+    public OffHeapBST(FixedKeyCodec<E> codec) {
+        if (codec == null)
+            throw new NullPointerException();
+        this.codec = codec;
+        long stride = (KEY + (long) codec.width() + 7) & ~7L; //8-byte aligned
+        if (stride > (Integer.MAX_VALUE >> CHUNK_SHIFT))
+            throw new IllegalArgumentException("key too wide");
+        this.stride = (int) stride;
+    }
+
+    /**
+     * Releases the off-heap memory of this tree. The tree becomes empty and
+     * any later insertion throws IllegalStateException. Closing twice has no
+     * further effect.
+     */
+    public void close() {
+        chunks = new ByteBuffer[0];
+        root = NIL;
+        size = 0;
+        used = 0;
+        freeHead = NIL;
+        closed = true;
+    }
+
+    /**
+     * Returns the number of bytes of off-heap memory held by this tree.
+     * @return the off-heap memory held by this tree in bytes
+     */
+    public long memoryUsed() {
+        return chunks.length * ((long) stride << CHUNK_SHIFT);
+    }
+
+    /************** Node Storage **********/
+
+    @Override
+    protected int allocNode(E key) {
+        if (closed)
+            throw new IllegalStateException();
+        int node;
+        if (freeHead != NIL) {
+            //reuse the slot of a removed node
+            node = freeHead;
+            freeHead = left(node);
+        } else {
+            if (used == Integer.MAX_VALUE)
+                throw new IllegalStateException();
+            if ((used >>> CHUNK_SHIFT) == chunks.length)
+                addChunk();
+            node = used ++;
+        }
+        ByteBuffer buf = chunk(node);
+        int off = offset(node);
+        buf.putInt(off + LEFT, NIL);
+        buf.putInt(off + RIGHT, NIL);
+        buf.putInt(off + PARENT, NIL);
+        buf.putInt(off + FLAGS, RED);
+        codec.write(buf, off + KEY, key);
+        return node;
+    }
+
+    @Override
+    protected void freeNode(int node) {
+        setLeft(node, freeHead);
+        freeHead = node;
+    }
+
+    @Override
+    protected void clearNodes() {
+        //keep the chunks for reuse
+        used = 0;
+        freeHead = NIL;
+    }
+
+    @Override
+    protected int left(int node) {
+        return chunk(node).getInt(offset(node) + LEFT);
+    }
+
+    @Override
+    protected int right(int node) {
+        return chunk(node).getInt(offset(node) + RIGHT);
+    }
+
+    @Override
+    protected int parent(int node) {
+        return chunk(node).getInt(offset(node) + PARENT);
+    }
+
+    @Override
+    protected boolean isRed(int node) {
+        return (chunk(node).getInt(offset(node) + FLAGS) & RED) != 0;
+    }
+
+    @Override
+    protected void setLeft(int node, int child) {
+        chunk(node).putInt(offset(node) + LEFT, child);
+    }
+
+    @Override
+    protected void setRight(int node, int child) {
+        chunk(node).putInt(offset(node) + RIGHT, child);
+    }
+
+    @Override
+    protected void setParent(int node, int par) {
+        chunk(node).putInt(offset(node) + PARENT, par);
+    }
+
+    @Override
+    protected void setRed(int node, boolean red) {
+        chunk(node).putInt(offset(node) + FLAGS, red ? RED : 0);
+    }
+
+    @Override
+    protected E key(int node) {
+        return codec.read(chunk(node), offset(node) + KEY);
+    }
+
+    @Override
+    protected void copyKey(int from, int to) {
+        ByteBuffer src = chunk(from);
+        ByteBuffer dst = chunk(to);
+        int srcOff = offset(from) + KEY;
+        int dstOff = offset(to) + KEY;
+        for (int i = 0; i < codec.width(); i++) {
+            dst.put(dstOff + i, src.get(srcOff + i));
+        }
+    }
+
+    @Override
+    protected int compareKey(E key, int node) {
+        //compare against the stored bytes without decoding the key
+        return codec.compare(key, chunk(node), offset(node) + KEY);
+    }
+
+    /**
+     * Return the chunk that holds a node. Helper for the storage methods.
+     * @param node - the slot number of the node
+     * @return the direct buffer holding the node
+     */
+    private ByteBuffer chunk(int node) {
+        return chunks[node >>> CHUNK_SHIFT];
+    }
+
+    /**
+     * Return the offset of a node within its chunk. Helper for the storage
+     * methods.
+     * @param node - the slot number of the node
+     * @return the byte offset of the node's slot in its chunk
+     */
+    private int offset(int node) {
+        return (node & CHUNK_MASK) * stride;
+    }
+
+    /**
+     * Allocate one more chunk of node memory. Existing chunks are never moved,
+     * so growing copies nothing. Helper for allocNode().
+     */
+    private void addChunk() {
+        long capacity = (long) stride << CHUNK_SHIFT; //fits, see the constructor
+        ByteBuffer buf = ByteBuffer.allocateDirect((int) capacity)
+            .order(ByteOrder.nativeOrder());
+        chunks = Arrays.copyOf(chunks, chunks.length + 1);
+        chunks[chunks.length - 1] = buf;
+    }
+
+} //end OffHeapBST class
@@ -0,0 +1,639 @@
+import java.util.*;
+
+/**
+ * PersistentBST_RB class that implements an immutable Red-Black Balance BST
+ * Tree. add() and remove() leave this version untouched and return a new
+ * version that shares every node off the search path with it: only the
+ * O(log n) nodes on the path, and the few siblings the fix-ups recolor or
+ * rotate, are copied (path copying). Nodes have no parent pointers, since a
+ * shared node has a different parent in every version; the fix-ups walk an
+ * array holding the copied path instead.
+ *
+ * A version never changes once returned, so snapshot() is O(1) and any number
+ * of threads may read or iterate a version without locks while a writer
+ * derives newer versions from it. Versions are published safely through
+ * their final fields.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+public final class PersistentBST_RB<E extends Comparable <? super E>> {
+
+    //no red-black tree of int size is taller; removal fix-ups may lengthen
+    //the path by two rotations
+    private static final int MAX_DEPTH = 64;
+
+    private final Node<E> root; //the root of this version, null if empty
+    private final int size; //the number of elements in this version
+
+    /** Inner RBTree Node class; static so that a node does not keep the
+     *  version that created it alive **/
+    private static final class Node<E> {
+        private E e; //the data in the Node
+        private Node<E> left; //left child pointer
+        private Node<E> right; //right child pointer
+        private boolean red; //true: red; false: black
+
+        /**
+         * Construct a node with specified data, color and children
+         * @param e - the data of the node
+         * @param red - true if the node is red, false if black
+         * @param left - the left child
+         * @param right - the right child
+         */
+        private Node(E e, boolean red, Node<E> left, Node<E> right) {
+            this.e = e;
+            this.red = red;
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * Return a private copy of this node that a new version may change.
+         * @return a copy of this node
+         */
+        private Node<E> copy() {
+            return new Node<E>(e, red, left, right);
+        }
+    }
+
+    /**
+     * Constructs a new, empty persistent search tree, sorted according to the
+     * natural ordering of its elements.
+     */
+    public PersistentBST_RB() {
+        this(null, 0);
+    }
+
+    /**
+     * Construct a version from its root.
+     * @param root - the root of the version
+     * @param size - the number of elements in the version
+     */
+    private PersistentBST_RB(Node<E> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns a version of this tree that also contains the specified element.
+     * Copies the O(log n) nodes on the search path; this version is unchanged.
+     * @param e - element to be added
+     * @return the new version, or this version if it already contains e
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in this tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    public PersistentBST_RB<E> add(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        @SuppressWarnings("unchecked")
+        Node<E>[] path = (Node<E>[]) new Node<?>[MAX_DEPTH + 3];
+        int depth = 0;
+        Node<E> cur = root;
+        while (cur != null) {
+            int cmp = e.compareTo(cur.e);
+            if (cmp == 0)
+                return this; //already contains such element
+            path[depth++] = cur;
+            cur = (cmp < 0) ? cur.left : cur.right;
+        }
+        path[depth] = new Node<E>(e, true, null, null);
+        copyPath(path, depth, depth);
+        return new PersistentBST_RB<E>(rbBalance(path, depth), size + 1);
+    }
+
+    /**
+     * Returns a version of this tree without the specified element. Copies
+     * the O(log n) nodes on the search path and the siblings the fix-ups
+     * change; this version is unchanged.
+     * @param o - element to be removed
+     * @return the new version, or this version if it does not contain o
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in this tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    public PersistentBST_RB<E> remove(E o) {
+        if (o == null)
+            throw new NullPointerException();
+        @SuppressWarnings("unchecked")
+        Node<E>[] path = (Node<E>[]) new Node<?>[MAX_DEPTH + 3];
+        int depth = 0;
+        Node<E> cur = root;
+        while (cur != null) {
+            path[depth] = cur;
+            int cmp = o.compareTo(cur.e);
+            if (cmp == 0)
+                break;
+            depth ++;
+            cur = (cmp < 0) ? cur.left : cur.right;
+        }
+        if (cur == null)
+            return this; //can't find the key
+
+        //a node with two children takes its predecessor's data, and the
+        //predecessor, which has at most one child, is removed instead
+        int found = depth;
+        if (cur.left != null && cur.right != null) {
+            Node<E> pred = cur.left;
+            path[++depth] = pred;
+            while (pred.right != null) {
+                pred = pred.right;
+                path[++depth] = pred;
+            }
+        }
+        copyPath(path, depth + 1, depth);
+        path[found].e = path[depth].e;
+        return new PersistentBST_RB<E>(new Removal<E>(path, depth).run(),
+            size - 1);
+    }
+
+    /**
+     * Returns true if this version contains the specified element
+     * @param o - element to be checked for containment
+     * @return true if this version contains the specified element
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in this tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    public boolean contains(E o) {
+        if (o == null)
+            throw new NullPointerException();
+        Node<E> cur = root;
+        while (cur != null) {
+            int cmp = o.compareTo(cur.e);
+            if (cmp == 0)
+                return true;
+            cur = (cmp < 0) ? cur.left : cur.right;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the first (lowest) element in this version.
+     * @return the first (lowest) element in this version
+     * @throws NoSuchElementException - if this version is empty
+     */
+    public E first() {
+        if (root == null)
+            throw new NoSuchElementException();
+        Node<E> cur = root;
+        while (cur.left != null) {
+            cur = cur.left;
+        }
+        return cur.e;
+    }
+
+    /**
+     * Returns the last (highest) element in this version.
+     * @return the last (highest) element in this version
+     * @throws NoSuchElementException - if this version is empty
+     */
+    public E last() {
+        if (root == null)
+            throw new NoSuchElementException();
+        Node<E> cur = root;
+        while (cur.right != null) {
+            cur = cur.right;
+        }
+        return cur.e;
+    }
+
+    /**
+     * Returns the number of elements in this version.
+     * @return the number of elements in this version
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if this version contains no elements.
+     * @return true if this version contains no elements
+     */
+    public boolean isEmpty() {
+        return (root == null);
+    }
+
+    /**
+     * Returns the height of this version, 0 if it is empty.
+     * @return the height of this version
+     */
+    public int height() {
+        return heightRecur(root);
+    }
+
+    /**
+     * Returns a point-in-time view of this tree, which is this version
+     * itself: versions never change. O(1).
+     * @return this version
+     */
+    public PersistentBST_RB<E> snapshot() {
+        return this;
+    }
+
+    /**
+     * Returns an iterator over the elements of this version in ascending
+     * order. Versions never change, so the iterator needs no lock and never
+     * fails; it does not support remove().
+     * @return an iterator over the elements of this version
+     */
+    public Iterator<E> iterator() {
+        return new PersistentIterator();
+    }
+
+    /**
+     * Returns a string representation of this version.
+     * @return a string representation of this version
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (Iterator<E> iter = iterator(); iter.hasNext(); ) {
+            sb.append(iter.next());
+            if (iter.hasNext())
+                sb.append(", ");
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Verify the BST order and the red-black properties of this version.
+     * Used by the tester.
+     * @return true if this version is a valid red-black tree
+     */
+    boolean isValidRB() {
+        if (root == null)
+            return size == 0;
+        return !root.red && blackHeight(root, null, null) >= 0
+            && countNodes(root) == size;
+    }
+
+    /************** Private Helper Methods **********/
+
+    /**
+     * Replace the first nodes of a search path with private copies and relink
+     * every node of the path to the next one, so that the new version owns
+     * the path.
+     * @param path - the search path from the root
+     * @param copies - the number of nodes to copy from the root down
+     * @param depth - the index of the last node of the path
+     */
+    private static <E extends Comparable <? super E>> void copyPath(
+        Node<E>[] path, int copies, int depth) {
+        for (int i = 0; i < copies; i++) {
+            path[i] = path[i].copy();
+        }
+        for (int i = 0; i < depth; i++) {
+            if (path[i + 1].e.compareTo(path[i].e) < 0)
+                path[i].left = path[i + 1];
+            else
+                path[i].right = path[i + 1];
+        }
+    }
+
+    /**
+     * Rebalance after inserting path[k] as a red leaf: the cases of
+     * BST_RB.rbBalance(), on copied nodes. Case3 copies the uncle it
+     * recolors; the rotations of Case4 and Case5 touch only copied nodes.
+     * @param path - the copied path, from the root to the new node
+     * @param k - the index of the new node
+     * @return the root of the new version
+     */
+    private static <E> Node<E> rbBalance(Node<E>[] path, int k) {
+        while (true) {
+            Node<E> node = path[k];
+            //Case1: if node is root
+            if (k == 0) {
+                node.red = false;
+                return node;
+            }
+            Node<E> par = path[k - 1];
+            //Case2: if node's parent is black
+            if (!par.red)
+                return path[0];
+            //parent is red, so it is not the root
+            Node<E> grandparent = path[k - 2];
+            boolean parIsLeft = (grandparent.left == par);
+            Node<E> uncle = parIsLeft ? grandparent.right : grandparent.left;
+            //Case3: if parent and uncle are both red
+            if (uncle != null && uncle.red) {
+                uncle = uncle.copy();
+                uncle.red = false;
+                if (parIsLeft)
+                    grandparent.right = uncle;
+                else
+                    grandparent.left = uncle;
+                par.red = false;
+                grandparent.red = true;
+                k -= 2; //rebalance grandparent
+                continue;
+            }
+            //Case4: node is an inner grandchild: rotate at parent
+            if (node == par.right && parIsLeft) {
+                grandparent.left = rotateLeft(par);
+                par = node;
+            } else if (node == par.left && !parIsLeft) {
+                grandparent.right = rotateRight(par);
+                par = node;
+            }
+            //Case5: rotate at grandparent
+            par.red = false;
+            grandparent.red = true;
+            Node<E> top = parIsLeft ? rotateRight(grandparent)
+                : rotateLeft(grandparent);
+            if (k == 2)
+                return top;
+            Node<E> above = path[k - 3];
+            if (above.left == grandparent)
+                above.left = top;
+            else
+                above.right = top;
+            return path[0];
+        }
+    }
+
+    /**
+     * Rotate left at a node, which must be a private copy, as must its right
+     * child.
+     * @param node - the node at which the rotation is performed
+     * @return the new root of the subtree
+     */
+    private static <E> Node<E> rotateLeft(Node<E> node) {
+        Node<E> top = node.right;
+        node.right = top.left;
+        top.left = node;
+        return top;
+    }
+
+    /**
+     * Rotate right at a node, which must be a private copy, as must its left
+     * child.
+     * @param node - the node at which the rotation is performed
+     * @return the new root of the subtree
+     */
+    private static <E> Node<E> rotateRight(Node<E> node) {
+        Node<E> top = node.left;
+        node.left = top.right;
+        top.right = node;
+        return top;
+    }
+
+    /**
+     * Determine if the node is non-null and red.
+     * @param node - the node to be determined whether it's red
+     * @return true if the node is non-null and red, false otherwise
+     */
+    private static boolean isRed(Node<?> node) {
+        return (node != null && node.red);
+    }
+
+    /**
+     * Return the height of a subtree. Helper for height().
+     * @param node - the root of the subtree
+     * @return the number of nodes on the longest path down from node
+     */
+    private static int heightRecur(Node<?> node) {
+        if (node == null)
+            return 0;
+        return 1 + Math.max(heightRecur(node.left), heightRecur(node.right));
+    }
+
+    /**
+     * Count the nodes of a subtree. Helper for isValidRB().
+     * @param node - the root of the subtree
+     * @return the number of nodes in the subtree
+     */
+    private static int countNodes(Node<?> node) {
+        if (node == null)
+            return 0;
+        return 1 + countNodes(node.left) + countNodes(node.right);
+    }
+
+    /**
+     * Return the black height of a subtree after verifying its order and
+     * colors. Helper for isValidRB().
+     * @param node - the root of the subtree
+     * @param lo - every element must be greater than lo, if not null
+     * @param hi - every element must be less than hi, if not null
+     * @return the black height, -1 if the subtree is invalid
+     */
+    private static <E extends Comparable <? super E>> int blackHeight(
+        Node<E> node, E lo, E hi) {
+        if (node == null)
+            return 0;
+        if ((lo != null && node.e.compareTo(lo) <= 0)
+            || (hi != null && node.e.compareTo(hi) >= 0))
+            return -1;
+        if (node.red && (isRed(node.left) || isRed(node.right)))
+            return -1;
+        int left = blackHeight(node.left, lo, node.e);
+        int right = blackHeight(node.right, node.e, hi);
+        if (left < 0 || left != right)
+            return -1;
+        return left + (node.red ? 0 : 1);
+    }
+
+    /**
+     * The removal of the last node of a copied path: the cases of
+     * BST_RB.rbPrepForRemoval(), on copied nodes. The path plays the part of
+     * the parent pointers; a rotation at a node of the path inserts the new
+     * subtree root into the path above it. Siblings and nephews are copied
+     * before they are recolored or rotated.
+     */
+    private static final class Removal<E> {
+
+        private final Node<E>[] path; //the copied path from the root
+        private int target; //the index of the node to remove
+
+        /**
+         * Construct a removal of path[target].
+         * @param path - the copied path from the root
+         * @param target - the index of the node to remove
+         */
+        private Removal(Node<E>[] path, int target) {
+            this.path = path;
+            this.target = target;
+        }
+
+        /**
+         * Prepare for the removal if the node is black, then unlink it.
+         * @return the root of the new version
+         */
+        private Node<E> run() {
+            Node<E> node = path[target];
+            if (!node.red)
+                prepForRemoval(target);
+            //unlink the node, which has at most one child
+            Node<E> child = (node.left != null) ? node.left : node.right;
+            Node<E> newRoot;
+            if (target == 0) {
+                newRoot = child;
+            } else {
+                Node<E> par = path[target - 1];
+                if (par.left == node)
+                    par.left = child;
+                else
+                    par.right = child;
+                newRoot = path[0];
+            }
+            if (newRoot != null && newRoot.red) {
+                newRoot = newRoot.copy(); //may be shared
+                newRoot.red = false;
+            }
+            return newRoot;
+        }
+
+        /**
+         * Restructure the tree so that path[k] can lose a black node.
+         * @param k - the index of the node on the path
+         */
+        private void prepForRemoval(int k) {
+            //Case1: node is red or is the root
+            if (path[k].red || k == 0)
+                return;
+            Node<E> sibling = ownSibling(k);
+            //Case2: sibling is red
+            if (sibling.red) {
+                path[k - 1].red = true;
+                sibling.red = false;
+                rotateAt(k - 1, path[k - 1].left == path[k]);
+                k ++; //the node moved one level down
+                sibling = ownSibling(k);
+            }
+            Node<E> par = path[k - 1];
+            boolean bothBlack = !isRed(sibling.left) && !isRed(sibling.right);
+            //Case3: parent is black and both of sibling's children are black
+            if (!par.red && bothBlack) {
+                sibling.red = true;
+                prepForRemoval(k - 1);
+                return;
+            }
+            //Case4: parent is red and both of sibling's children are black
+            if (par.red && bothBlack) {
+                par.red = false;
+                sibling.red = true;
+                return;
+            }
+            boolean isLeft = (par.left == path[k]);
+            //Case5: sibling's inner child is red and outer child is black,
+            //node is left child
+            if (isLeft && isRed(sibling.left) && !isRed(sibling.right)) {
+                sibling.red = true;
+                sibling.left = sibling.left.copy();
+                sibling.left.red = false;
+                par.right = rotateRight(sibling);
+                sibling = par.right;
+            }
+            //Case6: mirror image of Case5, node is right child
+            if (!isLeft && !isRed(sibling.left) && isRed(sibling.right)) {
+                sibling.red = true;
+                sibling.right = sibling.right.copy();
+                sibling.right.red = false;
+                par.left = rotateLeft(sibling);
+                sibling = par.left;
+            }
+            //sibling's outer child is red: rotate at parent
+            sibling.red = par.red;
+            par.red = false;
+            if (isLeft) {
+                sibling.right = sibling.right.copy();
+                sibling.right.red = false;
+            } else {
+                sibling.left = sibling.left.copy();
+                sibling.left.red = false;
+            }
+            rotateAt(k - 1, isLeft);
+        }
+
+        /**
+         * Replace the sibling of path[k] with a private copy.
+         * @param k - the index of the node on the path
+         * @return the copied sibling
+         */
+        private Node<E> ownSibling(int k) {
+            Node<E> par = path[k - 1];
+            Node<E> sibling;
+            if (par.left == path[k]) {
+                sibling = par.right.copy();
+                par.right = sibling;
+            } else {
+                sibling = par.left.copy();
+                par.left = sibling;
+            }
+            return sibling;
+        }
+
+        /**
+         * Rotate at path[j], whose child on the other side of the path must be
+         * a private copy, and insert the new subtree root into the path.
+         * @param j - the index of the node at which to rotate
+         * @param left - true to rotate left, false to rotate right
+         */
+        private void rotateAt(int j, boolean left) {
+            Node<E> node = path[j];
+            Node<E> top = left ? rotateLeft(node) : rotateRight(node);
+            System.arraycopy(path, j, path, j + 1, target + 1 - j);
+            path[j] = top;
+            target ++;
+            if (j > 0) {
+                Node<E> above = path[j - 1];
+                if (above.left == node)
+                    above.left = top;
+                else
+                    above.right = top;
+            }
+        }
+    }
+
+    /**
+     * Inner iterator class for a version. Keeps the path of unvisited
+     * ancestors in an array, since nodes have no parent pointers.
+     */
+    private class PersistentIterator implements Iterator<E> {
+
+        @SuppressWarnings("unchecked")
+        private final Node<E>[] stack = (Node<E>[]) new Node<?>[MAX_DEPTH];
+        private int depth; //number of nodes on the stack
+
+        /**
+         * Construct an iterator positioned at the first element.
+         */
+        private PersistentIterator() {
+            pushLeft(root);
+        }
+
+        /**
+         * Returns true if the iteration has more elements
+         * @return true if the iteration has more elements
+         */
+        public boolean hasNext() {
+            return (depth > 0);
+        }
+
+        /**
+         * Returns the next element in the iteration.
+         * @return the next element in the iteration
+         * @throws NoSuchElementException - if the iteration has no more
+         * elements
+         */
+        public E next() {
+            if (depth == 0)
+                throw new NoSuchElementException();
+            Node<E> node = stack[--depth];
+            pushLeft(node.right);
+            return node.e;
+        }
+
+        /**
+         * Push a node and its chain of left children.
+         * @param node - the node to start from
+         */
+        private void pushLeft(Node<E> node) {
+            while (node != null) {
+                stack[depth++] = node;
+                node = node.left;
+            }
+        }
+    } //end iterator class
+
+} //end PersistentBST_RB class
@@ -0,0 +1,618 @@
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * ShardedBST class that splits the key space into ranges (shards), each held
+ * by its own BST_RB under its own StampedLock, and implements the
+ * BST_Interface interface. Writers to different shards never contend, and
+ * contains() reads optimistically as ConcurrentBST_RB does. A routing table
+ * of shard boundaries, replaced as a whole, maps each key to its shard.
+ *
+ * The shards follow the observed writes: every shard counts the writes it
+ * takes, and every CHECK_INTERVAL writes to one shard trigger a rebalance
+ * that splits the hottest shard at its median in O(log n) with
+ * BST_RB.split(). Once the tree has maxShards shards, each split is paid for
+ * by joining the coldest pair of neighbors with BST_RB.join(). Rebalances
+ * replace the shards they change with new ones and retire the old ones;
+ * an operation that meets a retired shard routes again.
+ *
+ * size() sums a striped counter. first(), last() and iterator() walk the
+ * shards in key order, which is also the element order since the ranges
+ * are disjoint; the iterator copies CHUNK elements at a time under a
+ * shard's read lock and resumes from the last key it returned, so it is
+ * weakly consistent and survives rebalances.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+public class ShardedBST<E extends Comparable <? super E>>
+    implements BST_Interface<E> {
+
+    static final int CHECK_INTERVAL = 1 << 12; //writes to a shard per check
+    static final int MIN_SPLIT = 1 << 10; //least elements of a shard to split
+    private static final int CHUNK = 256; //elements copied per iterator fill
+
+    private final int maxShards; //the most shards the tree will keep
+    //held by rebalances and clear(), which change several shards at once
+    private final ReentrantLock rebalanceLock = new ReentrantLock();
+    private final LongAdder size = new LongAdder(); //the number of elements
+    private volatile Table<E> table; //the current routing table
+
+    /** A range of the key space, with its own tree and lock **/
+    private static final class Shard<E extends Comparable <? super E>> {
+        final BST_RB<E> tree; //the elements in the range
+        final StampedLock lock = new StampedLock(); //guards tree
+        volatile boolean retired; //set under the write lock once replaced
+        volatile int writes; //writes since the last rebalance, under lock
+
+        /**
+         * Construct a shard over a tree.
+         * @param tree - the elements in the range
+         */
+        Shard(BST_RB<E> tree) {
+            this.tree = tree;
+        }
+    }
+
+    /** The routing table: shard i holds the keys from bounds[i-1],
+     *  inclusive, to bounds[i], exclusive **/
+    private static final class Table<E extends Comparable <? super E>> {
+        final List<E> bounds; //the n-1 boundaries, ascending
+        final List<Shard<E>> shards; //the n shards, in key order
+
+        /**
+         * Construct a routing table.
+         * @param bounds - the boundaries, ascending
+         * @param shards - the shards, one more than the boundaries
+         */
+        Table(List<E> bounds, List<Shard<E>> shards) {
+            this.bounds = bounds;
+            this.shards = shards;
+        }
+
+        /**
+         * Return the index of the shard whose range holds a key.
+         * @param key - the key to route
+         * @return the number of boundaries less than or equal to key
+         */
+        int route(E key) {
+            int lo = 0;
+            int hi = bounds.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (key.compareTo(bounds.get(mid)) >= 0)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    /**
+     * Constructs a new, empty sharded search tree that grows up to four
+     * shards per available processor.
+     */
+    public ShardedBST() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new, empty sharded search tree that grows up to the given
+     * number of shards.
+     * @param maxShards - the most shards to keep
+     * @throws IllegalArgumentException - if maxShards is less than 1
+     */
+    public ShardedBST(int maxShards) {
+        if (maxShards < 1)
+            throw new IllegalArgumentException();
+        this.maxShards = maxShards;
+        List<Shard<E>> shards = new ArrayList<Shard<E>>();
+        shards.add(new Shard<E>(new BST_RB<E>()));
+        table = new Table<E>(Collections.<E>emptyList(), shards);
+    }
+
+    /**
+     * Adds the specified element under its shard's write lock.
+     * @param e - element to be added to this tree
+     * @return true if this tree did not already contain the specified element
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in this tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    public boolean add(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        while (true) {
+            Shard<E> shard = route(e);
+            long stamp = shard.lock.writeLock();
+            boolean added;
+            int writes;
+            try {
+                if (shard.retired)
+                    continue; //a rebalance replaced it: route again
+                added = shard.tree.add(e);
+                writes = ++shard.writes;
+            } finally {
+                shard.lock.unlockWrite(stamp);
+            }
+            if (added)
+                size.increment();
+            if (writes >= CHECK_INTERVAL)
+                tryRebalance();
+            return added;
+        }
+    }
+
+    /**
+     * Adds all of the elements in the specified collection, one at a time.
+     * @param c - collection containing elements to be added to this tree
+     * @return true if this tree changed as a result of the call
+     * @throws ClassCastException - if the elements provided cannot be
+     * compared with the elements currently in the tree
+     * @throws NullPointerException - if the specified collection is null or
+     * if any element is null
+     */
+    public boolean addAll(Collection<? extends E> c) {
+        boolean changed = false;
+        for (E e : c) {
+            changed |= add(e);
+        }
+        return changed;
+    }
+
+    /**
+     * Removes all of the elements, holding every shard's write lock at once.
+     */
+    public void clear() {
+        rebalanceLock.lock(); //keeps the table fixed
+        try {
+            List<Shard<E>> shards = table.shards;
+            long[] stamps = new long[shards.size()];
+            for (int i = 0; i < stamps.length; i++) {
+                stamps[i] = shards.get(i).lock.writeLock();
+            }
+            for (int i = 0; i < stamps.length; i++) {
+                Shard<E> shard = shards.get(i);
+                size.add(-shard.tree.size());
+                shard.tree.clear();
+                shard.lock.unlockWrite(stamps[i]);
+            }
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if this tree contains the specified element. The search
+     * runs optimistically and is repeated under the shard's read lock only if
+     * a writer changed the shard meanwhile.
+     * @param o - element to be checked for containment in this tree
+     * @return true if this tree contains the specified element
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in the tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    public boolean contains(E o) {
+        if (o == null)
+            throw new NullPointerException();
+        while (true) {
+            Shard<E> shard = route(o);
+            long stamp = shard.lock.tryOptimisticRead();
+            if (stamp != 0) {
+                try {
+                    int found = shard.tree.searchUnchecked(o);
+                    //retired is set under the write lock, so a valid stamp
+                    //also proves the shard was current
+                    boolean retired = shard.retired;
+                    if (found >= 0 && shard.lock.validate(stamp)) {
+                        if (retired)
+                            continue;
+                        return (found == 1);
+                    }
+                } catch (RuntimeException e) {
+                    if (shard.lock.validate(stamp))
+                        throw e; //a genuine failure, not a torn read
+                }
+            }
+            stamp = shard.lock.readLock();
+            try {
+                if (!shard.retired)
+                    return shard.tree.contains(o);
+            } finally {
+                shard.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * Returns the first (lowest) element currently in this tree: the first
+     * element of the first non-empty shard.
+     * @return the first (lowest) element currently in this tree
+     * @throws NoSuchElementException - if this tree is empty
+     */
+    public E first() {
+        return end(true);
+    }
+
+    /**
+     * Returns the last (highest) element currently in this tree: the last
+     * element of the last non-empty shard.
+     * @return the last (highest) element currently in this tree
+     * @throws NoSuchElementException - if this tree is empty
+     */
+    public E last() {
+        return end(false);
+    }
+
+    /**
+     * Returns true if this tree contains no elements.
+     * @return true if this tree contains no elements
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns a weakly consistent iterator over the elements in this tree in
+     * ascending order. Its remove() removes the last returned element.
+     * @return an iterator over the elements in this tree in ascending order
+     */
+    public Iterator<E> iterator() {
+        return new ShardedIterator();
+    }
+
+    /**
+     * Removes the specified element under its shard's write lock.
+     * @param o - element to be removed from this tree, if present
+     * @return true if this tree contained the specified element
+     * @throws ClassCastException - if the specified object cannot be compared
+     * with the elements currently in this tree
+     * @throws NullPointerException - if the specified element is null
+     */
+    public boolean remove(E o) {
+        if (o == null)
+            throw new NullPointerException();
+        while (true) {
+            Shard<E> shard = route(o);
+            long stamp = shard.lock.writeLock();
+            boolean removed;
+            int writes;
+            try {
+                if (shard.retired)
+                    continue; //a rebalance replaced it: route again
+                removed = shard.tree.remove(o);
+                writes = ++shard.writes;
+            } finally {
+                shard.lock.unlockWrite(stamp);
+            }
+            if (removed)
+                size.decrement();
+            if (writes >= CHECK_INTERVAL)
+                tryRebalance();
+            return removed;
+        }
+    }
+
+    /**
+     * Returns the number of elements in this tree, from a striped counter;
+     * exact only when no writer is running.
+     * @return the number of elements in this tree
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, size.sum()));
+    }
+
+    /**
+     * Returns the height of the tallest shard.
+     * @return the height of the tallest shard
+     */
+    public int height() {
+        int height = 0;
+        for (Shard<E> shard : table.shards) {
+            long stamp = shard.lock.readLock();
+            try {
+                height = Math.max(height, shard.tree.height());
+            } finally {
+                shard.lock.unlockRead(stamp);
+            }
+        }
+        return height;
+    }
+
+    /**
+     * Returns the number of children of the node that references target
+     * within its shard's tree.
+     * @param target - the target element the node references to
+     * @return the number of children of the node that references the target
+     * @throws NoSuchElementException If target is not found in the tree
+     * @throws IllegalArgumentException Any other problems, eg.NullPointer,
+     * ClassCastException, ...
+     */
+    public int numChildren(E target) {
+        if (target == null)
+            throw new IllegalArgumentException();
+        while (true) {
+            Shard<E> shard;
+            try {
+                shard = route(target);
+            } catch (ClassCastException e) {
+                throw new IllegalArgumentException();
+            }
+            long stamp = shard.lock.readLock();
+            try {
+                if (!shard.retired)
+                    return shard.tree.numChildren(target);
+            } finally {
+                shard.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of shards the key space is split into now.
+     * @return the number of shards
+     */
+    public int shardCount() {
+        return table.shards.size();
+    }
+
+    /**
+     * Rebalances the shards now: splits the shard that took the most writes
+     * since the last rebalance at its median, if it holds at least MIN_SPLIT
+     * elements, and joins the coldest pair of neighbors if that split would
+     * exceed maxShards. Runs anyway every CHECK_INTERVAL writes to a shard.
+     * @return true if the shards changed
+     */
+    public boolean rebalance() {
+        rebalanceLock.lock();
+        try {
+            return rebalanceShards();
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a string representation of the tree.
+     * @return a string representation of the tree.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (Iterator<E> iter = iterator(); iter.hasNext(); ) {
+            sb.append(iter.next());
+            if (iter.hasNext())
+                sb.append(", ");
+        }
+        return sb.append(']').toString();
+    }
+
+    /************** Private Helper Methods **********/
+
+    /**
+     * Return the shard that holds a key in the current routing table.
+     * @param key - the key to route
+     * @return the key's shard
+     */
+    private Shard<E> route(E key) {
+        Table<E> t = table;
+        return t.shards.get(t.route(key));
+    }
+
+    /**
+     * Return the first or last element of the first or last non-empty shard.
+     * Helper for first() and last().
+     * @param first - true for the first element, false for the last
+     * @return the element
+     * @throws NoSuchElementException - if every shard is empty
+     */
+    private E end(boolean first) {
+        retry:
+        while (true) {
+            List<Shard<E>> shards = table.shards;
+            for (int i = 0; i < shards.size(); i++) {
+                Shard<E> shard = shards.get(first ? i : shards.size() - 1 - i);
+                long stamp = shard.lock.readLock();
+                try {
+                    if (shard.retired)
+                        continue retry;
+                    if (!shard.tree.isEmpty())
+                        return first ? shard.tree.first() : shard.tree.last();
+                } finally {
+                    shard.lock.unlockRead(stamp);
+                }
+            }
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * Rebalance unless another thread is already doing so. Helper for add()
+     * and remove().
+     */
+    private void tryRebalance() {
+        if (!rebalanceLock.tryLock())
+            return;
+        try {
+            rebalanceShards();
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    /**
+     * Split the hottest shard and, at maxShards, join the coldest pair of
+     * neighbors; then restart every shard's write count. The caller holds
+     * rebalanceLock.
+     * @return true if the shards changed
+     */
+    private boolean rebalanceShards() {
+        Table<E> t = table;
+        List<Shard<E>> shards = t.shards;
+        int n = shards.size();
+        int[] writes = new int[n];
+        int hot = 0;
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            Shard<E> shard = shards.get(i);
+            writes[i] = shard.writes;
+            shard.writes = 0;
+            total += writes[i];
+            if (writes[i] > writes[hot])
+                hot = i;
+        }
+        //at maxShards a split costs a join: only worth it for a shard taking
+        //twice its fair share of the writes, and only with a cold pair of
+        //neighbors apart from it
+        int cold = -1;
+        if (n >= maxShards) {
+            if (writes[hot] * (long) n < 2 * total)
+                return false;
+            long coldest = Long.MAX_VALUE;
+            for (int i = 0; i + 1 < n; i++) {
+                long pair = (long) writes[i] + writes[i + 1];
+                if (i != hot && i + 1 != hot && pair < coldest) {
+                    coldest = pair;
+                    cold = i;
+                }
+            }
+            if (cold < 0)
+                return false; //fewer than three shards
+        }
+
+        //lock the shards that change, in key order
+        Shard<E> hotShard = shards.get(hot);
+        List<Shard<E>> changing = new ArrayList<Shard<E>>();
+        for (int i = 0; i < n; i++) {
+            if (i == hot || (cold >= 0 && (i == cold || i == cold + 1)))
+                changing.add(shards.get(i));
+        }
+        long[] stamps = new long[changing.size()];
+        for (int i = 0; i < stamps.length; i++) {
+            stamps[i] = changing.get(i).lock.writeLock();
+        }
+        try {
+            if (hotShard.tree.size() < MIN_SPLIT)
+                return false; //too small to be worth splitting
+            List<E> bounds = new ArrayList<E>(t.bounds);
+            List<Shard<E>> next = new ArrayList<Shard<E>>(shards);
+            //split the hot shard at its median; later indices shift by one
+            BST_RB<E> lower = hotShard.tree;
+            E median = lower.select(lower.size() / 2);
+            BST_RB<E> upper = lower.split(median);
+            next.set(hot, new Shard<E>(lower));
+            next.add(hot + 1, new Shard<E>(upper));
+            bounds.add(hot, median);
+            if (cold >= 0) {
+                int at = (cold > hot) ? cold + 1 : cold;
+                BST_RB<E> joined = next.get(at).tree;
+                joined.join(next.get(at + 1).tree);
+                next.set(at, new Shard<E>(joined));
+                next.remove(at + 1);
+                bounds.remove(at);
+            }
+            for (Shard<E> shard : changing) {
+                shard.retired = true;
+            }
+            table = new Table<E>(bounds, next);
+        } finally {
+            for (int i = 0; i < stamps.length; i++) {
+                changing.get(i).lock.unlockWrite(stamps[i]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Inner iterator class for the sharded tree. Copies up to CHUNK elements
+     * at a time from one shard under its read lock, and routes each fill from
+     * the last key returned, so rebalances never make it skip or repeat an
+     * element.
+     */
+    private class ShardedIterator implements Iterator<E> {
+        private final List<E> chunk = new ArrayList<E>(); //the copied elements
+        private int pos; //index of the next element in chunk
+        private E from; //the resume key, null before the first element
+        private boolean inclusive; //true if from itself is still due
+        private boolean done; //true once the last shard is exhausted
+        private E lastReturned; //the element last returned, null if removed
+
+        /**
+         * Returns true if the iteration has more elements
+         * @return true if the iteration has more elements
+         */
+        public boolean hasNext() {
+            if (pos < chunk.size())
+                return true;
+            fill();
+            return pos < chunk.size();
+        }
+
+        /**
+         * Returns the next element in the iteration.
+         * @return the next element in the iteration
+         * @throws NoSuchElementException - if the iteration has no more
+         * elements
+         */
+        public E next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            lastReturned = chunk.get(pos++);
+            from = lastReturned;
+            inclusive = false;
+            return lastReturned;
+        }
+
+        /**
+         * Removes from the tree the last element returned by next().
+         * @throws IllegalStateException - if next() has not been called, or
+         * remove() has already been called after the last call to next()
+         */
+        public void remove() {
+            if (lastReturned == null)
+                throw new IllegalStateException();
+            ShardedBST.this.remove(lastReturned);
+            lastReturned = null;
+        }
+
+        /**
+         * Copy the next elements after the resume key, moving on to the next
+         * shard's lower bound whenever a shard has none left.
+         */
+        private void fill() {
+            chunk.clear();
+            pos = 0;
+            while (!done) {
+                Table<E> t = table;
+                int index = (from == null) ? 0 : t.route(from);
+                Shard<E> shard = t.shards.get(index);
+                long stamp = shard.lock.readLock();
+                try {
+                    if (shard.retired)
+                        continue; //route again with the new table
+                    Iterator<E> iter = (from == null) ? shard.tree.iterator()
+                        : shard.tree.iterator(from);
+                    while (iter.hasNext() && chunk.size() < CHUNK) {
+                        E e = iter.next();
+                        if (inclusive || from == null || e.compareTo(from) > 0)
+                            chunk.add(e);
+                    }
+                } finally {
+                    shard.lock.unlockRead(stamp);
+                }
+                if (!chunk.isEmpty())
+                    return;
+                //the shard has nothing left: resume at the next shard
+                if (index == t.bounds.size()) {
+                    done = true;
+                } else {
+                    from = t.bounds.get(index);
+                    inclusive = true;
+                }
+            }
+        }
+    } //end iterator class
+
+} //end ShardedBST class
@@ -0,0 +1,190 @@
+package benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks that compare BST_RB, BST, BST_AdaptPattern and
+ * java.util.TreeSet on the BST_Interface operations, across tree sizes and
+ * key distributions. Run with -prof gc to see the allocation rate of each
+ * operation next to its time (run.sh does so by default).
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class BST_Benchmark {
+
+    private static final int PROBES = 1 << 16; //probe keys cycled through
+
+    @Param({"BST_RB", "BST", "BST_AdaptPattern", "TreeSet"})
+    public String impl;
+
+    @Param({"1000", "100000", "10000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    private int[] keys; //the keys in insertion order
+    private int[] probes; //present keys, drawn from the distribution
+    private Integer[] batch; //the probes, boxed, for containsEach
+    private BST_Interface<Integer> tree; //the tree, unless impl is TreeSet
+    private TreeSet<Integer> set; //the TreeSet, if impl is TreeSet
+    private int next; //index of the next probe
+
+    /**
+     * Build the tree under test once per trial.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rnd = new Random(578);
+        keys = distribution.keys(size, rnd);
+        probes = distribution.probes(keys, PROBES, rnd);
+        batch = new Integer[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            batch[i] = probes[i];
+        }
+        if (impl.equals("TreeSet")) {
+            set = new TreeSet<Integer>();
+            for (int key : keys) {
+                set.add(key);
+            }
+        } else {
+            tree = newTree(impl);
+            for (int key : keys) {
+                tree.add(key);
+            }
+        }
+    }
+
+    /**
+     * Returns a new, empty tree of the named implementation.
+     * @param impl - the implementation name
+     * @return the new tree
+     */
+    static BST_Interface<Integer> newTree(String impl) {
+        switch (impl) {
+            case "BST_RB": return new BST_RB<Integer>();
+            case "BST": return new BST<Integer>();
+            case "BST_AdaptPattern": return new BST_AdaptPattern<Integer>();
+            default: throw new IllegalArgumentException(impl);
+        }
+    }
+
+    /**
+     * Returns the next probe key, cycling through the probe array.
+     * @return a key present in the tree
+     */
+    private int probe() {
+        next = (next + 1) & (PROBES - 1);
+        return probes[next];
+    }
+
+    /**
+     * Add a key next to a present one, then remove it again, so the tree
+     * keeps its size; measures one add and one remove.
+     */
+    @Benchmark
+    public boolean addRemove() {
+        int key = probe() + 1; //odd keys are never present
+        if (set != null)
+            return set.add(key) & set.remove(key);
+        return tree.add(key) & tree.remove(key);
+    }
+
+    /**
+     * Add every key to an empty tree; measures building a tree of the given
+     * size in the given insertion order.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = 1)
+    @Measurement(iterations = 5, batchSize = 1)
+    public Object build() {
+        if (set != null) {
+            TreeSet<Integer> built = new TreeSet<Integer>();
+            for (int key : keys) {
+                built.add(key);
+            }
+            return built;
+        }
+        BST_Interface<Integer> built = newTree(impl);
+        for (int key : keys) {
+            built.add(key);
+        }
+        return built;
+    }
+
+    /** Look up a present key. **/
+    @Benchmark
+    public boolean containsHit() {
+        int key = probe();
+        return (set != null) ? set.contains(key) : tree.contains(key);
+    }
+
+    /** Look up an absent key next to a present one. **/
+    @Benchmark
+    public boolean containsMiss() {
+        int key = probe() + 1;
+        return (set != null) ? set.contains(key) : tree.contains(key);
+    }
+
+    /**
+     * Look up every probe key in one containsEach() call; TreeSet, which has
+     * no batched lookup, loops over contains().
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public BitSet containsEach() {
+        if (tree != null)
+            return tree.containsEach(batch);
+        BitSet found = new BitSet(batch.length);
+        for (int i = 0; i < batch.length; i++) {
+            if (set.contains(batch[i]))
+                found.set(i);
+        }
+        return found;
+    }
+
+    /** Read the smallest and the largest key. **/
+    @Benchmark
+    public void firstLast(Blackhole bh) {
+        if (set != null) {
+            bh.consume(set.first());
+            bh.consume(set.last());
+        } else {
+            bh.consume(tree.first());
+            bh.consume(tree.last());
+        }
+    }
+
+    /** Iterate over every key in order. **/
+    @Benchmark
+    public void iterate(Blackhole bh) {
+        Iterator<Integer> iter = (set != null) ? set.iterator() : tree.iterator();
+        while (iter.hasNext()) {
+            bh.consume(iter.next());
+        }
+    }
+
+    /** Compute the height of the tree; TreeSet has none and is skipped. **/
+    @Benchmark
+    public int height() {
+        return (set != null) ? 0 : tree.height();
+    }
+
+    /** Count the children of a present key's node; TreeSet is skipped. **/
+    @Benchmark
+    public int numChildren() {
+        return (set != null) ? 0 : tree.numChildren(probe());
+    }
+}
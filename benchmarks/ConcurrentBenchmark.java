@@ -0,0 +1,125 @@
+package benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH contention benchmarks for ConcurrentBST_RB against a BST_RB guarded by
+ * synchronized. Read throughput is measured as reader threads grow: run the
+ * read-only benchmark with increasing thread counts, and the mixed group
+ * with one writer and increasing readers, e.g.
+ *
+ *   ./run.sh ConcurrentBenchmark.contains -t 1
+ *   ./run.sh ConcurrentBenchmark.contains -t 64
+ *   ./run.sh ConcurrentBenchmark.mixed -tg 1,63
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ConcurrentBenchmark {
+
+    private static final int PROBES = 1 << 16; //probe keys cycled through
+
+    @Param({"StampedLock", "synchronized"})
+    public String impl;
+
+    @Param({"1000000"})
+    public int size;
+
+    private int[] probes; //present keys, drawn uniformly
+    private ConcurrentBST_RB<Integer> concurrent; //if impl is StampedLock
+    private BST_RB<Integer> plain; //if impl is synchronized
+
+    /**
+     * Build the shared tree once per trial.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rnd = new Random(578);
+        int[] keys = KeyDistribution.RANDOM.keys(size, rnd);
+        probes = KeyDistribution.RANDOM.probes(keys, PROBES, rnd);
+        if (impl.equals("StampedLock")) {
+            concurrent = new ConcurrentBST_RB<Integer>();
+            for (int key : keys) {
+                concurrent.add(key);
+            }
+        } else {
+            plain = new BST_RB<Integer>();
+            for (int key : keys) {
+                plain.add(key);
+            }
+        }
+    }
+
+    /**
+     * The probe position of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = new Random().nextInt(PROBES); //index of the next probe
+
+        /**
+         * Returns the next probe position, cycling through the probe array.
+         * @return an index into the probes
+         */
+        int advance() {
+            next = (next + 1) & (PROBES - 1);
+            return next;
+        }
+    }
+
+    /**
+     * Look up a key present in the tree.
+     * @param key - the key to look up
+     * @return true
+     */
+    private boolean lookup(int key) {
+        if (concurrent != null)
+            return concurrent.contains(key);
+        synchronized (plain) {
+            return plain.contains(key);
+        }
+    }
+
+    /**
+     * Add a key next to a present one, then remove it again.
+     * @param key - an absent key
+     * @return true
+     */
+    private boolean churn(int key) {
+        if (concurrent != null)
+            return concurrent.add(key) & concurrent.remove(key);
+        synchronized (plain) {
+            return plain.add(key) & plain.remove(key);
+        }
+    }
+
+    /** Reads only; scale the readers with -t. **/
+    @Benchmark
+    public boolean contains(Cursor cursor) {
+        return lookup(probes[cursor.advance()]);
+    }
+
+    /** The readers of the mixed group; scale them with -tg. **/
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(7)
+    public boolean read(Cursor cursor) {
+        return lookup(probes[cursor.advance()]);
+    }
+
+    /** The writer of the mixed group. **/
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public boolean write(Cursor cursor) {
+        return churn(probes[cursor.advance()] + 1); //odd keys are never present
+    }
+}
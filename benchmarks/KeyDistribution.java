@@ -0,0 +1,85 @@
+package benchmarks;
+
+import java.util.*;
+
+/**
+ * KeyDistribution enum that generates the keys the benchmarks insert and the
+ * keys they probe with.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+public enum KeyDistribution {
+
+    /** Keys inserted in ascending order, probed uniformly. **/
+    SEQUENTIAL,
+    /** Keys inserted in random order, probed uniformly. **/
+    RANDOM,
+    /** Keys inserted in random order, probed with a Zipfian skew (s = 0.99)
+     *  so that a few keys receive most of the probes. **/
+    ZIPFIAN;
+
+    private static final double ZIPF_THETA = 0.99;
+
+    /**
+     * Returns n distinct even keys in insertion order. Even keys leave the odd
+     * numbers free as keys that are known to be absent.
+     * @param n - the number of keys
+     * @param rnd - the source of randomness
+     * @return the keys to insert, in insertion order
+     */
+    public int[] keys(int n, Random rnd) {
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = 2 * i;
+        }
+        if (this != SEQUENTIAL) {
+            for (int i = n - 1; i > 0; i--) {
+                int j = rnd.nextInt(i + 1);
+                int swap = keys[i];
+                keys[i] = keys[j];
+                keys[j] = swap;
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns count probes drawn from the inserted keys according to this
+     * distribution.
+     * @param keys - the inserted keys
+     * @param count - the number of probes
+     * @param rnd - the source of randomness
+     * @return the probe keys
+     */
+    public int[] probes(int[] keys, int count, Random rnd) {
+        int n = keys.length;
+        int[] probes = new int[count];
+        if (this != ZIPFIAN) {
+            for (int i = 0; i < count; i++) {
+                probes[i] = keys[rnd.nextInt(n)];
+            }
+            return probes;
+        }
+        //Gray et al., "Quickly generating billion-record synthetic databases"
+        double zetaN = 0;
+        for (int i = 1; i <= n; i++) {
+            zetaN += 1 / Math.pow(i, ZIPF_THETA);
+        }
+        double zeta2 = 1 + 1 / Math.pow(2, ZIPF_THETA);
+        double alpha = 1 / (1 - ZIPF_THETA);
+        double eta = (1 - Math.pow(2.0 / n, 1 - ZIPF_THETA)) / (1 - zeta2 / zetaN);
+        for (int i = 0; i < count; i++) {
+            double u = rnd.nextDouble();
+            double uz = u * zetaN;
+            int rank;
+            if (uz < 1)
+                rank = 0;
+            else if (uz < zeta2)
+                rank = 1;
+            else
+                rank = (int) (n * Math.pow(eta * u - eta + 1, alpha));
+            probes[i] = keys[Math.min(rank, n - 1)];
+        }
+        return probes;
+    }
+}
@@ -0,0 +1,108 @@
+package benchmarks;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH scalability benchmarks for LockFreeBST, ShardedBST and CombiningBST_RB
+ * against ConcurrentSkipListSet and ConcurrentBST_RB, with every thread
+ * writing. Run each benchmark with
+ * 1 to 64 threads, e.g.
+ *
+ *   ./run.sh LockFreeBenchmark.add -t 1
+ *   ./run.sh LockFreeBenchmark.add -t 32
+ *   ./run.sh LockFreeBenchmark.mixed -t 64
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class LockFreeBenchmark {
+
+    private static final int PROBES = 1 << 16; //probe keys cycled through
+
+    @Param({"LockFreeBST", "ConcurrentSkipListSet", "ConcurrentBST_RB",
+        "ShardedBST", "CombiningBST_RB"})
+    public String impl;
+
+    @Param({"1000000"})
+    public int size;
+
+    private int[] probes; //present keys, drawn uniformly
+    private BST_Interface<Integer> tree; //if impl is not ConcurrentSkipListSet
+    private ConcurrentSkipListSet<Integer> skipList; //otherwise
+
+    /**
+     * Build the shared set once per trial, from keys in random order so that
+     * the unbalanced LockFreeBST gets its expected depth.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rnd = new Random(578);
+        int[] keys = KeyDistribution.RANDOM.keys(size, rnd);
+        probes = KeyDistribution.RANDOM.probes(keys, PROBES, rnd);
+        if (impl.equals("ConcurrentSkipListSet")) {
+            skipList = new ConcurrentSkipListSet<Integer>();
+            for (int key : keys) {
+                skipList.add(key);
+            }
+            return;
+        }
+        if (impl.equals("LockFreeBST"))
+            tree = new LockFreeBST<Integer>();
+        else if (impl.equals("ShardedBST"))
+            tree = new ShardedBST<Integer>();
+        else if (impl.equals("CombiningBST_RB"))
+            tree = new CombiningBST_RB<Integer>();
+        else
+            tree = new ConcurrentBST_RB<Integer>();
+        for (int key : keys) {
+            tree.add(key);
+        }
+    }
+
+    /**
+     * The probe position of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = new Random().nextInt(PROBES); //index of the next probe
+
+        /**
+         * Returns the next probe position, cycling through the probe array.
+         * @return an index into the probes
+         */
+        int advance() {
+            next = (next + 1) & (PROBES - 1);
+            return next;
+        }
+    }
+
+    /** Add a key next to a present one, then remove it again. **/
+    @Benchmark
+    public boolean add(Cursor cursor) {
+        int key = probes[cursor.advance()] + 1; //odd keys are never present
+        if (skipList != null)
+            return skipList.add(key) & skipList.remove(key);
+        return tree.add(key) & tree.remove(key);
+    }
+
+    /** Seven lookups of present keys to one add and remove. **/
+    @Benchmark
+    public boolean mixed(Cursor cursor) {
+        int i = cursor.advance();
+        if ((i & 7) != 0) {
+            int key = probes[i];
+            return (skipList != null) ? skipList.contains(key)
+                : tree.contains(key);
+        }
+        return add(cursor);
+    }
+}
@@ -0,0 +1,125 @@
+package benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks that weigh a threaded BST_RB against a plain one: the
+ * navigation speedup of next/prev links against their write cost and their
+ * memory. Run with -prof gc: gc.alloc.rate.norm of build is the bytes of one
+ * whole tree, so the two settings of threaded give the memory per node.
+ *
+ * @author Madeline Yi-Chen, Lee <yil578@ucsd.edu>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class ThreadedBenchmark {
+
+    private static final int PROBES = 1 << 16; //probe keys cycled through
+    private static final int STEPS = 16; //neighbors visited per cursor
+
+    @Param({"false", "true"})
+    public boolean threaded;
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private int[] keys; //the keys in insertion order
+    private int[] probes; //present keys, drawn uniformly
+    private BST_RB<Integer> tree; //the tree under test
+    private int next; //index of the next probe
+
+    /**
+     * Build the tree under test once per trial.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rnd = new Random(578);
+        keys = KeyDistribution.RANDOM.keys(size, rnd);
+        probes = KeyDistribution.RANDOM.probes(keys, PROBES, rnd);
+        tree = new BST_RB<Integer>(threaded);
+        for (int key : keys) {
+            tree.add(key);
+        }
+    }
+
+    /**
+     * Returns the next probe key, cycling through the probe array.
+     * @return a key present in the tree
+     */
+    private int probe() {
+        next = (next + 1) & (PROBES - 1);
+        return probes[next];
+    }
+
+    /**
+     * Add a key next to a present one, then remove it again; measures the
+     * cost of keeping the links on one add and one remove.
+     */
+    @Benchmark
+    public boolean addRemove() {
+        int key = probe() + 1; //odd keys are never present
+        return tree.add(key) & tree.remove(key);
+    }
+
+    /**
+     * Add every key to an empty tree; with -prof gc this gives the memory of
+     * a whole tree.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = 1)
+    @Measurement(iterations = 5, batchSize = 1)
+    public Object build() {
+        BST_RB<Integer> built = new BST_RB<Integer>(threaded);
+        for (int key : keys) {
+            built.add(key);
+        }
+        return built;
+    }
+
+    /** Visit the neighbors after a key with a cursor. **/
+    @Benchmark
+    public void cursorNext(Blackhole bh) {
+        ListIterator<Integer> cur = tree.cursor(probe());
+        for (int i = 0; i < STEPS && cur.hasNext(); i++) {
+            bh.consume(cur.next());
+        }
+    }
+
+    /** Visit the neighbors before a key with a cursor. **/
+    @Benchmark
+    public void cursorPrevious(Blackhole bh) {
+        ListIterator<Integer> cur = tree.cursor(probe());
+        for (int i = 0; i < STEPS && cur.hasPrevious(); i++) {
+            bh.consume(cur.previous());
+        }
+    }
+
+    /** Visit the neighbors after a key by repeated descents, for comparison. **/
+    @Benchmark
+    public void higherChain(Blackhole bh) {
+        Integer e = probe();
+        for (int i = 0; i < STEPS && e != null; i++) {
+            e = tree.higher(e);
+            bh.consume(e);
+        }
+    }
+
+    /** Iterate over every key in order. **/
+    @Benchmark
+    public void iterate(Blackhole bh) {
+        Iterator<Integer> iter = tree.iterator();
+        while (iter.hasNext()) {
+            bh.consume(iter.next());
+        }
+    }
+}
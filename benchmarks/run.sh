@@ -0,0 +1,31 @@
+#!/bin/sh
+# Compiles the tree sources of the parent directory together with the JMH
+# benchmarks of this directory, then runs JMH with the given arguments, e.g.
+#
+#   ./run.sh                                  every benchmark, with -prof gc
+#   ./run.sh BST_Benchmark.containsHit -p size=1000000 -p impl=BST_RB
+#
+# JMH refuses benchmarks in the default package, so the tree sources are
+# compiled from copies placed in the benchmarks package.
+#
+# JMH_CP must list jmh-core, jmh-generator-annprocess, jopt-simple and
+# commons-math3; by default they are taken from the local Maven repository
+# (mvn dependency:get -Dartifact=org.openjdk.jmh:jmh-generator-annprocess:1.37
+# fetches all four).
+set -e
+cd "$(dirname "$0")"
+M2="${HOME}/.m2/repository"
+JMH_VERSION=1.37
+: "${JMH_CP:=$M2/org/openjdk/jmh/jmh-core/$JMH_VERSION/jmh-core-$JMH_VERSION.jar:$M2/org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION/jmh-generator-annprocess-$JMH_VERSION.jar:$M2/net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar:$M2/org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar}"
+
+rm -rf target
+mkdir -p target/src/benchmarks target/classes
+for f in $(cd .. && ls *.java | grep -v JUnitTester); do
+    { echo "package benchmarks;"; cat "../$f"; } > "target/src/benchmarks/$f"
+done
+cp *.java target/src/benchmarks/
+javac -nowarn -d target/classes -cp "$JMH_CP" target/src/benchmarks/*.java
+if [ $# -eq 0 ]; then
+    set -- -prof gc
+fi
+exec java -cp "target/classes:$JMH_CP" org.openjdk.jmh.Main "$@"